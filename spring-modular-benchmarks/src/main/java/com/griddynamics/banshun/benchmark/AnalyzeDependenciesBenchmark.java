@@ -0,0 +1,90 @@
+/*
+ * Copyright 2012 Grid Dynamics Consulting Services, Inc.
+ *      http://www.griddynamics.com
+ *
+ * Copyright 2013 Jakub Jirutka <jakub@jirutka.cz>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.griddynamics.banshun.benchmark;
+
+import com.griddynamics.banshun.StrictContextParentBean;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.support.GenericApplicationContext;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures end-to-end {@link StrictContextParentBean#analyzeDependencies(List) analysis} of
+ * generated module XMLs, i.e. parsing, validation and sorting.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class AnalyzeDependenciesBenchmark {
+
+    @Param({"10", "100", "1000"})
+    private int locations;
+
+    @Param({"4"})
+    private int fanIn;
+
+    private File directory;
+    private List<String> configLocations;
+    private GenericApplicationContext rootContext;
+
+
+    @Setup
+    public void setup() throws IOException {
+        directory = Files.createTempDirectory("banshun-modules").toFile();
+        configLocations = Arrays.asList(new ModuleGraph(locations, fanIn, 42).writeModules(directory));
+
+        rootContext = new GenericApplicationContext();
+        rootContext.refresh();
+    }
+
+    @TearDown
+    public void tearDown() {
+        rootContext.close();
+        FileSystemUtils.deleteRecursively(directory);
+    }
+
+    @Benchmark
+    public List<String> analyzeDependencies() throws Exception {
+        AnalyzingParentBean parentBean = new AnalyzingParentBean();
+        parentBean.setBeanName("root");
+        parentBean.setApplicationContext(rootContext);
+
+        return parentBean.analyze(configLocations);
+    }
+
+
+    /**
+     * Exposes the protected analysis to the benchmark.
+     */
+    static class AnalyzingParentBean extends StrictContextParentBean {
+
+        List<String> analyze(List<String> configLocations) throws Exception {
+            return analyzeDependencies(configLocations);
+        }
+    }
+}
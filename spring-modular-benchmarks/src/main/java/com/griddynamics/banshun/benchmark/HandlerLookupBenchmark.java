@@ -0,0 +1,135 @@
+/*
+ * Copyright 2012 Grid Dynamics Consulting Services, Inc.
+ *      http://www.griddynamics.com
+ *
+ * Copyright 2013 Jakub Jirutka <jakub@jirutka.cz>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.griddynamics.banshun.benchmark;
+
+import com.griddynamics.banshun.web.ContextParentAnnotationHandlerMapping;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.core.annotation.AnnotationUtils;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.servlet.HandlerExecutionChain;
+import org.springframework.web.servlet.ModelAndView;
+import org.springframework.web.servlet.mvc.AbstractController;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures throughput of looking up a handler in {@link ContextParentAnnotationHandlerMapping}
+ * with the validation metadata precomputed at registration, compared with the former
+ * implementation that looked up the type-level {@link RequestMapping} on each request.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Threads(4)
+@Fork(1)
+public class HandlerLookupBenchmark {
+
+    @Param({"precomputed", "legacy"})
+    private String validation;
+
+    private ContextParentAnnotationHandlerMapping mapping;
+
+
+    @Setup
+    public void setup() {
+        mapping = validation.equals("legacy")
+                ? new LegacyHandlerMapping() : new ContextParentAnnotationHandlerMapping();
+
+        mapping.registerByAnnotation(new OrderController());
+        mapping.registerByAnnotation(new CustomerController());
+        mapping.registerByName("/status", new StatusController());
+    }
+
+    @Benchmark
+    public Object restrictedController() throws Exception {
+        return getHandler("GET", "/orders/1");
+    }
+
+    @Benchmark
+    public Object annotatedController() throws Exception {
+        return getHandler("POST", "/customers/7");
+    }
+
+    @Benchmark
+    public Object namedController() throws Exception {
+        return getHandler("GET", "/status");
+    }
+
+    private Object getHandler(String method, String path) throws Exception {
+        HandlerExecutionChain chain = mapping.getHandler(new MockHttpServletRequest(method, path));
+        if (chain == null) {
+            throw new IllegalStateException("No handler for " + path);
+        }
+        return chain.getHandler();
+    }
+
+
+    @Controller
+    @RequestMapping(value = "/orders/*", method = RequestMethod.GET)
+    public static class OrderController {
+    }
+
+    @Controller
+    @RequestMapping("/customers/*")
+    public static class CustomerController {
+    }
+
+    public static class StatusController extends AbstractController {
+        protected ModelAndView handleRequestInternal(HttpServletRequest request, HttpServletResponse response) {
+            return null;
+        }
+    }
+
+    /**
+     * Validation of handlers as implemented before the metadata have been precomputed.
+     */
+    static class LegacyHandlerMapping extends ContextParentAnnotationHandlerMapping {
+
+        private final Map<Class<?>, RequestMapping> cachedMappings = new HashMap<Class<?>, RequestMapping>();
+
+        @Override
+        protected String[] determineUrlsByAnnotations(Object handler) {
+            RequestMapping mapping = AnnotationUtils.findAnnotation(handler.getClass(), RequestMapping.class);
+            if (mapping != null) {
+                cachedMappings.put(handler.getClass(), mapping);
+            }
+            return super.determineUrlsByAnnotations(handler);
+        }
+
+        @Override
+        protected void validateHandler(Object handler, HttpServletRequest request) throws Exception {
+            RequestMapping mapping = this.cachedMappings.get(handler.getClass());
+            if (mapping == null) {
+                mapping = AnnotationUtils.findAnnotation(handler.getClass(), RequestMapping.class);
+            }
+            if (mapping != null) {
+                validateMapping(mapping, request);
+            }
+        }
+    }
+}
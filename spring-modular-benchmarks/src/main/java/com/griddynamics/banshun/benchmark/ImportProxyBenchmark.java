@@ -0,0 +1,143 @@
+/*
+ * Copyright 2012 Grid Dynamics Consulting Services, Inc.
+ *      http://www.griddynamics.com
+ *
+ * Copyright 2013 Jakub Jirutka <jakub@jirutka.cz>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.griddynamics.banshun.benchmark;
+
+import com.griddynamics.banshun.ContextParentBean;
+import com.griddynamics.banshun.StrictContextParentBean;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.beans.factory.support.BeanDefinitionBuilder;
+import org.springframework.context.support.GenericApplicationContext;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares a call of an imported service through the default import proxy and through
+ * the frozen import proxy (see {@link ContextParentBean#setFrozenImports(boolean)}) with
+ * a direct call, and the same proxies with invocation metrics recorded (see
+ * {@link ContextParentBean#setMetricsEnabled(boolean)}).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ImportProxyBenchmark {
+
+    static final String
+            EXPORTER_LOCATION = "classpath:/com/griddynamics/banshun/benchmark/proxy/exporter.xml",
+            IMPORTER_LOCATION = "classpath:/com/griddynamics/banshun/benchmark/proxy/importer.xml";
+
+    private GenericApplicationContext defaultRoot;
+    private GenericApplicationContext frozenRoot;
+    private GenericApplicationContext defaultMetricsRoot;
+    private GenericApplicationContext frozenMetricsRoot;
+
+    private Adder direct;
+    private Adder defaultImport;
+    private Adder frozenImport;
+    private Adder defaultMetricsImport;
+    private Adder frozenMetricsImport;
+
+    private int value = 42;
+
+
+    @Setup
+    public void setup() {
+        defaultRoot = createRootContext(false);
+        frozenRoot = createRootContext(true);
+        defaultMetricsRoot = createRootContext(false, true);
+        frozenMetricsRoot = createRootContext(true, true);
+
+        direct = new SimpleAdder();
+        defaultImport = getImport(defaultRoot);
+        frozenImport = getImport(frozenRoot);
+        defaultMetricsImport = getImport(defaultMetricsRoot);
+        frozenMetricsImport = getImport(frozenMetricsRoot);
+    }
+
+    @TearDown
+    public void tearDown() {
+        defaultRoot.close();
+        frozenRoot.close();
+        defaultMetricsRoot.close();
+        frozenMetricsRoot.close();
+    }
+
+    @Benchmark
+    public int directCall() {
+        return direct.add(value, 1);
+    }
+
+    @Benchmark
+    public int defaultImportCall() {
+        return defaultImport.add(value, 1);
+    }
+
+    @Benchmark
+    public int frozenImportCall() {
+        return frozenImport.add(value, 1);
+    }
+
+    @Benchmark
+    public int defaultImportCallWithMetrics() {
+        return defaultMetricsImport.add(value, 1);
+    }
+
+    @Benchmark
+    public int frozenImportCallWithMetrics() {
+        return frozenMetricsImport.add(value, 1);
+    }
+
+
+    static GenericApplicationContext createRootContext(boolean frozenImports) {
+        return createRootContext(frozenImports, false);
+    }
+
+    static GenericApplicationContext createRootContext(boolean frozenImports, boolean metricsEnabled) {
+        GenericApplicationContext root = new GenericApplicationContext();
+        root.registerBeanDefinition("root", BeanDefinitionBuilder
+                .rootBeanDefinition(StrictContextParentBean.class)
+                .addPropertyValue("configLocations", new String[]{ EXPORTER_LOCATION, IMPORTER_LOCATION })
+                .addPropertyValue("frozenImports", frozenImports)
+                .addPropertyValue("metricsEnabled", metricsEnabled)
+                .addPropertyValue("metricsJmxDomain", "")
+                .addPropertyValue("strictErrorHandling", true)
+                .getBeanDefinition());
+        root.refresh();
+
+        return root;
+    }
+
+    static Adder getImport(GenericApplicationContext root) {
+        ContextParentBean parentBean = root.getBean("root", ContextParentBean.class);
+        return parentBean.getChildren().get(1).getBean("adder", Adder.class);
+    }
+
+
+    public interface Adder {
+        int add(int a, int b);
+    }
+
+    public static class SimpleAdder implements Adder {
+        public int add(int a, int b) {
+            return a + b;
+        }
+    }
+}
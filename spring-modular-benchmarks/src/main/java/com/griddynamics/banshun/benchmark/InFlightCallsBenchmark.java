@@ -0,0 +1,65 @@
+/*
+ * Copyright 2012 Grid Dynamics Consulting Services, Inc.
+ *      http://www.griddynamics.com
+ *
+ * Copyright 2013 Jakub Jirutka <jakub@jirutka.cz>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.griddynamics.banshun.benchmark;
+
+import com.griddynamics.banshun.ExportRef;
+import com.griddynamics.banshun.ExportTargetSource;
+import com.griddynamics.banshun.benchmark.ImportProxyBenchmark.Adder;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures the per-call overhead of counting the calls in progress on an export (see
+ * {@link ExportTargetSource#enter()}) under concurrent calls, compared with a single shared
+ * counter. The end-to-end cost of a call through an import proxy is measured by
+ * {@link ImportProxyBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Threads(4)
+@Fork(1)
+public class InFlightCallsBenchmark {
+
+    private ExportTargetSource export;
+    private AtomicLong sharedCounter;
+
+
+    @Setup
+    public void setup() {
+        export = new ExportTargetSource(new ExportRef("adder", Adder.class, "adder"));
+        sharedCounter = new AtomicLong();
+    }
+
+    @Benchmark
+    public void enterExit() {
+        export.enter();
+        export.exit();
+    }
+
+    @Benchmark
+    public void sharedCounter() {
+        sharedCounter.incrementAndGet();
+        sharedCounter.decrementAndGet();
+    }
+}
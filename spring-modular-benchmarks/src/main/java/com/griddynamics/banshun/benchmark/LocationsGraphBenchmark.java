@@ -0,0 +1,68 @@
+/*
+ * Copyright 2012 Grid Dynamics Consulting Services, Inc.
+ *      http://www.griddynamics.com
+ *
+ * Copyright 2013 Jakub Jirutka <jakub@jirutka.cz>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.griddynamics.banshun.benchmark;
+
+import com.griddynamics.banshun.LocationsGraph;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link LocationsGraph#transitiveClosure(String, Set, boolean)} from the module
+ * with the most dependencies and from the module with the most dependents.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class LocationsGraphBenchmark {
+
+    @Param({"100", "1000", "10000"})
+    private int locations;
+
+    @Param({"4"})
+    private int fanIn;
+
+    private LocationsGraph graph;
+
+
+    @Setup
+    public void setup() {
+        ModuleGraph moduleGraph = new ModuleGraph(locations, fanIn, 42);
+        graph = new LocationsGraph(moduleGraph.getImports(), moduleGraph.getExports());
+    }
+
+    @Benchmark
+    public Set<String> dependenciesClosure() {
+        Set<String> marked = new HashSet<>();
+        graph.transitiveClosure(ModuleGraph.locationName(locations - 1), marked, true);
+        return marked;
+    }
+
+    @Benchmark
+    public Set<String> dependentsClosure() {
+        Set<String> marked = new HashSet<>();
+        graph.transitiveClosure(ModuleGraph.locationName(0), marked, false);
+        return marked;
+    }
+}
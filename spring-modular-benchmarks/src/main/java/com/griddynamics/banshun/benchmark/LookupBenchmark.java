@@ -0,0 +1,69 @@
+/*
+ * Copyright 2012 Grid Dynamics Consulting Services, Inc.
+ *      http://www.griddynamics.com
+ *
+ * Copyright 2013 Jakub Jirutka <jakub@jirutka.cz>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.griddynamics.banshun.benchmark;
+
+import com.griddynamics.banshun.ContextParentBean;
+import com.griddynamics.banshun.LookupTargetSource;
+import com.griddynamics.banshun.benchmark.ImportProxyBenchmark.Adder;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.support.GenericApplicationContext;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link ContextParentBean#lookup(String, Class)} of an already imported service and
+ * the first-call resolution of an export through {@link LookupTargetSource}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class LookupBenchmark {
+
+    private static final String SERVICE_NAME = "adder";
+
+    private GenericApplicationContext rootContext;
+    private ContextParentBean parentBean;
+
+
+    @Setup
+    public void setup() {
+        rootContext = ImportProxyBenchmark.createRootContext(false);
+        parentBean = rootContext.getBean("root", ContextParentBean.class);
+    }
+
+    @TearDown
+    public void tearDown() {
+        rootContext.close();
+    }
+
+    @Benchmark
+    public Adder lookup() {
+        return parentBean.lookup(SERVICE_NAME, Adder.class);
+    }
+
+    @Benchmark
+    public Object firstCallResolution() {
+        LookupTargetSource targetSource = new LookupTargetSource(
+                SERVICE_NAME, Adder.class, parentBean.getServiceRegistry());
+        return targetSource.getTarget();
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright 2012 Grid Dynamics Consulting Services, Inc.
+ *      http://www.griddynamics.com
+ *
+ * Copyright 2013 Jakub Jirutka <jakub@jirutka.cz>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.griddynamics.banshun.benchmark;
+
+import com.griddynamics.banshun.BeanReferenceInfo;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * Generator of random acyclic graphs of modules used as an input for the benchmarks.
+ * Each module exports one service and imports services from up to <tt>fanIn</tt>
+ * modules generated before it. Order of the locations is shuffled, so it doesn't
+ * match the order of dependencies. The modules can be also written as XML files.
+ */
+public class ModuleGraph {
+
+    private final String[] locations;
+    private final List<Integer> order;
+    private final List<Set<Integer>> dependencies;
+    private final Map<String, BeanReferenceInfo> exports = new HashMap<>();
+    private final Map<String, List<BeanReferenceInfo>> imports = new HashMap<>();
+
+
+    public ModuleGraph(int size, int fanIn, long seed) {
+        Random random = new Random(seed);
+        List<Integer> indexes = new ArrayList<>(size);
+        this.dependencies = new ArrayList<>(size);
+
+        for (int i = 0; i < size; i++) {
+            String location = locationName(i);
+            indexes.add(i);
+
+            String serviceName = serviceName(i);
+            exports.put(serviceName, new BeanReferenceInfo(serviceName, Runnable.class, location));
+
+            Set<Integer> moduleDependencies = new TreeSet<>();
+            for (int j = 0; j < fanIn && i > 0; j++) {
+                moduleDependencies.add(random.nextInt(i));
+            }
+            dependencies.add(moduleDependencies);
+
+            for (int dependency : moduleDependencies) {
+                String importedName = serviceName(dependency);
+                if (!imports.containsKey(importedName)) {
+                    imports.put(importedName, new ArrayList<BeanReferenceInfo>());
+                }
+                imports.get(importedName).add(new BeanReferenceInfo(importedName, Runnable.class, location));
+            }
+        }
+        Collections.shuffle(indexes, random);
+        this.order = indexes;
+        this.locations = new String[size];
+        for (int i = 0; i < size; i++) {
+            locations[i] = locationName(indexes.get(i));
+        }
+    }
+
+
+    public String[] getLocations() {
+        return locations;
+    }
+
+    public Map<String, BeanReferenceInfo> getExports() {
+        return exports;
+    }
+
+    public Map<String, List<BeanReferenceInfo>> getImports() {
+        return imports;
+    }
+
+    /**
+     * Writes the modules as XML files into the given directory. Each module contains a bean
+     * of class {@link Thread} exported as {@link Runnable} and lookups of the imported services.
+     *
+     * @return URIs of the written files in the same order as {@link #getLocations()}.
+     */
+    public String[] writeModules(File directory) throws IOException {
+        String[] uris = new String[order.size()];
+
+        for (int i = 0; i < order.size(); i++) {
+            int index = order.get(i);
+            File file = new File(directory, "module" + index + ".xml");
+
+            try (Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8")) {
+                writer.write(moduleXml(index));
+            }
+            uris[i] = file.toURI().toString();
+        }
+        return uris;
+    }
+
+    private String moduleXml(int index) {
+        StringBuilder xml = new StringBuilder()
+                .append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n")
+                .append("<beans xmlns=\"http://www.springframework.org/schema/beans\"\n")
+                .append("       xmlns:bs=\"http://www.griddynamics.com/schema/banshun\"\n")
+                .append("       xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\"\n")
+                .append("       xsi:schemaLocation=\"\n")
+                .append("       http://www.springframework.org/schema/beans http://www.springframework.org/schema/beans/spring-beans-3.0.xsd\n")
+                .append("       http://www.griddynamics.com/schema/banshun http://www.griddynamics.com/schema/banshun/banshun-schema.xsd\">\n\n");
+
+        for (int dependency : dependencies.get(index)) {
+            xml.append("    <bs:import id=\"").append(serviceName(dependency))
+               .append("\" interface=\"java.lang.Runnable\" />\n");
+        }
+        xml.append("    <bean id=\"bean").append(index).append("\" class=\"java.lang.Thread\" />\n")
+           .append("    <bs:export name=\"").append(serviceName(index)).append("\" ref=\"bean").append(index)
+           .append("\" interface=\"java.lang.Runnable\" />\n")
+           .append("</beans>\n");
+
+        return xml.toString();
+    }
+
+    public static String locationName(int index) {
+        return "classpath:/modules/module" + index + ".xml";
+    }
+
+    public static String serviceName(int index) {
+        return "service" + index;
+    }
+}
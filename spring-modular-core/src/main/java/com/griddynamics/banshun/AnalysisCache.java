@@ -0,0 +1,270 @@
+/*
+ * Copyright 2012 Grid Dynamics Consulting Services, Inc.
+ *      http://www.griddynamics.com
+ *
+ * Copyright 2013 Jakub Jirutka <jakub@jirutka.cz>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.griddynamics.banshun;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.ResourceLoader;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * Persistent cache of the exports and imports extracted from the config locations and of
+ * the sorted order of the locations. Each location is stored with fingerprints (last modified
+ * time and size) of all the resources its analysis depends on, i.e. its own resource, the
+ * resources it imports transitively and the classes of its beans. An entry is used only if all
+ * the fingerprints still match. The whole cache is used only if it has been created with
+ * the same key, e.g. the same registry name and active profiles.
+ *
+ * <p>The cache is stored in a simple binary format. When the file is missing, corrupted
+ * or has an unknown format, an empty cache is used.</p>
+ */
+public class AnalysisCache {
+
+    private static final Logger log = LoggerFactory.getLogger(AnalysisCache.class);
+
+    private static final int MAGIC = 0x42534843;
+    private static final int FORMAT_VERSION = 2;
+
+    private final String key;
+    private final Map<String, Entry> entries = new LinkedHashMap<>();
+    private String sortKey;
+    private List<String> sortedLocations;
+
+
+    public AnalysisCache() {
+        this("");
+    }
+
+    /**
+     * @param key Key of the settings the cache is valid for, see {@link #load(File, String)}.
+     */
+    public AnalysisCache(String key) {
+        this.key = key;
+    }
+
+
+    /**
+     * Loads the cache from the given file.
+     *
+     * @return The loaded cache, or an empty cache if the file doesn't exist or can't be read.
+     */
+    public static AnalysisCache load(File file) {
+        return load(file, "");
+    }
+
+    /**
+     * Loads the cache from the given file, if it has been saved with the given key.
+     *
+     * @return The loaded cache, or an empty cache if the file doesn't exist, can't be read or
+     *         has been saved with another key.
+     */
+    public static AnalysisCache load(File file, String key) {
+        AnalysisCache cache = new AnalysisCache(key);
+        if (!file.isFile()) {
+            return cache;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+                log.warn("Ignoring analysis cache {} with unknown format", file);
+                return cache;
+            }
+            if (!in.readUTF().equals(key)) {
+                log.info("Ignoring analysis cache {} created with other settings", file);
+                return cache;
+            }
+            for (int i = in.readInt(); i > 0; i--) {
+                String location = in.readUTF();
+                Entry entry = new Entry();
+
+                for (int j = in.readInt(); j > 0; j--) {
+                    entry.resources.put(in.readUTF(), in.readUTF());
+                }
+                for (int j = in.readInt(); j > 0; j--) {
+                    entry.addExport(in.readUTF(), in.readUTF(), in.readUTF());
+                }
+                for (int j = in.readInt(); j > 0; j--) {
+                    entry.addImport(in.readUTF(), in.readUTF());
+                }
+                cache.entries.put(location, entry);
+            }
+            if (in.readBoolean()) {
+                String sortKey = in.readUTF();
+                List<String> sorted = new ArrayList<>();
+                for (int i = in.readInt(); i > 0; i--) {
+                    sorted.add(in.readUTF());
+                }
+                cache.setSortedLocations(sortKey, sorted);
+            }
+            return cache;
+
+        } catch (IOException | RuntimeException ex) {
+            log.warn("Ignoring corrupted analysis cache {}: {}", file, ex.toString());
+            return new AnalysisCache(key);
+        }
+    }
+
+    /**
+     * Computes fingerprint of the given resource.
+     *
+     * @return The fingerprint, or <tt>null</tt> if the resource can't be fingerprinted.
+     */
+    public static String fingerprint(Resource resource) {
+        try {
+            return resource.lastModified() + ":" + resource.contentLength();
+        } catch (IOException ex) {
+            log.debug("Can't fingerprint resource {}: {}", resource, ex.toString());
+            return null;
+        }
+    }
+
+    /**
+     * Saves the cache into the given file. The file is replaced atomically, if supported
+     * by the file system.
+     */
+    public void save(File file) throws IOException {
+        File dir = file.getAbsoluteFile().getParentFile();
+        if (dir != null && !dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Can't create directory " + dir);
+        }
+        File tmpFile = File.createTempFile(file.getName(), ".tmp", dir);
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeUTF(key);
+            out.writeInt(entries.size());
+
+            for (Map.Entry<String, Entry> mapEntry : entries.entrySet()) {
+                Entry entry = mapEntry.getValue();
+                out.writeUTF(mapEntry.getKey());
+
+                out.writeInt(entry.resources.size());
+                for (Map.Entry<String, String> resource : entry.resources.entrySet()) {
+                    out.writeUTF(resource.getKey());
+                    out.writeUTF(resource.getValue());
+                }
+
+                out.writeInt(entry.getExports().size());
+                for (String[] export : entry.getExports()) {
+                    out.writeUTF(export[0]);
+                    out.writeUTF(export[1]);
+                    out.writeUTF(export[2]);
+                }
+                out.writeInt(entry.getImports().size());
+                for (String[] imp : entry.getImports()) {
+                    out.writeUTF(imp[0]);
+                    out.writeUTF(imp[1]);
+                }
+            }
+            out.writeBoolean(sortedLocations != null);
+            if (sortedLocations != null) {
+                out.writeUTF(sortKey);
+                out.writeInt(sortedLocations.size());
+                for (String location : sortedLocations) {
+                    out.writeUTF(location);
+                }
+            }
+        }
+        if (!tmpFile.renameTo(file)) {
+            // rename over an existing file is not supported on some platforms
+            if (!file.delete() || !tmpFile.renameTo(file)) {
+                tmpFile.delete();
+                throw new IOException("Can't replace " + file);
+            }
+        }
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * @param resourceLoader The loader to resolve the resources of the entry with.
+     * @return The cached entry for the location, or <tt>null</tt> if there's no entry or
+     *         fingerprint of any of its resources doesn't match.
+     */
+    public Entry get(String location, ResourceLoader resourceLoader) {
+        Entry entry = entries.get(location);
+        return entry != null && entry.isValid(resourceLoader) ? entry : null;
+    }
+
+    public void put(String location, Entry entry) {
+        entries.put(location, entry);
+    }
+
+    /**
+     * @param sortKey The key of the sorted input, i.e. all the locations and the sorting options.
+     * @return The sorted locations, or <tt>null</tt> if there are no sorted locations for the key.
+     */
+    public List<String> getSortedLocations(String sortKey) {
+        return sortKey.equals(this.sortKey) ? sortedLocations : null;
+    }
+
+    public void setSortedLocations(String sortKey, List<String> sortedLocations) {
+        this.sortKey = sortKey;
+        this.sortedLocations = sortedLocations;
+    }
+
+
+    /**
+     * Exports and imports extracted from a single location, with fingerprints of the resources
+     * they have been extracted from.
+     */
+    public static class Entry extends LocationReferences {
+
+        private final Map<String, String> resources = new LinkedHashMap<>();
+
+
+        /**
+         * Adds a resource the entry depends on.
+         *
+         * @param name Location of the resource, as resolved by a {@link ResourceLoader}.
+         * @return <tt>false</tt> if the resource can't be fingerprinted, so the entry should
+         *         not be cached.
+         */
+        public boolean addResource(String name, Resource resource) {
+            String fingerprint = fingerprint(resource);
+            if (fingerprint == null) {
+                return false;
+            }
+            resources.put(name, fingerprint);
+            return true;
+        }
+
+        /**
+         * @return Fingerprints of the resources the entry depends on by their locations.
+         */
+        public Map<String, String> getResources() {
+            return Collections.unmodifiableMap(resources);
+        }
+
+        private boolean isValid(ResourceLoader resourceLoader) {
+            for (Map.Entry<String, String> resource : resources.entrySet()) {
+                if (!resource.getValue().equals(fingerprint(resourceLoader.getResource(resource.getKey())))) {
+                    log.debug("Resource {} has changed since it was cached", resource.getKey());
+                    return false;
+                }
+            }
+            return !resources.isEmpty();
+        }
+    }
+}
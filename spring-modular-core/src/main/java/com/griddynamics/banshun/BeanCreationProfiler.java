@@ -0,0 +1,247 @@
+/*
+ * Copyright 2012 Grid Dynamics Consulting Services, Inc.
+ *      http://www.griddynamics.com
+ *
+ * Copyright 2013 Jakub Jirutka <jakub@jirutka.cz>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.griddynamics.banshun;
+
+import lombok.Data;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.beans.factory.config.InstantiationAwareBeanPostProcessorAdapter;
+
+import java.util.*;
+
+/**
+ * Measures creation of the beans of a nested module and keeps the slowest ones, see
+ * {@link ContextParentBean#setBeanProfilingLimit(int)}. Creation of a bean is measured from
+ * its instantiation until its initialization is complete. Time spent creating other beans in
+ * the meantime, e.g. its dependencies, is excluded from the bean's own time; time spent
+ * resolving beans exported by other modules on the first call of an import proxy is reported
+ * separately.
+ *
+ * <p>The profiler of the module being refreshed on the current thread is
+ * {@link #activate(BeanCreationProfiler) activated} by the {@link ContextParentBean}, and
+ * {@link #registerActive(ConfigurableListableBeanFactory) registered} by the nested context
+ * while it's being refreshed.</p>
+ */
+public class BeanCreationProfiler extends InstantiationAwareBeanPostProcessorAdapter {
+
+    private static final ThreadLocal<BeanCreationProfiler> active = new ThreadLocal<>();
+    // beans being created on the current thread, by any profiler, and lookups in progress
+    private static final ThreadLocal<Deque<Frame>> frames = new ThreadLocal<Deque<Frame>>() {
+        protected Deque<Frame> initialValue() {
+            return new ArrayDeque<>();
+        }
+    };
+
+    private final String location;
+    private final int limit;
+    // the fastest of the slowest beans on top
+    private final PriorityQueue<BeanTiming> slowest;
+
+
+    /**
+     * @param location Location of the profiled module.
+     * @param limit    Number of the slowest beans to keep.
+     */
+    BeanCreationProfiler(String location, int limit) {
+        this.location = location;
+        this.limit = limit;
+        this.slowest = new PriorityQueue<>(limit, new Comparator<BeanTiming>() {
+            public int compare(BeanTiming t1, BeanTiming t2) {
+                return Long.compare(t1.getTotalNanos(), t2.getTotalNanos());
+            }
+        });
+    }
+
+
+    /**
+     * Makes the given profiler active on the current thread.
+     *
+     * @return The previously active profiler to restore by {@link #deactivate(BeanCreationProfiler)}.
+     */
+    static BeanCreationProfiler activate(BeanCreationProfiler profiler) {
+        BeanCreationProfiler previous = active.get();
+        active.set(profiler);
+        return previous;
+    }
+
+    /**
+     * Restores the given profiler that was active before, and forgets beans of the deactivated
+     * profiler whose creation has failed.
+     */
+    static void deactivate(BeanCreationProfiler previous) {
+        BeanCreationProfiler current = active.get();
+
+        if (current != null) {
+            Iterator<Frame> it = frames.get().iterator();
+            while (it.hasNext()) {
+                if (it.next().owner == current) {
+                    it.remove();
+                }
+            }
+        }
+        if (previous != null) {
+            active.set(previous);
+        } else {
+            active.remove();
+        }
+    }
+
+    /**
+     * Adds the profiler active on the current thread, if any, to the given bean factory. Nested
+     * contexts should invoke this method in
+     * {@link org.springframework.context.support.AbstractApplicationContext#postProcessBeanFactory(ConfigurableListableBeanFactory)
+     * postProcessBeanFactory}, so that the profiler precedes the other post processors.
+     */
+    public static void registerActive(ConfigurableListableBeanFactory beanFactory) {
+        BeanCreationProfiler profiler = active.get();
+
+        if (profiler != null) {
+            beanFactory.addBeanPostProcessor(profiler);
+        }
+    }
+
+    /**
+     * Marks start of a resolution of a bean exported by another module on the current thread.
+     * Must be followed by {@link #exitLookup()}.
+     */
+    static void enterLookup() {
+        Deque<Frame> stack = frames.get();
+
+        // only lookups made while creating a bean are attributed
+        if (!stack.isEmpty()) {
+            stack.push(new Frame(null, null));
+        }
+    }
+
+    static void exitLookup() {
+        Deque<Frame> stack = frames.get();
+        Frame lookup = stack.peek();
+
+        if (lookup != null && lookup.owner == null) {
+            stack.pop();
+            Frame parent = stack.peek();
+            if (parent != null) {
+                parent.lookupNanos += System.nanoTime() - lookup.start;
+            }
+        }
+    }
+
+
+    public String getLocation() {
+        return location;
+    }
+
+    /**
+     * @return The slowest beans of the module, the slowest first.
+     */
+    public List<BeanTiming> getSlowestBeans() {
+        List<BeanTiming> result;
+        synchronized (slowest) {
+            result = new ArrayList<>(slowest);
+        }
+        Collections.sort(result, Collections.reverseOrder(slowest.comparator()));
+        return result;
+    }
+
+    @Override
+    public Object postProcessBeforeInstantiation(Class<?> beanClass, String beanName) throws BeansException {
+        frames.get().push(new Frame(this, beanName));
+        return null;
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) throws BeansException {
+        Deque<Frame> stack = frames.get();
+        Frame frame = null;
+
+        for (Frame candidate : stack) {
+            if (candidate.owner == this && candidate.beanName.equals(beanName)) {
+                frame = candidate;
+                break;
+            }
+        }
+        // e.g. an object created by a factory bean, it's post processed under the same name
+        if (frame == null) {
+            return bean;
+        }
+        // frames above belong to beans whose creation has failed
+        while (stack.pop() != frame) {
+        }
+        long total = System.nanoTime() - frame.start;
+        Frame parent = stack.peek();
+        if (parent != null) {
+            parent.childNanos += total;
+        }
+        record(new BeanTiming(beanName, total, total - frame.childNanos - frame.lookupNanos, frame.lookupNanos));
+
+        return bean;
+    }
+
+
+    private void record(BeanTiming timing) {
+        synchronized (slowest) {
+            if (slowest.size() < limit) {
+                slowest.add(timing);
+            } else if (slowest.peek().getTotalNanos() < timing.getTotalNanos()) {
+                slowest.poll();
+                slowest.add(timing);
+            }
+        }
+    }
+
+
+    private static class Frame {
+        final BeanCreationProfiler owner;
+        final String beanName;
+        final long start = System.nanoTime();
+        long childNanos;
+        long lookupNanos;
+
+        Frame(BeanCreationProfiler owner, String beanName) {
+            this.owner = owner;
+            this.beanName = beanName;
+        }
+    }
+
+
+    /**
+     * Creation time of a bean.
+     */
+    @Data
+    public static class BeanTiming {
+
+        private final String beanName;
+
+        /**
+         * Time from instantiation until initialization of the bean, including creation of its
+         * dependencies, in nanoseconds.
+         */
+        private final long totalNanos;
+
+        /**
+         * Total time excluding creation of the other beans and the lookups, in nanoseconds.
+         */
+        private final long selfNanos;
+
+        /**
+         * Time spent resolving beans exported by other modules, in nanoseconds.
+         */
+        private final long lookupNanos;
+    }
+}
@@ -25,5 +25,27 @@ public class BeanReferenceInfo {
 
     private final String serviceName;
     private final Class<?> serviceInterface;
+    private final String serviceInterfaceName;
     private final String location;
+
+
+    public BeanReferenceInfo(String serviceName, Class<?> serviceInterface, String location) {
+        this(serviceName, serviceInterface, serviceInterface != null ? serviceInterface.getName() : null, location);
+    }
+
+    /**
+     * Creates reference with unresolved service interface, i.e. only its class name is
+     * known. Such reference is used when the interface has been already verified, e.g.
+     * by the module manifest generator at build time, so there's no need to load it.
+     */
+    public BeanReferenceInfo(String serviceName, String serviceInterfaceName, String location) {
+        this(serviceName, null, serviceInterfaceName, location);
+    }
+
+    private BeanReferenceInfo(String serviceName, Class<?> serviceInterface, String serviceInterfaceName, String location) {
+        this.serviceName = serviceName;
+        this.serviceInterface = serviceInterface;
+        this.serviceInterfaceName = serviceInterfaceName;
+        this.location = location;
+    }
 }
@@ -0,0 +1,182 @@
+/*
+ * Copyright 2012 Grid Dynamics Consulting Services, Inc.
+ *      http://www.griddynamics.com
+ *
+ * Copyright 2013 Jakub Jirutka <jakub@jirutka.cz>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.griddynamics.banshun;
+
+import org.springframework.util.ClassUtils;
+
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Verifies existence of the bean classes declared in the config locations. The checks are
+ * collected first and then verified all at once, so all the missing classes can be reported
+ * together. Checks that don't initialize the classes are verified in parallel on a fork/join
+ * pool; in {@link Mode#INITIALIZE INITIALIZE} mode they're verified on the calling thread, so
+ * static initializers run with its context class loader and can't deadlock on each other.
+ */
+public class ClassVerifier {
+
+    /**
+     * How to check that a class exists.
+     */
+    public enum Mode {
+
+        /** Loads and initializes the class, i.e. runs its static initializers. */
+        INITIALIZE,
+
+        /** Loads the class without initializing it. */
+        LOAD,
+
+        /** Only looks up the class file in the class loader, the class is not loaded at all. */
+        RESOURCE
+    }
+
+    /** Number of checks that are not worth splitting further. */
+    private static final int THRESHOLD = 32;
+
+    private final ClassLoader classLoader;
+    private final Mode mode;
+    private final List<String[]> checks = new ArrayList<>();
+    // causes of failed static initializers by class names, checks in INITIALIZE mode are serial
+    private final Map<String, Throwable> initializerFailures = new HashMap<>();
+
+
+    public ClassVerifier(ClassLoader classLoader, Mode mode) {
+        this.classLoader = classLoader;
+        this.mode = mode;
+    }
+
+
+    /**
+     * Adds class of the bean to verify.
+     */
+    public void add(String className, String location, String beanName) {
+        checks.add(new String[]{ className, location, beanName });
+    }
+
+    /**
+     * Verifies all the added classes.
+     *
+     * @return Descriptions of the missing classes, and of the classes whose static initializer
+     *         has failed in {@link Mode#INITIALIZE INITIALIZE} mode, in the order they've been
+     *         added, or an empty list if all the classes exist.
+     */
+    public List<String> verify() {
+        if (mode == Mode.INITIALIZE || checks.size() <= THRESHOLD) {
+            return new VerifyTask(0, checks.size()).compute();
+        }
+        ForkJoinPool pool = new ForkJoinPool();
+        try {
+            return pool.invoke(new VerifyTask(0, checks.size()));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * @throws ExceptionInInitializerError If the class exists, but its static initializer fails.
+     */
+    boolean exists(String className) {
+        try {
+            switch (mode) {
+                case INITIALIZE:
+                    try {
+                        Class.forName(className, true, classLoader);
+                    } catch (NoClassDefFoundError ex) {
+                        // the class exists if it can be loaded, but its initializer has failed before
+                        Class.forName(className, false, classLoader);
+                        throw new ExceptionInInitializerError(ex);
+                    }
+                    return true;
+                case LOAD:
+                    ClassUtils.forName(className, classLoader);
+                    return true;
+                default:
+                    ClassLoader loader = classLoader != null ? classLoader : ClassUtils.getDefaultClassLoader();
+                    return loader.getResource(ClassUtils.convertClassNameToResourcePath(className) + ".class") != null;
+            }
+        } catch (ClassNotFoundException | NoClassDefFoundError ex) {
+            return false;
+        }
+    }
+
+    private String check(String className, String location, String beanName) {
+        // the class is not initialized again, it would be reported as not found
+        Throwable initializerFailure = initializerFailures.get(className);
+        try {
+            if (initializerFailure == null && !exists(className)) {
+                return MessageFormat.format(
+                        "Class not found {0} in location: {1} for bean: {2}", className, location, beanName);
+            }
+        } catch (ExceptionInInitializerError ex) {
+            initializerFailure = ex.getCause();
+            initializerFailures.put(className, initializerFailure);
+        }
+        return initializerFailure == null ? null : MessageFormat.format(
+                "Failed to initialize class {0} in location: {1} for bean: {2}: {3}",
+                className, location, beanName, initializerFailure);
+    }
+
+
+    private class VerifyTask extends RecursiveTask<List<String>> {
+
+        private final int from;
+        private final int to;
+
+        VerifyTask(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected List<String> compute() {
+            if (to - from > THRESHOLD) {
+                int middle = (from + to) >>> 1;
+                VerifyTask left = new VerifyTask(from, middle);
+                left.fork();
+                List<String> right = new VerifyTask(middle, to).compute();
+
+                List<String> result = left.join();
+                if (result.isEmpty()) {
+                    return right;
+                }
+                result.addAll(right);
+                return result;
+            }
+            List<String> failures = Collections.emptyList();
+            for (int i = from; i < to; i++) {
+                String[] check = checks.get(i);
+                String failure = check(check[0], check[1], check[2]);
+                if (failure != null) {
+                    if (failures.isEmpty()) {
+                        failures = new ArrayList<>();
+                    }
+                    failures.add(failure);
+                }
+            }
+            return failures;
+        }
+    }
+}
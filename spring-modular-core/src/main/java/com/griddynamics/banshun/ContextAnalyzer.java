@@ -23,6 +23,7 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.BeanCreationException;
 import org.springframework.beans.factory.config.*;
 import org.springframework.beans.factory.config.ConstructorArgumentValues.ValueHolder;
+import org.springframework.util.ClassUtils;
 
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -36,25 +37,66 @@ public class ContextAnalyzer {
     private Map<String, BeanReferenceInfo> exports = new HashMap<>();
     private Map<String, List<BeanReferenceInfo>> imports = new HashMap<>();
 
+    private final ClassLoader classLoader;
+
+
+    public ContextAnalyzer() {
+        this(ClassUtils.getDefaultClassLoader());
+    }
+
+    /**
+     * @param classLoader The class loader to load service interfaces with.
+     */
+    public ContextAnalyzer(ClassLoader classLoader) {
+        this.classLoader = classLoader;
+    }
+
+
+    /**
+     * Check whether bean will be imported into other contexts, i.e. it's a lookup
+     * factory-method bean of the given registry.
+     *
+     * @param beanDefinition Definition of the bean to check.
+     * @param registryName The name of the registry bean.
+     */
+    public static boolean isImport(BeanDefinition beanDefinition, String registryName) {
+        return Registry.LOOKUP_METHOD_NAME.equals(beanDefinition.getFactoryMethodName())
+                && registryName.equals(beanDefinition.getFactoryBeanName());
+    }
+
+    /**
+     * Check whether bean will be exported from this context into others, i.e. it's an
+     * export factory-method bean of the given registry.
+     *
+     * @param beanDefinition Definition of the bean to check.
+     * @param registryName The name of the registry bean.
+     */
+    public static boolean isExport(BeanDefinition beanDefinition, String registryName) {
+        return Registry.EXPORT_METHOD_NAME.equals(beanDefinition.getFactoryMethodName())
+                && registryName.equals(beanDefinition.getFactoryBeanName());
+    }
+
 
     public Map<String, List<BeanReferenceInfo>> getImports() {
         return imports;
     }
 
-    public void addImport(BeanDefinition beanDefinition, String location) throws ClassNotFoundException {
+    public BeanReferenceInfo addImport(BeanDefinition beanDefinition, String location) throws ClassNotFoundException {
         BeanReferenceInfo importReferenceInfo = parseLookupOrExportRefArg(beanDefinition, location);
         
         putInImports(importReferenceInfo);
+        return importReferenceInfo;
     }
 
     public Map<String, BeanReferenceInfo> getExports() {
         return exports;
     }
 
-    public void addExport(BeanDefinition beanDefinition, String location) throws ClassNotFoundException, BeanCreationException {
+    public BeanReferenceInfo addExport(BeanDefinition beanDefinition, String location) throws ClassNotFoundException, BeanCreationException {
         BeanReferenceInfo exportReferenceInfo = getExportReference(beanDefinition, location);
 
         putInExports(exportReferenceInfo);
+        return exportReferenceInfo;
     }
 
     public boolean areThereImportsWithoutExports() {
@@ -89,12 +131,10 @@ public class ContextAnalyzer {
         
         for (String exportName : exports.keySet()) {
             if (imports.containsKey(exportName)) {
-                Class<?> exportIface = exports.get(exportName).getServiceInterface();
+                BeanReferenceInfo exportRef = exports.get(exportName);
 
                 for (BeanReferenceInfo importRef : imports.get(exportName)) {
-                    Class<?> importIface = importRef.getServiceInterface();
-                    
-                    if (!importIface.isAssignableFrom(exportIface)) {
+                    if (!isAssignable(importRef, exportRef)) {
                        importsTypesAreCorrect = false;
                        log.error("Imported bean {} from location {} must implement same interface that appropriate" +
                                  "exported bean {} or subinterface but no superclass or superinterface",
@@ -176,6 +216,32 @@ public class ContextAnalyzer {
     }
 
 
+    /**
+     * Checks that the imported interface is the exported one or its superinterface. References
+     * with unresolved interfaces (e.g. from module manifests) are compared by the interface names
+     * first, and their interfaces are loaded only when the names differ.
+     */
+    private boolean isAssignable(BeanReferenceInfo importRef, BeanReferenceInfo exportRef) {
+        String importIfaceName = importRef.getServiceInterfaceName();
+        String exportIfaceName = exportRef.getServiceInterfaceName();
+
+        if (importIfaceName == null || exportIfaceName == null || importIfaceName.equals(exportIfaceName)) {
+            return true;
+        }
+        try {
+            return resolveServiceInterface(importRef).isAssignableFrom(resolveServiceInterface(exportRef));
+        } catch (ClassNotFoundException | LinkageError ex) {
+            log.error("Failed to load service interface of bean {} from location {}: {}",
+                    new Object[]{importRef.getServiceName(), importRef.getLocation(), ex.toString()});
+            return false;
+        }
+    }
+
+    private Class<?> resolveServiceInterface(BeanReferenceInfo ref) throws ClassNotFoundException {
+        Class<?> serviceIface = ref.getServiceInterface();
+        return serviceIface != null ? serviceIface : ClassUtils.forName(ref.getServiceInterfaceName(), classLoader);
+    }
+
     private Class<?> extractServiceInterface(BeanDefinition beanDefinition) throws ClassNotFoundException {
         Class<?> serviceIface = null;
 
@@ -185,7 +251,7 @@ public class ContextAnalyzer {
         Object serviceIfaceName = valueHolder.getValue();
 
         if (serviceIfaceName instanceof TypedStringValue) {
-            serviceIface = Class.forName(((TypedStringValue)serviceIfaceName).getValue());
+            serviceIface = ClassUtils.forName(((TypedStringValue)serviceIfaceName).getValue(), classLoader);
         } else if (serviceIfaceName instanceof Class) {
             serviceIface = (Class<?>) serviceIfaceName;
         }
@@ -20,42 +20,80 @@ package com.griddynamics.banshun;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.aop.framework.ProxyFactoryBean;
+import org.springframework.aop.framework.ProxyFactory;
 import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.BeanCreationException;
+import org.springframework.beans.factory.BeanNameAware;
+import org.springframework.beans.factory.BeanNotOfRequiredTypeException;
 import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
 import org.springframework.beans.factory.support.BeanDefinitionRegistry;
-import org.springframework.beans.factory.support.RootBeanDefinition;
+import org.springframework.beans.factory.support.DefaultSingletonBeanRegistry;
 import org.springframework.context.*;
 import org.springframework.context.event.ContextRefreshedEvent;
 import org.springframework.context.support.AbstractApplicationContext;
 import org.springframework.core.io.Resource;
 import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.util.Assert;
+import org.springframework.util.StringUtils;
 
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
 import java.util.*;
-
-import static org.springframework.beans.factory.config.BeanDefinition.ROLE_INFRASTRUCTURE;
+import java.util.concurrent.*;
 
 public class ContextParentBean implements Registry,
-        InitializingBean, DisposableBean, ApplicationContextAware, ApplicationListener<ApplicationEvent> {
+        InitializingBean, DisposableBean, ApplicationContextAware, ApplicationListener<ApplicationEvent>, BeanNameAware {
 
     private static final Logger log = LoggerFactory.getLogger(ContextParentBean.class);
-    private Map<String, Exception> nestedContextsExceptions = new LinkedHashMap<>();
+    // written by the threads that activate lazy modules
+    private Map<String, Exception> nestedContextsExceptions = Collections.synchronizedMap(new LinkedHashMap<String, Exception>());
 
     protected ApplicationContext context;
     protected ConfigurableListableBeanFactory beanFactory;
-    private List<ConfigurableApplicationContext> children = new ArrayList<>();
+    private List<ConfigurableApplicationContext> children = new CopyOnWriteArrayList<>();
+    private final Map<ConfigurableApplicationContext, String> childLocations = new ConcurrentHashMap<>();
+    private final Object childrenMonitor = new Object();
+    private volatile Map<String, Integer> locationOrder;
 
     protected String[] configLocations = new String[0];
     protected List<String> resultConfigLocations;
     protected List<String> excludeConfigLocations = new ArrayList<>();
-    protected Set<String> ignoredLocations = new HashSet<>();
+    protected Set<String> ignoredLocations = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
 
     private boolean strictErrorHandling = false;
     private String childContextPrototype = null;
+    private int startupParallelism = 1;
+    private boolean frozenImports = false;
+    private long lookupTimeout = 0;
+    private boolean asyncInit = false;
+
+    private final ConcurrentMap<String, ModuleReadiness> moduleReadiness = new ConcurrentHashMap<>();
+    private final ModuleReadiness readiness = new ModuleReadiness(null);
+    private volatile Future<?> initialization;
+    private volatile boolean closed = false;
+
+    private final ServiceRegistry serviceRegistry = new ServiceRegistry();
+    private final ExportDrainer exportDrainer = new ExportDrainer(serviceRegistry);
+    private final ModuleShutdown moduleShutdown = new ModuleShutdown(this, exportDrainer);
+    private final ModuleReloader moduleReloader = new ModuleReloader(this, serviceRegistry, exportDrainer);
+    private final LazyModuleActivator lazyActivator = new LazyModuleActivator(this, moduleReloader);
+    private boolean metricsEnabled = false;
+    private String metricsJmxDomain = "com.griddynamics.banshun";
+    private final ConcurrentMap<String, ObjectName> metricsMBeans = new ConcurrentHashMap<>();
+    private String beanName;
+    private ModuleTracer tracer = ModuleTracers.getDefault();
+    private double invocationTracingRate = 0;
+    private int beanProfilingLimit = 0;
+    private final ConcurrentMap<String, BeanCreationProfiler> beanProfilers = new ConcurrentHashMap<>();
+
+    private String[] lazyConfigLocations = new String[0];
+    private boolean lazyInit = false;
 
     public static final String TARGET_SOURCE_SUFFIX = "_targetSource";
     public static final String BEAN_DEF_SUFFIX = "_beanDef";
@@ -72,6 +110,288 @@ public class ContextParentBean implements Registry,
         this.strictErrorHandling = strictErrorHandling;
     }
 
+    /**
+     * Specifies maximal number of the nested children contexts that may be refreshed
+     * concurrently. Each context is refreshed once all the contexts it imports beans from
+     * are refreshed. This requires the dependencies to be analyzed (see
+     * {@link StrictContextParentBean}), otherwise the contexts are refreshed sequentially.
+     *
+     * @default 1
+     */
+    public void setStartupParallelism(int startupParallelism) {
+        Assert.isTrue(startupParallelism > 0, "Startup parallelism must be positive");
+        this.startupParallelism = startupParallelism;
+    }
+
+    /**
+     * Specifies maximal number of the nested contexts that may be closed concurrently. The
+     * contexts are closed in reverse order of their dependencies, level by level: a context is
+     * closed once all the contexts that import beans from it are closed. This requires the
+     * dependencies to be analyzed (see {@link StrictContextParentBean}), otherwise the contexts
+     * are closed sequentially in reverse order of their creation.
+     *
+     * @default 1
+     */
+    public void setShutdownParallelism(int shutdownParallelism) {
+        Assert.isTrue(shutdownParallelism > 0, "Shutdown parallelism must be positive");
+        moduleShutdown.setParallelism(shutdownParallelism);
+    }
+
+    /**
+     * Specifies maximal time in milliseconds to wait for a nested context to be closed. A context
+     * that is not closed in time is left closing in background and reported by
+     * {@link #getShutdownOverruns()}, the shutdown proceeds with the other contexts.
+     *
+     * @default 0, i.e. no limit
+     */
+    public void setShutdownTimeout(long shutdownTimeout) {
+        Assert.isTrue(shutdownTimeout >= 0, "Shutdown timeout must not be negative");
+        moduleShutdown.setTimeout(shutdownTimeout);
+    }
+
+    /**
+     * Specifies maximal time in milliseconds to wait for the calls of the services exported by
+     * a nested context to complete before the context is closed. Once the waiting starts, new
+     * calls of the services are rejected with {@link org.springframework.beans.factory.BeanCreationNotAllowedException}.
+     *
+     * @default 0, i.e. the calls are neither counted, rejected nor awaited
+     */
+    public void setDrainTimeout(long drainTimeout) {
+        Assert.isTrue(drainTimeout >= 0, "Drain timeout must not be negative");
+        exportDrainer.setDrainTimeout(drainTimeout);
+    }
+
+    /**
+     * Specifies whether calls of the imported services should be recorded, see
+     * {@link #getServiceMetrics()}. The metrics are recorded by the import proxies, so this
+     * applies to the calls from other modules only, and adds an interceptor to each proxy.
+     *
+     * @default false
+     */
+    public void setMetricsEnabled(boolean metricsEnabled) {
+        this.metricsEnabled = metricsEnabled;
+    }
+
+    /**
+     * Specifies JMX domain of the MBeans the {@link #setMetricsEnabled(boolean) metrics} are
+     * registered as in the platform MBean server, one per imported service. Empty domain
+     * disables the registration.
+     *
+     * @default com.griddynamics.banshun
+     */
+    public void setMetricsJmxDomain(String metricsJmxDomain) {
+        this.metricsJmxDomain = metricsJmxDomain;
+    }
+
+    /**
+     * Specifies the tracer to report lifecycle events of the modules and calls of the imported
+     * services to.
+     *
+     * @default {@link ModuleTracers#getDefault()}
+     */
+    public void setTracer(ModuleTracer tracer) {
+        Assert.notNull(tracer, "Tracer must not be null");
+        this.tracer = tracer;
+    }
+
+    /**
+     * Specifies fraction of the calls of the imported services that should be reported to the
+     * {@link #setTracer(ModuleTracer) tracer}, e.g. <tt>0.01</tt> for one call in a hundred. The
+     * calls are sampled by an interceptor of the import proxies, so calls through
+     * {@link #setFrozenImports(boolean) frozen imports} are not traced.
+     *
+     * @default 0, i.e. the calls are not traced
+     */
+    public void setInvocationTracingRate(double invocationTracingRate) {
+        Assert.isTrue(invocationTracingRate >= 0 && invocationTracingRate <= 1,
+                "Invocation tracing rate must be between 0 and 1");
+        this.invocationTracingRate = invocationTracingRate;
+    }
+
+    /**
+     * Specifies number of the slowest beans to record for each nested module, see
+     * {@link #getBeanProfilers()}. The profiler is registered by {@link SingleResourceXmlChildContext}
+     * and the web child context; contexts created from another
+     * {@link #setChildContextPrototype(String) childContextPrototype} have to register it by
+     * {@link BeanCreationProfiler#registerActive(ConfigurableListableBeanFactory)}.
+     *
+     * @default 0, i.e. creation of the beans is not profiled
+     */
+    public void setBeanProfilingLimit(int beanProfilingLimit) {
+        Assert.isTrue(beanProfilingLimit >= 0, "Bean profiling limit must not be negative");
+        this.beanProfilingLimit = beanProfilingLimit;
+    }
+
+    /**
+     * @return Profilers of creation of the beans of the nested modules by their locations, in
+     *         order of {@link #getResultConfigLocations() resultConfigLocations}. Empty unless
+     *         {@link #setBeanProfilingLimit(int) beanProfilingLimit} is set.
+     */
+    public Map<String, BeanCreationProfiler> getBeanProfilers() {
+        Map<String, BeanCreationProfiler> result = new LinkedHashMap<>();
+
+        if (resultConfigLocations != null) {
+            for (String loc : resultConfigLocations) {
+                BeanCreationProfiler profiler = beanProfilers.get(loc);
+                if (profiler != null) {
+                    result.put(loc, profiler);
+                }
+            }
+        }
+        return Collections.unmodifiableMap(result);
+    }
+
+    /**
+     * @return Invocation metrics of the imported services by their names. Empty unless
+     *         {@link #setMetricsEnabled(boolean) metricsEnabled}.
+     */
+    public Map<String, ServiceMetrics> getServiceMetrics() {
+        return serviceRegistry.getMetrics();
+    }
+
+    /**
+     * @return Locations of the nested contexts that have not been closed within the
+     *         {@link #setShutdownTimeout(long) shutdownTimeout}.
+     */
+    public List<String> getShutdownOverruns() {
+        return moduleShutdown.getOverruns();
+    }
+
+    /**
+     * Specifies locations of the modules that should be refreshed on demand, i.e. when a service
+     * exported by the module is looked up for the first time, instead of on startup. Modules that
+     * the activated module depends on are activated first. Wildcards are supported in the same way
+     * as in {@link #setConfigLocations(String[]) configLocations}.
+     *
+     * <p>This requires the dependencies to be analyzed (see {@link StrictContextParentBean}),
+     * otherwise all the modules are refreshed on startup.</p>
+     */
+    public void setLazyConfigLocations(String[] lazyConfigLocations) {
+        Assert.noNullElements(lazyConfigLocations, "Lazy config locations must not be null");
+        this.lazyConfigLocations = lazyConfigLocations;
+    }
+
+    /**
+     * Specifies whether all the modules should be refreshed on demand, see
+     * {@link #setLazyConfigLocations(String[])}.
+     *
+     * @default false
+     */
+    public void setLazyInit(boolean lazyInit) {
+        this.lazyInit = lazyInit;
+    }
+
+    /**
+     * @return Activations of the lazy modules in the order they've been activated.
+     */
+    public List<ModuleActivation> getModuleActivations() {
+        return lazyActivator.getActivations();
+    }
+
+    /**
+     * @return Locations of the lazy modules that have not been activated yet.
+     */
+    public Set<String> getPendingLazyLocations() {
+        return lazyActivator.getPendingLocations();
+    }
+
+    /**
+     * Specifies whether imported services should be frozen proxies. A frozen proxy resolves
+     * the exported bean on the first call and then dispatches all the calls directly to it,
+     * without the per-call target lookup and the AOP interceptor chain. Frozen proxies are
+     * plain JDK dynamic proxies, so they can't be advised.
+     *
+     * @default false
+     */
+    public void setFrozenImports(boolean frozenImports) {
+        this.frozenImports = frozenImports;
+    }
+
+    /**
+     * Specifies maximal time in milliseconds the first call of an imported service waits for
+     * the service to be exported. This allows the nested contexts to be refreshed in any order,
+     * e.g. concurrently without analyzed dependencies. Note that a context that imports a service
+     * exported by a context refreshed later in the same thread would wait in vain, so it should be
+     * used together with {@link #setStartupParallelism(int) startupParallelism}.
+     *
+     * @default 0, i.e. the call fails immediately if the service is not exported yet
+     */
+    public void setLookupTimeout(long lookupTimeout) {
+        Assert.isTrue(lookupTimeout >= 0, "Lookup timeout must not be negative");
+        this.lookupTimeout = lookupTimeout;
+    }
+
+    /**
+     * Specifies whether the nested contexts should be initialized on a background thread, so
+     * that refresh of the root context is not blocked until all of them are refreshed. Use
+     * {@link #getReadiness()} and {@link #getModuleReadiness()} to find out when they are ready.
+     * Failure of the initialization with {@link #setStrictErrorHandling(boolean) strictErrorHandling}
+     * enabled is then reported by the readiness and doesn't fail the root context.
+     *
+     * @default false
+     */
+    public void setAsyncInit(boolean asyncInit) {
+        this.asyncInit = asyncInit;
+    }
+
+    /**
+     * @return Readiness of the whole tree of the nested contexts. It's ready once all the
+     *         non-lazy nested contexts have been processed, even when some of them failed with
+     *         {@link #setStrictErrorHandling(boolean) strictErrorHandling} disabled.
+     */
+    public ModuleReadiness getReadiness() {
+        return readiness;
+    }
+
+    /**
+     * @return Readiness of the nested modules by their locations, in order of
+     *         {@link #getResultConfigLocations() resultConfigLocations}.
+     */
+    public Map<String, ModuleReadiness> getModuleReadiness() {
+        Map<String, ModuleReadiness> result = new LinkedHashMap<>();
+
+        if (resultConfigLocations != null) {
+            for (String loc : resultConfigLocations) {
+                result.put(loc, moduleReadiness(loc));
+            }
+        }
+        return Collections.unmodifiableMap(result);
+    }
+
+    /**
+     * @return Startup critical path of the nested modules computed from their
+     *         {@link ModuleReadiness#getRefreshDuration() refresh durations} and dependencies. This
+     *         requires the dependencies to be analyzed (see {@link StrictContextParentBean}),
+     *         otherwise all the modules are considered independent.
+     */
+    public StartupReport getStartupReport() {
+        Map<String, Long> durations = new HashMap<>();
+
+        for (ModuleReadiness module : moduleReadiness.values()) {
+            durations.put(module.getLocation(), module.getRefreshDuration());
+        }
+        List<String> locations = resultConfigLocations != null ? resultConfigLocations : Collections.<String>emptyList();
+
+        return new StartupReport(locations, getLocationsGraph(), durations, readiness.getRefreshDuration());
+    }
+
+    /**
+     * @return <tt>true</tt> if the whole tree is ready and none of the nested modules failed
+     *         or has been skipped.
+     */
+    public boolean isHealthy() {
+        if (!readiness.isReady()) {
+            return false;
+        }
+        for (ModuleReadiness module : moduleReadiness.values()) {
+            if (module.getStatus() == ModuleReadiness.Status.FAILED
+                    || module.getStatus() == ModuleReadiness.Status.SKIPPED) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     public void setChildContextPrototype(String childContextPrototype) {
         this.childContextPrototype = childContextPrototype;
     }
@@ -91,6 +411,10 @@ public class ContextParentBean implements Registry,
         return ignoredLocations;
     }
 
+    public void setBeanName(String beanName) {
+        this.beanName = beanName;
+    }
+
     public List<String> getResultConfigLocations() {
         return resultConfigLocations;
     }
@@ -125,41 +449,106 @@ public class ContextParentBean implements Registry,
         log.debug("Exporting bean '{}' with interface '{}' and name '{}'",
                 exportRef.getBeanName(), exportRef.getServiceInterface().getSimpleName(), exportRef.getServiceName());
 
-        String singletonBeanName = exportRef.getServiceName() + TARGET_SOURCE_SUFFIX;
+        ModuleTracer.Span span = tracer.startExport(
+                exportRef.getServiceName(), exportRef.getServiceInterface(), exportRef.getBeanName());
+        try {
+            ExportTargetSource export = new ExportTargetSource(exportRef);
 
-        if (!context.containsBean(singletonBeanName)) {
-            ExportTargetSource exportTargetSource = new ExportTargetSource(exportRef);
+            // exports of a module being reloaded are staged until it's refreshed
+            if (!moduleReloader.stageExport(exportRef.getServiceName(), export)
+                    && !serviceRegistry.registerExport(exportRef.getServiceName(), export)) {
+                log.debug("Service '{}' has been already exported", exportRef.getServiceName());
+            }
+            span.end();
+            return null;
 
-            beanFactory.registerSingleton(singletonBeanName, exportTargetSource);
+        } catch (RuntimeException ex) {
+            span.fail(ex);
+            throw ex;
         }
-
-        return null;
     }
 
     public <T> T lookup(String serviceName, Class<T> serviceInterface) {
         log.debug("Looking up service '{}' with interface '{}'", serviceName, serviceInterface.getSimpleName());
 
-        String importProxyName = serviceName + BEAN_DEF_SUFFIX;
+        Object importProxy = serviceRegistry.getImport(serviceName);
 
-        if (!context.containsBean(importProxyName)) {
-            RootBeanDefinition proxyBeanDef = new RootBeanDefinition(ProxyFactoryBean.class);
-
-            proxyBeanDef.setRole(ROLE_INFRASTRUCTURE);
-            proxyBeanDef.getPropertyValues().add("targetSource",
-                    new LookupTargetSource(serviceName, serviceInterface, serviceName + TARGET_SOURCE_SUFFIX, context));
-
-            ((BeanDefinitionRegistry) beanFactory).registerBeanDefinition(importProxyName, proxyBeanDef);
+        if (importProxy == null) {
+            // concurrent lookups may create redundant proxies, only the first registered one is used
+            importProxy = serviceRegistry.registerImport(serviceName, createImportProxy(serviceName, serviceInterface));
+        }
+        if (!serviceInterface.isInstance(importProxy)) {
+            throw new BeanNotOfRequiredTypeException(serviceName + BEAN_DEF_SUFFIX, serviceInterface, importProxy.getClass());
         }
+        return serviceInterface.cast(importProxy);
+    }
 
-        return context.getBean(importProxyName, serviceInterface);
+    /**
+     * Imports a service by the name without waiting for it to be exported.
+     *
+     * @param serviceName      The key to find a service with.
+     * @param serviceInterface The expected interface for the service.
+     * @return A future that is done once the service is exported; its value is the proxy that
+     *         {@link #lookup(String, Class)} would return.
+     */
+    public <T> Future<T> lookupAsync(String serviceName, Class<T> serviceInterface) {
+        log.debug("Looking up service '{}' with interface '{}' asynchronously",
+                serviceName, serviceInterface.getSimpleName());
+
+        return new LookupFuture<>(serviceName, serviceInterface, this, serviceRegistry,
+                lazyActivator.isEnabled() ? lazyActivator : null);
     }
 
     /** side effect only version of lookup(), addresses #8 in a little bit hakish way.
-     * it inserts {name}_beanDef bean definition with the specified class.
+     * it inserts {name}_beanDef singleton of the import proxy into the root context.
      * it allows autowiring run work in root context  */
     public Void voidLookup(String name, Class<?> clazz){
-    	lookup(name, clazz);
-    	return null;
+        Object importProxy = lookup(name, clazz);
+
+        if (serviceRegistry.markImportPublished(name)) {
+            beanFactory.registerSingleton(name + BEAN_DEF_SUFFIX, importProxy);
+        }
+        return null;
+    }
+
+    /**
+     * @return The registry of the exported services and import proxies.
+     */
+    public ServiceRegistry getServiceRegistry() {
+        return serviceRegistry;
+    }
+
+    /**
+     * Closes the nested contexts of the given location and creates them again. The services
+     * exported by the location are republished and the existing import proxies switch to the new
+     * exported beans on their next call, without being recreated. The calls in progress are
+     * drained from the old beans for at most {@link #setDrainTimeout(long) drainTimeout} before
+     * the old contexts are closed.
+     *
+     * <p>If an interface of a service exported by the location has changed, or a service is not
+     * exported anymore, the locations that import services from it are reloaded as well. This
+     * requires the dependencies to be analyzed (see {@link StrictContextParentBean}).</p>
+     *
+     * <p>If the new contexts fail to refresh, the old ones are kept together with their
+     * {@link #getModuleReadiness() readiness}, and the failure is recorded in
+     * {@link #getReloadFailures()}.</p>
+     *
+     * @param location One of the {@link #getResultConfigLocations() resultConfigLocations}.
+     * @return The reloaded locations, i.e. the given one followed by the reloaded dependents.
+     * @throws IllegalArgumentException If there are no active nested contexts of the location.
+     * @throws ApplicationContextException If the new contexts of a location fail to refresh.
+     */
+    public List<String> reloadLocation(String location) {
+        return moduleReloader.reload(location);
+    }
+
+    /**
+     * @return Failures of the last reloads of the locations whose old nested contexts have been
+     *         kept, see {@link #reloadLocation(String)}. A successful reload of the location
+     *         removes its failure.
+     */
+    public Map<String, Exception> getReloadFailures() {
+        return moduleReloader.getFailures();
     }
 
     /**
@@ -167,24 +556,49 @@ public class ContextParentBean implements Registry,
      */
     public void afterPropertiesSet() throws Exception {
         List<String> configLocations = new ArrayList<>();
-        List<String> resolvedConfigLocations = resolveConfigLocations(configLocations);
-        List<String> narrowedConfigLocations = excludeConfigLocations(resolvedConfigLocations);
+        List<String> narrowedConfigLocations;
+
+        ModuleTracer.Span span = tracer.startPhase(ModuleTracer.PHASE_RESOLVE);
+        try {
+            List<String> resolvedConfigLocations = resolveConfigLocations(configLocations);
+            narrowedConfigLocations = excludeConfigLocations(resolvedConfigLocations);
+            span.end();
+
+        } catch (Exception ex) {
+            span.fail(ex);
+            throw ex;
+        }
         this.resultConfigLocations = analyzeDependencies(narrowedConfigLocations);
+        this.locationOrder = null;
+        lazyActivator.setLazyLocations(resolveLazyLocations());
     }
 
     public void onApplicationEvent(ApplicationEvent event) {
         if (event instanceof ContextRefreshedEvent) {
             if (context.equals(((ContextRefreshedEvent) event).getApplicationContext())) {
-                initializeChildContexts();
+                if (asyncInit) {
+                    initializeChildContextsInBackground();
+                } else {
+                    initializeChildContexts();
+                }
             }
         }
     }
 
     public void destroy() throws Exception {
-        Collections.reverse(children);
-        for (ConfigurableApplicationContext child : children) {
-            child.close();
+        closed = true;
+
+        Future<?> init = initialization;
+        if (init != null) {
+            // a context being refreshed can't be interrupted safely, wait for it to be closed too
+            try {
+                init.get();
+            } catch (ExecutionException ex) {
+                log.debug("Background initialization of nested contexts failed", ex.getCause());
+            }
         }
+        moduleShutdown.close(children);
+        unregisterMetricsMBeans();
     }
 
 
@@ -225,6 +639,113 @@ public class ContextParentBean implements Registry,
     protected void addToFailedLocations(String loc) {
     }
 
+    /**
+     * Returns bean definitions parsed from the given location during analysis of dependencies
+     * and forgets them, so they can be reused when creating the nested context.
+     *
+     * @return The parsed definitions, or <tt>null</tt> if not available.
+     */
+    protected BeanDefinitionRegistry pollParsedBeanDefinitions(String location) {
+        return null;
+    }
+
+    /**
+     * @return Graph of dependencies between the locations, or <tt>null</tt> if dependencies are
+     *         not analyzed.
+     */
+    protected LocationsGraph getLocationsGraph() {
+        return null;
+    }
+
+    protected ModuleTracer getTracer() {
+        return tracer;
+    }
+
+
+    private Object createImportProxy(String serviceName, Class<?> serviceInterface) {
+        LookupTargetSource targetSource = new LookupTargetSource(serviceName, serviceInterface, serviceRegistry,
+                lazyActivator.isEnabled() ? lazyActivator : null, lookupTimeout, tracer, exportDrainer.isEnabled());
+
+        ServiceMetrics metrics = metricsEnabled ? registerMetrics(serviceName, serviceInterface) : null;
+
+        if (frozenImports) {
+            return FrozenImportInvocationHandler.createProxy(targetSource, context.getClassLoader(), metrics);
+        }
+        ProxyFactory proxyFactory = new ProxyFactory(serviceInterface, targetSource);
+        if (metrics != null) {
+            proxyFactory.addAdvice(new MetricsInterceptor(metrics));
+        }
+        if (invocationTracingRate > 0) {
+            proxyFactory.addAdvice(new TracingInterceptor(serviceName, tracer, invocationTracingRate));
+        }
+        return proxyFactory.getProxy(context.getClassLoader());
+    }
+
+    private ServiceMetrics registerMetrics(String serviceName, Class<?> serviceInterface) {
+        ServiceMetrics created = new ServiceMetrics(serviceName, serviceInterface);
+        ServiceMetrics metrics = serviceRegistry.registerMetrics(serviceName, created);
+
+        if (metrics == created && StringUtils.hasLength(metricsJmxDomain)) {
+            registerMetricsMBean(metrics);
+        }
+        return metrics;
+    }
+
+    private void registerMetricsMBean(ServiceMetrics metrics) {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        String serviceName = metrics.getServiceName();
+        try {
+            ObjectName name = new ObjectName(metricsJmxDomain + ":type=ServiceMetrics"
+                    + ",context=" + ObjectName.quote(String.valueOf(context.getId()))
+                    + ",registry=" + ObjectName.quote(String.valueOf(beanName))
+                    + ",service=" + ObjectName.quote(serviceName));
+
+            // metrics of a service whose interface has changed on reload replace the previous ones
+            if (name.equals(metricsMBeans.put(serviceName, name)) && server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(metrics, name);
+        } catch (JMException ex) {
+            log.warn("Failed to register metrics of service '{}' in JMX", serviceName, ex);
+        }
+    }
+
+    private void unregisterMetricsMBeans() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+
+        for (ObjectName name : metricsMBeans.values()) {
+            try {
+                if (server.isRegistered(name)) {
+                    server.unregisterMBean(name);
+                }
+            } catch (JMException ex) {
+                log.warn("Failed to unregister MBean {}", name, ex);
+            }
+        }
+        metricsMBeans.clear();
+    }
+
+    private Set<String> resolveLazyLocations() throws IOException {
+        if (!lazyInit && lazyConfigLocations.length == 0) {
+            return Collections.emptySet();
+        }
+        if (getLocationsGraph() == null) {
+            log.warn("Dependency graph of the contexts is not available, lazy modules are refreshed on startup");
+            return Collections.emptySet();
+        }
+        Set<String> result = new HashSet<>();
+        if (lazyInit) {
+            result.addAll(resultConfigLocations);
+        }
+        for (String location : lazyConfigLocations) {
+            result.addAll(collectConfigLocations(location));
+        }
+        result.retainAll(resultConfigLocations);
+
+        log.info("lazy locations: {}", result);
+
+        return result;
+    }
 
     private List<String> collectConfigLocations(String location) throws IOException {
         List<String> result = new ArrayList<>();
@@ -237,35 +758,402 @@ public class ContextParentBean implements Registry,
     }
 
     void initializeChildContexts() {
+        readiness.initializing();
+        try {
+            doInitializeChildContexts();
+            readiness.ready(Collections.unmodifiableList(new ArrayList<>(children)));
+
+            if (log.isInfoEnabled() && getLocationsGraph() != null) {
+                log.info("startup critical path: {}", getStartupReport());
+            }
+
+        } catch (RuntimeException ex) {
+            readiness.failed(ex);
+            throw ex;
+        }
+    }
+
+    private void initializeChildContextsInBackground() {
+        ExecutorService executor = Executors.newSingleThreadExecutor(new CustomizableThreadFactory("banshun-init-"));
+
+        initialization = executor.submit(new Runnable() {
+            public void run() {
+                try {
+                    initializeChildContexts();
+                } catch (RuntimeException ex) {
+                    log.error("Failed to initialize nested contexts in background", ex);
+                }
+            }
+        });
+        executor.shutdown();
+    }
+
+    private void doInitializeChildContexts() {
+        LocationsGraph graph = getLocationsGraph();
+        // lazy modules may be activated by the eager ones, so decide on a snapshot
+        Set<String> skippedLocations = new HashSet<>(lazyActivator.getLazyLocations());
+        lazyActivator.start();
+
+        if (startupParallelism > 1 && graph != null) {
+            initializeChildContextsConcurrently(graph, skippedLocations);
+        } else {
+            if (startupParallelism > 1) {
+                log.info("Dependency graph of the contexts is not available, initializing them sequentially");
+            }
+            for (String loc : resultConfigLocations) {
+                if (closed || ignoredLocations.contains(loc)) {
+                    moduleReadiness(loc).skipped();
+                    continue;
+                }
+                if (skippedLocations.contains(loc)) {
+                    continue;
+                }
+                completeChildContexts(createChildContexts(loc));
+            }
+        }
+    }
+
+    /**
+     * Refreshes the nested contexts on a pool of {@link #setStartupParallelism(int) startupParallelism}
+     * threads. A location is refreshed as soon as all the locations it imports beans from, and that
+     * precede it in {@link #resultConfigLocations}, have been processed. All the bookkeeping is done
+     * on the calling thread and the children are registered in the same order as the sequential
+     * initialization would do.
+     *
+     * @param skippedLocations Locations that should not be refreshed, but their dependents can be.
+     */
+    private void initializeChildContextsConcurrently(LocationsGraph graph, Set<String> skippedLocations) {
+        Map<String, Integer> pendingDependencies = new HashMap<>();
+        Map<String, List<String>> dependents = new HashMap<>();
+        Deque<String> ready = new ArrayDeque<>();
+
         for (String loc : resultConfigLocations) {
-            if (ignoredLocations.contains(loc)) {
-                continue;
+            int pending = 0;
+            for (String dependency : graph.getDependencies(loc)) {
+                // dependencies that are not processed before this location (i.e. cycles) are ignored,
+                // as well as in sequential mode
+                if (dependents.containsKey(dependency)) {
+                    dependents.get(dependency).add(loc);
+                    pending++;
+                }
             }
-            try {
-                Resource[] resources = context.getResources(loc);
+            dependents.put(loc, new ArrayList<String>());
+            pendingDependencies.put(loc, pending);
+            if (pending == 0) {
+                ready.add(loc);
+            }
+        }
 
-                for (final Resource res : resources) {
-                    try {
-                        ConfigurableApplicationContext child = createChildContext(res, context);
-                        children.add(child);
-                    } catch (Exception e) {
-                        log.error("Failed to process resource [{}] from location [{}] ", new Object[]{res.getURI(), loc, e});
-                        if (strictErrorHandling) {
-                            throw new RuntimeException(e);
+        ExecutorService executor = Executors.newFixedThreadPool(startupParallelism,
+                new CustomizableThreadFactory("banshun-startup-"));
+        CompletionService<LocationContexts> completionService = new ExecutorCompletionService<>(executor);
+        Map<String, LocationContexts> completed = new HashMap<>();
+        RuntimeException failure = null;
+        int running = 0;
+
+        try {
+            do {
+                while (!ready.isEmpty()) {
+                    final String loc = ready.poll();
+
+                    if (failure != null || closed) {
+                        moduleReadiness(loc).skipped();
+                        continue;
+                    }
+                    if (ignoredLocations.contains(loc) || skippedLocations.contains(loc)) {
+                        if (ignoredLocations.contains(loc)) {
+                            moduleReadiness(loc).skipped();
                         }
-                        nestedContextsExceptions.put(loc, e);
-                        addToFailedLocations(loc);
-                        break;
+                        ready.addAll(releaseDependents(loc, pendingDependencies, dependents));
+                        continue;
                     }
+                    completionService.submit(new Callable<LocationContexts>() {
+                        public LocationContexts call() {
+                            return createChildContexts(loc);
+                        }
+                    });
+                    running++;
+                }
+                if (running == 0) {
+                    break;
                 }
-            } catch (IOException e) {
-                log.error("Failed to process configuration from [{}]", loc, e);
-                if (strictErrorHandling) {
-                    throw new RuntimeException(e);
+                LocationContexts result = takeCompleted(completionService);
+                running--;
+                completed.put(result.location, result);
+
+                if (failure == null) {
+                    try {
+                        recordFailure(result);
+                        ready.addAll(releaseDependents(result.location, pendingDependencies, dependents));
+                    } catch (RuntimeException ex) {
+                        // wait for running contexts so that they can be closed on destroy
+                        failure = ex;
+                    }
                 }
-                addToFailedLocations(loc);
+            } while (true);
+
+        } finally {
+            executor.shutdownNow();
+
+            List<ConfigurableApplicationContext> contexts = new ArrayList<>();
+            for (String loc : resultConfigLocations) {
+                if (completed.containsKey(loc)) {
+                    contexts.addAll(completed.get(loc).contexts);
+                    for (ConfigurableApplicationContext ctx : completed.get(loc).contexts) {
+                        childLocations.put(ctx, loc);
+                    }
+                }
+            }
+            addChildContexts(contexts);
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private LocationContexts takeCompleted(CompletionService<LocationContexts> completionService) {
+        try {
+            return completionService.take().get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while initializing nested contexts", ex);
+        } catch (ExecutionException ex) {
+            throw new IllegalStateException("Unexpected failure while initializing nested contexts", ex.getCause());
+        }
+    }
+
+    private List<String> releaseDependents(String loc, Map<String, Integer> pendingDependencies,
+                                           Map<String, List<String>> dependents) {
+        List<String> released = new ArrayList<>();
+
+        for (String dependent : dependents.get(loc)) {
+            int pending = pendingDependencies.get(dependent) - 1;
+            pendingDependencies.put(dependent, pending);
+            if (pending == 0) {
+                released.add(dependent);
             }
         }
+        return released;
+    }
+
+    /**
+     * Creates the nested contexts for the given location. This method doesn't modify any state
+     * of this bean except the thread-safe readiness of the location, so it can be invoked
+     * concurrently.
+     */
+    LocationContexts createChildContexts(String loc) {
+        return createChildContexts(loc, moduleReadiness(loc));
+    }
+
+    /**
+     * Creates the nested contexts for the given location, reporting to the given readiness
+     * instead of the registered one, e.g. when the location is being reloaded.
+     */
+    LocationContexts createChildContexts(String loc, ModuleReadiness locationReadiness) {
+        locationReadiness.initializing();
+
+        ModuleTracer.Span span = tracer.startRefresh(loc);
+        LocationContexts result = createChildContextsAt(loc);
+
+        if (result.failure == null) {
+            span.end();
+            locationReadiness.ready(Collections.unmodifiableList(result.contexts));
+        } else {
+            span.fail(result.failure);
+            locationReadiness.failed(result.failure);
+        }
+        return result;
+    }
+
+    private LocationContexts createChildContextsAt(String loc) {
+        LocationContexts result = new LocationContexts(loc);
+        BeanDefinitionRegistry parsedDefinitions = pollParsedBeanDefinitions(loc);
+        BeanCreationProfiler profiler = null;
+        BeanCreationProfiler previousProfiler = null;
+
+        if (beanProfilingLimit > 0) {
+            // a reloaded module gets a new profiler
+            profiler = new BeanCreationProfiler(loc, beanProfilingLimit);
+            beanProfilers.put(loc, profiler);
+            previousProfiler = BeanCreationProfiler.activate(profiler);
+        }
+        try {
+            Resource[] resources = context.getResources(loc);
+
+            for (final Resource res : resources) {
+                try {
+                    result.contexts.add(createChildContext(res, context,
+                            resources.length == 1 ? parsedDefinitions : null));
+                } catch (Exception e) {
+                    log.error("Failed to process resource [{}] from location [{}] ", new Object[]{res.getURI(), loc, e});
+                    result.failure = e;
+                    break;
+                }
+            }
+        } catch (IOException e) {
+            log.error("Failed to process configuration from [{}]", loc, e);
+            result.failure = e;
+            result.resolvingFailed = true;
+
+        } finally {
+            if (profiler != null) {
+                BeanCreationProfiler.deactivate(previousProfiler);
+                log.debug("Slowest beans of location {}: {}", loc, profiler.getSlowestBeans());
+            }
+        }
+        return result;
+    }
+
+    private ModuleReadiness moduleReadiness(String loc) {
+        ModuleReadiness result = moduleReadiness.get(loc);
+
+        if (result == null) {
+            ModuleReadiness created = new ModuleReadiness(loc);
+            result = moduleReadiness.putIfAbsent(loc, created);
+            if (result == null) {
+                result = created;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Registers the nested contexts created by {@link #createChildContexts(String)}.
+     */
+    void completeChildContexts(LocationContexts result) {
+        for (ConfigurableApplicationContext ctx : result.contexts) {
+            childLocations.put(ctx, result.location);
+        }
+        addChildContexts(result.contexts);
+        recordFailure(result);
+    }
+
+    /**
+     * Replaces the nested contexts of a reloaded location, keeping their position.
+     */
+    void replaceChildContexts(String location, List<ConfigurableApplicationContext> oldContexts,
+                              List<ConfigurableApplicationContext> newContexts) {
+        synchronized (childrenMonitor) {
+            int index = children.indexOf(oldContexts.get(0));
+
+            children.removeAll(oldContexts);
+            children.addAll(Math.min(index, children.size()), newContexts);
+        }
+        for (ConfigurableApplicationContext ctx : oldContexts) {
+            childLocations.remove(ctx);
+        }
+        for (ConfigurableApplicationContext ctx : newContexts) {
+            childLocations.put(ctx, location);
+        }
+    }
+
+    /**
+     * @return The active nested contexts of the given location, in order of their creation.
+     */
+    List<ConfigurableApplicationContext> getActiveChildContexts(String location) {
+        List<ConfigurableApplicationContext> result = new ArrayList<>();
+
+        for (ConfigurableApplicationContext child : children) {
+            if (location.equals(childLocations.get(child)) && child.isActive()) {
+                result.add(child);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return The location of the given nested context, or <tt>null</tt> if not known.
+     */
+    String getChildLocation(ConfigurableApplicationContext child) {
+        return childLocations.get(child);
+    }
+
+    /**
+     * Replaces the import proxy of the given service published in the root context by
+     * {@link #voidLookup(String, Class)}, after its interface has changed on a reload.
+     *
+     * @param serviceInterface The new interface of the service, or <tt>null</tt> if it's not
+     *                         exported anymore; then the proxy is just removed.
+     */
+    void republishImport(String name, Class<?> serviceInterface) {
+        if (beanFactory instanceof DefaultSingletonBeanRegistry) {
+            ((DefaultSingletonBeanRegistry) beanFactory).destroySingleton(name + BEAN_DEF_SUFFIX);
+        }
+        if (serviceInterface != null) {
+            voidLookup(name, serviceInterface);
+        } else {
+            log.warn("Service '{}' is not exported anymore, its import proxy is removed from the root context", name);
+        }
+    }
+
+    void replaceModuleReadiness(String location, ModuleReadiness locationReadiness) {
+        moduleReadiness.put(location, locationReadiness);
+    }
+
+    /**
+     * Adds the nested contexts to the children in order of their locations in
+     * {@link #resultConfigLocations}, also when a lazy module is activated after the modules
+     * that depend on it. The children are thus closed in reverse order of their dependencies.
+     */
+    private void addChildContexts(List<ConfigurableApplicationContext> contexts) {
+        synchronized (childrenMonitor) {
+            for (ConfigurableApplicationContext ctx : contexts) {
+                int order = locationOrder(childLocations.get(ctx));
+                int index = children.size();
+
+                while (index > 0 && locationOrder(childLocations.get(children.get(index - 1))) > order) {
+                    index--;
+                }
+                children.add(index, ctx);
+            }
+        }
+    }
+
+    /**
+     * @return Index of the location in {@link #resultConfigLocations}, or {@link Integer#MAX_VALUE}
+     *         if not known.
+     */
+    private int locationOrder(String location) {
+        Map<String, Integer> order = locationOrder;
+
+        if (order == null) {
+            order = new HashMap<>();
+            if (resultConfigLocations != null) {
+                for (int i = 0; i < resultConfigLocations.size(); i++) {
+                    order.put(resultConfigLocations.get(i), i);
+                }
+            }
+            locationOrder = order;
+        }
+        Integer result = location != null ? order.get(location) : null;
+        return result != null ? result : Integer.MAX_VALUE;
+    }
+
+    private void recordFailure(LocationContexts result) {
+        if (result.failure == null) {
+            return;
+        }
+        if (strictErrorHandling) {
+            throw new BeanCreationException("Failed to create nested contexts of location " + result.location,
+                    result.failure);
+        }
+        if (!result.resolvingFailed) {
+            nestedContextsExceptions.put(result.location, result.failure);
+        }
+        addToFailedLocations(result.location);
+    }
+
+    /**
+     * Creates the nested context from the given bean definitions, if available and no
+     * {@link #setChildContextPrototype(String) childContextPrototype} is specified. Otherwise
+     * delegates to {@link #createChildContext(Resource, ApplicationContext)}.
+     */
+    ConfigurableApplicationContext createChildContext(Resource res, ApplicationContext parent,
+                                                      BeanDefinitionRegistry parsedDefinitions) throws Exception {
+        if (parsedDefinitions == null || (childContextPrototype != null && childContextPrototype.length() > 0)) {
+            return createChildContext(res, parent);
+        }
+        return new SingleResourceXmlChildContext(res, parent, parsedDefinitions);
     }
 
     ConfigurableApplicationContext createChildContext(Resource res, ApplicationContext parent) throws Exception {
@@ -280,5 +1168,4 @@ public class ContextParentBean implements Registry,
 
         return new SingleResourceXmlChildContext(res, parent);
     }
-
 }
@@ -32,11 +32,7 @@ public class DependencySorter {
 
     private List<Location> conflictContextGroup = Collections.emptyList();
     private boolean prohibitCycles = true;
-    private List<Location> locations = new LinkedList<>();
-
-    interface Predicate {
-        boolean isValid(Location s);
-    }
+    private List<Location> locations;
 
     static class Location {
         String locationName;
@@ -92,7 +88,7 @@ public class DependencySorter {
 
 
     private List<Location> prepareLocations(String[] configLocations, Map<String, List<BeanReferenceInfo>> imports, Map<String, BeanReferenceInfo> exports) {
-        List<Location> locations = new LinkedList<>();
+        List<Location> locations = new ArrayList<>(configLocations.length);
         Map<String, Location> locationsMap = new HashMap<>();
 
         for (String locationName : configLocations) {
@@ -156,76 +152,146 @@ public class DependencySorter {
         return allImportBeans;
     }
 
+    /**
+     * Sorts the locations using counters of unsatisfied imports and exports (i.e. Kahn's algorithm),
+     * so it runs in O((n + e) log n) where n is number of the locations and e number of the imports.
+     *
+     * <p>The head consists of the locations whose imports can be satisfied, the first location (in
+     * order of the config locations) that is ready is always pulled first. The tail consists of the
+     * locations whose exports are not imported by any unsorted location, the last ready location is
+     * always pulled first. The rest of the locations (conflict group) contains cycles and is placed
+     * between the head and the tail in its original order.</p>
+     */
     private List<Location> sortLocations() {
-        LinkedList<Location> list = new LinkedList<>(locations);
-        List<Location> orderedHead = pullLocationListHead(list);
+        int size = locations.size();
+        List<Collection<String>> importNames = new ArrayList<>(size);
+        List<Collection<String>> exportNames = new ArrayList<>(size);
+        Map<String, Integer> exporters = new HashMap<>();
+        Map<String, List<Integer>> importers = new HashMap<>();
+
+        for (int i = 0; i < size; i++) {
+            Location location = locations.get(i);
+            importNames.add(collectBeanNames(location.getImportBeans()));
+            exportNames.add(collectBeanNames(location.getExportBeans()));
+
+            for (String serviceName : exportNames.get(i)) {
+                exporters.put(serviceName, i);
+            }
+            for (String serviceName : importNames.get(i)) {
+                if (!importers.containsKey(serviceName)) {
+                    importers.put(serviceName, new ArrayList<Integer>());
+                }
+                importers.get(serviceName).add(i);
+            }
+        }
+
+        boolean[] sorted = new boolean[size];
+        List<Location> orderedHead = pullLocationListHead(importNames, exportNames, importers, sorted);
 
-        if (list.isEmpty()) {
+        if (orderedHead.size() == size) {
             return orderedHead;
         }
 
-        List<Location> tail = pullLocationListTail(list);
-        if (!list.isEmpty()) {
-            conflictContextGroup = list;
+        List<Location> tail = pullLocationListTail(importNames, exportNames, exporters, sorted);
+        List<Location> conflicts = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            if (!sorted[i]) {
+                conflicts.add(locations.get(i));
+            }
+        }
+
+        if (!conflicts.isEmpty()) {
+            conflictContextGroup = conflicts;
             if (!prohibitCycles) {
                 log.warn("Conflict in nested context dependencies was found. Please check the following list of suspect contexts: {}",
-                        getCycleOfContexts(list));
+                        getCycleOfContexts(conflicts));
             } else {
                 throw new BeanCreationException("Conflict in nested context dependencies was found. Check the " +
-                        "following list of suspect contexts: " + getCycleOfContexts(list));
+                        "following list of suspect contexts: " + getCycleOfContexts(conflicts));
             }
         } else {
             conflictContextGroup = Collections.emptyList();
         }
-        orderedHead.addAll(list);
+        orderedHead.addAll(conflicts);
         orderedHead.addAll(tail);
 
         return orderedHead;
     }
 
-    private List<Location> pullLocationListTail(LinkedList<Location> list) {
-        LinkedList<Location> tail = new LinkedList<>();
+    private List<Location> pullLocationListHead(List<Collection<String>> importNames, List<Collection<String>> exportNames,
+                                                Map<String, List<Integer>> importers, boolean[] sorted) {
+        int[] unsatisfiedImports = new int[locations.size()];
+        PriorityQueue<Integer> canBeFired = new PriorityQueue<>();
 
-        final LinkedList<String> annihilatedExports = new LinkedList<>();
-        Predicate hasNoDependencies = new Predicate() {
-            public boolean isValid(Location s) {
-                return s.getExportBeans().isEmpty() || annihilatedExports.containsAll(collectBeanNames(s.getExportBeans()));
+        for (int i = 0; i < locations.size(); i++) {
+            unsatisfiedImports[i] = importNames.get(i).size();
+            if (unsatisfiedImports[i] == 0) {
+                canBeFired.add(i);
             }
-        };
-
-        Collections.reverse(list);
-        Location location;
-        while (!list.isEmpty() && (location = removeLocation(list, hasNoDependencies)) != null) {
-            for (BeanReferenceInfo imp : location.getImportBeans()) {
-                if (thereIsNoImport(list, imp)) {
-                    annihilatedExports.add(imp.getServiceName());
+        }
+
+        List<Location> orderedHead = new ArrayList<>();
+        while (!canBeFired.isEmpty()) {
+            int index = canBeFired.poll();
+            sorted[index] = true;
+            orderedHead.add(locations.get(index));
+
+            for (String serviceName : exportNames.get(index)) {
+                if (!importers.containsKey(serviceName)) {
+                    continue;
+                }
+                for (int importer : importers.get(serviceName)) {
+                    if (--unsatisfiedImports[importer] == 0) {
+                        canBeFired.add(importer);
+                    }
                 }
             }
-            tail.add(0, location);
         }
-        Collections.reverse(list);
-
-        return tail;
+        return orderedHead;
     }
 
-    private List<Location> pullLocationListHead(LinkedList<Location> list) {
-        final Set<String> definedBeans = new LinkedHashSet<>();
-        Predicate canBeFired = new Predicate() {
-            public boolean isValid(Location location) {
-                return definedBeans.containsAll(collectBeanNames(location.getImportBeans()));
+    private List<Location> pullLocationListTail(List<Collection<String>> importNames, List<Collection<String>> exportNames,
+                                                Map<String, Integer> exporters, boolean[] sorted) {
+        int[] unannihilatedExports = new int[locations.size()];
+        Map<String, Integer> remainingImports = new HashMap<>();
+        PriorityQueue<Integer> hasNoDependencies = new PriorityQueue<>(11, Collections.reverseOrder());
+
+        for (int i = 0; i < locations.size(); i++) {
+            if (sorted[i]) {
+                continue;
             }
-        };
-        Location location;
-        LinkedList<Location> orderedHead = new LinkedList<>();
+            unannihilatedExports[i] = exportNames.get(i).size();
+            if (unannihilatedExports[i] == 0) {
+                hasNoDependencies.add(i);
+            }
+            for (String serviceName : importNames.get(i)) {
+                Integer count = remainingImports.get(serviceName);
+                remainingImports.put(serviceName, count == null ? 1 : count + 1);
+            }
+        }
 
-        while (!list.isEmpty() && (location = removeLocation(list, canBeFired)) != null) {
-            definedBeans.addAll(collectBeanNames(location.getExportBeans()));
-            orderedHead.add(location);
+        LinkedList<Location> tail = new LinkedList<>();
+        while (!hasNoDependencies.isEmpty()) {
+            int index = hasNoDependencies.poll();
+            sorted[index] = true;
+            tail.addFirst(locations.get(index));
+
+            for (String serviceName : importNames.get(index)) {
+                int count = remainingImports.get(serviceName) - 1;
+                remainingImports.put(serviceName, count);
+
+                Integer exporter = exporters.get(serviceName);
+                if (count == 0 && exporter != null && !sorted[exporter]) {
+                    if (--unannihilatedExports[exporter] == 0) {
+                        hasNoDependencies.add(exporter);
+                    }
+                }
+            }
         }
-        return orderedHead;
+        return tail;
     }
 
-    private String getCycleOfContexts(LinkedList<Location> list) {
+    private String getCycleOfContexts(List<Location> list) {
         StringBuilder sb = new StringBuilder();
 
         for (Iterator<Location> listIterator = list.iterator(); listIterator.hasNext();) {
@@ -246,29 +312,6 @@ public class DependencySorter {
         return contextName;
     }
 
-    private boolean thereIsNoImport(LinkedList<Location> list, BeanReferenceInfo importedBean) {
-        for (Location location : list) {
-            for (BeanReferenceInfo bean : location.getImportBeans()) {
-                if (bean.getServiceName().equals(importedBean.getServiceName())) {
-                    return false;
-                }
-            }
-        }
-        return true;
-    }
-
-
-    Location removeLocation(Collection<Location> list, Predicate p) {
-        for (Iterator<Location> iterator = list.iterator(); iterator.hasNext();) {
-            Location location = iterator.next();
-            if (p.isValid(location)) {
-                iterator.remove();
-                return location;
-            }
-        }
-        return null;
-    }
-
     Collection<String> collectBeanNames(Collection<BeanReferenceInfo> beanInfoCollection) {
         Set<String> set = new LinkedHashSet<>();
         for (BeanReferenceInfo beanReferenceInfo : beanInfoCollection) {
@@ -0,0 +1,117 @@
+/*
+ * Copyright 2012 Grid Dynamics Consulting Services, Inc.
+ *      http://www.griddynamics.com
+ *
+ * Copyright 2013 Jakub Jirutka <jakub@jirutka.cz>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.griddynamics.banshun;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Drains the calls of the services exported by the nested contexts before they are closed,
+ * see {@link ContextParentBean#setDrainTimeout(long)}.
+ */
+class ExportDrainer {
+
+    private static final Logger log = LoggerFactory.getLogger(ExportDrainer.class);
+
+    private final ServiceRegistry serviceRegistry;
+    private long drainTimeout = 0;
+
+
+    ExportDrainer(ServiceRegistry serviceRegistry) {
+        this.serviceRegistry = serviceRegistry;
+    }
+
+
+    void setDrainTimeout(long drainTimeout) {
+        this.drainTimeout = drainTimeout;
+    }
+
+    /**
+     * @return <tt>true</tt> if the calls of the exports should be counted and drained.
+     */
+    boolean isEnabled() {
+        return drainTimeout > 0;
+    }
+
+    /**
+     * @return Exports of the beans of the given nested bean factory by the service names.
+     */
+    Map<String, ExportTargetSource> findExports(BeanFactory childBeanFactory) {
+        Map<String, ExportTargetSource> result = new HashMap<>();
+
+        for (String serviceName : serviceRegistry.getExportedServiceNames()) {
+            ExportTargetSource export = serviceRegistry.getExport(serviceName);
+
+            if (export != null && export.getBeanFactory() == childBeanFactory) {
+                result.put(serviceName, export);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Drains the exports of the given nested context, if draining is enabled.
+     */
+    void drain(ConfigurableApplicationContext child) {
+        if (isEnabled() && child.isActive()) {
+            drainExports(findExports(child.getBeanFactory()).values());
+        }
+    }
+
+    /**
+     * Stops admitting new calls of the given exports and waits at most the drain timeout for
+     * the calls in progress.
+     */
+    void drainExports(Collection<ExportTargetSource> exports) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(drainTimeout);
+
+        for (ExportTargetSource export : exports) {
+            long remaining = TimeUnit.NANOSECONDS.toMillis(Math.max(0, deadline - System.nanoTime()));
+
+            if (!drainExport(export, remaining)) {
+                return;
+            }
+        }
+    }
+
+
+    /**
+     * @return <tt>false</tt> if the current thread has been interrupted.
+     */
+    private boolean drainExport(ExportTargetSource export, long timeout) {
+        try {
+            if (!export.drain(timeout, TimeUnit.MILLISECONDS) && timeout > 0) {
+                log.warn("Exported bean '{}' still has {} calls in progress after {} ms, closing it anyway",
+                        new Object[]{export.getBeanName(), export.getInFlightCalls(), drainTimeout});
+            }
+            return true;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            log.warn("Interrupted while draining calls of exported bean '{}'", export.getBeanName());
+            return false;
+        }
+    }
+}
@@ -25,9 +25,11 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.aop.TargetSource;
 import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.BeanCreationNotAllowedException;
 import org.springframework.beans.factory.BeanFactory;
 import org.springframework.beans.factory.BeanNotOfRequiredTypeException;
 
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
 
 import static org.apache.commons.lang3.builder.ToStringStyle.SHORT_PREFIX_STYLE;
@@ -37,6 +39,8 @@ public class ExportTargetSource implements TargetSource {
     private static final Logger log = LoggerFactory.getLogger(ExportTargetSource.class);
 
     private final AtomicReference<Object> target = new AtomicReference<>();
+    private final InFlightCounter inFlightCalls = new InFlightCounter();
+    private volatile boolean superseded = false;
 
     private final String beanName;
     private final Class<?> serviceInterface;
@@ -62,6 +66,71 @@ public class ExportTargetSource implements TargetSource {
         return serviceInterface;
     }
 
+    /**
+     * @return Number of the calls of the exported bean in progress, see {@link #enter()}.
+     */
+    public long getInFlightCalls() {
+        return inFlightCalls.count();
+    }
+
+    /**
+     * @return <tt>true</tt> if the export has been drained and doesn't admit new calls.
+     */
+    public boolean isDraining() {
+        return inFlightCalls.isClosed();
+    }
+
+    /**
+     * Registers a call of the exported bean by an importer. The call must be completed by
+     * {@link #exit()}.
+     *
+     * @throws BeanCreationNotAllowedException If the export is being drained.
+     */
+    public void enter() throws BeanCreationNotAllowedException {
+        if (!tryEnter()) {
+            throw new BeanCreationNotAllowedException(beanName, "Exported bean is being closed");
+        }
+    }
+
+    /**
+     * Registers a call of the exported bean, unless the export is being drained.
+     *
+     * @return <tt>false</tt> if the export is being drained and the call must not proceed.
+     */
+    public boolean tryEnter() {
+        return inFlightCalls.enter();
+    }
+
+    /**
+     * Completes a call registered by {@link #enter()}.
+     */
+    public void exit() {
+        inFlightCalls.exit();
+    }
+
+    /**
+     * Stops admitting new calls of the exported bean and waits at most the given time for
+     * the calls in progress to complete.
+     *
+     * @return <tt>true</tt> if all the calls have completed, <tt>false</tt> if the timeout elapsed.
+     * @throws InterruptedException If the current thread is interrupted while waiting.
+     */
+    public boolean drain(long timeout, TimeUnit unit) throws InterruptedException {
+        return inFlightCalls.close(timeout, unit);
+    }
+
+    /**
+     * @return <tt>true</tt> if the export has been replaced or removed by a reload of the
+     *         exporting module, so the importers should resolve the export again.
+     */
+    public boolean isSuperseded() {
+        return superseded;
+    }
+
+    void supersede() {
+        superseded = true;
+    }
+
     public boolean isStatic() {
         return true;
     }
@@ -98,11 +167,11 @@ public class ExportTargetSource implements TargetSource {
 
     @Override
     public boolean equals(Object obj) {
-        return EqualsBuilder.reflectionEquals(this, obj, "target");
+        return EqualsBuilder.reflectionEquals(this, obj, "target", "inFlightCalls", "superseded");
     }
 
     @Override
     public int hashCode() {
-        return HashCodeBuilder.reflectionHashCode(this, "target");
+        return HashCodeBuilder.reflectionHashCode(this, "target", "inFlightCalls", "superseded");
     }
 }
@@ -0,0 +1,168 @@
+/*
+ * Copyright 2012 Grid Dynamics Consulting Services, Inc.
+ *      http://www.griddynamics.com
+ *
+ * Copyright 2013 Jakub Jirutka <jakub@jirutka.cz>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.griddynamics.banshun;
+
+import org.springframework.aop.support.AopUtils;
+import org.springframework.util.ClassUtils;
+import org.springframework.util.ReflectionUtils;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Invocation handler of a frozen import proxy. All the calls are dispatched directly to the
+ * target cached by the handler, without any advice chain. The target is obtained from the
+ * {@link LookupTargetSource} on the first call, and again only when its export is superseded
+ * by a reload. If the target source counts calls, they're registered on the cached export.
+ *
+ * <p>Each method is invoked through a {@link MethodHandle} created on its first call, instead
+ * of reflection. The {@code equals} and {@code hashCode} methods are implemented by the proxy
+ * itself, in the same way as for Spring AOP proxies, all other methods (including
+ * {@code toString}) are invoked on the target.</p>
+ */
+class FrozenImportInvocationHandler implements InvocationHandler {
+
+    private static final MethodType INVOKER_TYPE = MethodType.methodType(Object.class, Object.class, Object[].class);
+
+    private final LookupTargetSource targetSource;
+    private final ServiceMetrics metrics;
+    private volatile LookupTargetSource.Binding binding;
+    // the proxy passes the same Method instances on each call
+    private final ConcurrentMap<Method, MethodHandle> invokers = new ConcurrentHashMap<>();
+
+
+    FrozenImportInvocationHandler(LookupTargetSource targetSource) {
+        this(targetSource, null);
+    }
+
+    /**
+     * @param metrics The metrics to record the calls into, or <tt>null</tt> to not record them.
+     */
+    FrozenImportInvocationHandler(LookupTargetSource targetSource, ServiceMetrics metrics) {
+        this.targetSource = targetSource;
+        this.metrics = metrics;
+    }
+
+
+    /**
+     * Creates JDK dynamic proxy that implements the service interface of the given target source.
+     */
+    static Object createProxy(LookupTargetSource targetSource, ClassLoader classLoader) {
+        return createProxy(targetSource, classLoader, null);
+    }
+
+    /**
+     * Creates JDK dynamic proxy that implements the service interface of the given target source
+     * and records its calls into the given metrics.
+     */
+    static Object createProxy(LookupTargetSource targetSource, ClassLoader classLoader, ServiceMetrics metrics) {
+        return Proxy.newProxyInstance(
+                classLoader != null ? classLoader : ClassUtils.getDefaultClassLoader(),
+                new Class<?>[]{ targetSource.getTargetClass() },
+                new FrozenImportInvocationHandler(targetSource, metrics));
+    }
+
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        if (AopUtils.isEqualsMethod(method)) {
+            return proxy == args[0] || isEqualProxy(args[0]);
+        }
+        if (AopUtils.isHashCodeMethod(method)) {
+            return FrozenImportInvocationHandler.class.hashCode() * 13 + targetSource.hashCode();
+        }
+        MethodMetrics methodMetrics = metrics != null ? metrics.getMethodMetrics(method) : null;
+
+        if (methodMetrics == null) {
+            return invokeTarget(method, args);
+        }
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            Object result = invokeTarget(method, args);
+            failed = false;
+            return result;
+        } finally {
+            methodMetrics.record(System.nanoTime() - start, failed);
+        }
+    }
+
+    private Object invokeTarget(Method method, Object[] args) throws Throwable {
+        LookupTargetSource.Binding local = binding;
+
+        if (!targetSource.isCountingCalls()) {
+            if (local == null || local.isSuperseded()) {
+                binding = local = targetSource.current(local);
+            }
+            return (Object) invoker(method).invokeExact(local.target, args);
+        }
+        LookupTargetSource.Binding entered = targetSource.enter(local);
+        if (entered != local) {
+            binding = entered;
+        }
+        try {
+            return (Object) invoker(method).invokeExact(entered.target, args);
+        } finally {
+            entered.exit();
+        }
+    }
+
+    private MethodHandle invoker(Method method) {
+        MethodHandle invoker = invokers.get(method);
+
+        if (invoker == null) {
+            invoker = createInvoker(method);
+            MethodHandle existing = invokers.putIfAbsent(method, invoker);
+            if (existing != null) {
+                invoker = existing;
+            }
+        }
+        return invoker;
+    }
+
+    /**
+     * @return Handle of type {@code (Object target, Object[] args)Object} that invokes the method.
+     */
+    private static MethodHandle createInvoker(Method method) {
+        // the service interface may be not public
+        ReflectionUtils.makeAccessible(method);
+        try {
+            return MethodHandles.lookup().unreflect(method)
+                    .asSpreader(Object[].class, method.getParameterTypes().length)
+                    .asType(INVOKER_TYPE);
+
+        } catch (IllegalAccessException ex) {
+            throw new IllegalStateException("Could not access method: " + method, ex);
+        }
+    }
+
+    private boolean isEqualProxy(Object other) {
+        if (other == null || !Proxy.isProxyClass(other.getClass())) {
+            return false;
+        }
+        InvocationHandler handler = Proxy.getInvocationHandler(other);
+
+        return handler instanceof FrozenImportInvocationHandler
+                && targetSource.equals(((FrozenImportInvocationHandler) handler).targetSource);
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright 2012 Grid Dynamics Consulting Services, Inc.
+ *      http://www.griddynamics.com
+ *
+ * Copyright 2013 Jakub Jirutka <jakub@jirutka.cz>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.griddynamics.banshun;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Counter of calls in progress that can be closed to stop admitting new calls. The count is
+ * striped by thread (see {@link StripedCounter}), so entering and exiting calls don't contend.
+ */
+class InFlightCounter {
+
+    private final StripedCounter count = new StripedCounter();
+    private final Object monitor = new Object();
+    private volatile boolean closed = false;
+
+
+    /**
+     * Enters a call, unless the counter is closed.
+     *
+     * @return <tt>false</tt> if the counter is closed and the call must not proceed.
+     */
+    boolean enter() {
+        count.increment();
+
+        // the counter is incremented before the check, so close() can't miss this call
+        if (closed) {
+            count.decrement();
+            signalIfDrained();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Exits a call entered by {@link #enter()}.
+     */
+    void exit() {
+        count.decrement();
+
+        if (closed) {
+            signalIfDrained();
+        }
+    }
+
+    /**
+     * @return Number of the calls in progress.
+     */
+    long count() {
+        return count.sum();
+    }
+
+    boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Stops admitting new calls and waits at most the given time for the calls in progress
+     * to exit. The waiting thread is woken up by the last exiting call.
+     *
+     * @return <tt>true</tt> if all the calls have exited, <tt>false</tt> if the timeout elapsed.
+     * @throws InterruptedException If the current thread is interrupted while waiting.
+     */
+    boolean close(long timeout, TimeUnit unit) throws InterruptedException {
+        closed = true;
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+
+        synchronized (monitor) {
+            while (count() > 0) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return false;
+                }
+                TimeUnit.NANOSECONDS.timedWait(monitor, remaining);
+            }
+        }
+        return true;
+    }
+
+
+    private void signalIfDrained() {
+        if (count() == 0) {
+            synchronized (monitor) {
+                monitor.notifyAll();
+            }
+        }
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright 2012 Grid Dynamics Consulting Services, Inc.
+ *      http://www.griddynamics.com
+ *
+ * Copyright 2013 Jakub Jirutka <jakub@jirutka.cz>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.griddynamics.banshun;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of call latencies with fixed exponential buckets. The upper bound of the bucket
+ * <tt>i</tt> is <tt>2^(i + 10)</tt> nanoseconds, i.e. the first bucket counts calls shorter than
+ * about 1 microsecond and the last one counts calls longer than about 2 seconds. Recording
+ * doesn't allocate. The buckets are striped by thread like in {@link StripedCounter}, so
+ * concurrent calls don't contend on the same cache line; reading the counts sums all the stripes.
+ */
+public class LatencyHistogram {
+
+    public static final int BUCKETS = 23;
+    private static final int FIRST_BUCKET_BITS = 10;
+    // buckets of a stripe rounded up to whole cache lines, plus one line to separate the stripes
+    private static final int STRIPE_SIZE =
+            (BUCKETS + StripedCounter.PADDING - 1) / StripedCounter.PADDING * StripedCounter.PADDING
+            + StripedCounter.PADDING;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(StripedCounter.STRIPES * STRIPE_SIZE);
+    private final StripedCounter totalNanos = new StripedCounter();
+
+
+    /**
+     * @return Exclusive upper bounds of the buckets in nanoseconds, the last bucket is unbounded.
+     */
+    public static long[] getBucketBounds() {
+        long[] result = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS - 1; i++) {
+            result[i] = 1L << (i + FIRST_BUCKET_BITS);
+        }
+        result[BUCKETS - 1] = Long.MAX_VALUE;
+        return result;
+    }
+
+    /**
+     * @return Counts of the recorded latencies in the buckets.
+     */
+    public long[] getCounts() {
+        long[] result = new long[BUCKETS];
+        for (int stripe = 0; stripe < StripedCounter.STRIPES; stripe++) {
+            for (int i = 0; i < BUCKETS; i++) {
+                result[i] += buckets.get(stripe * STRIPE_SIZE + i);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return Sum of the recorded latencies in nanoseconds.
+     */
+    public long getTotalNanos() {
+        return totalNanos.sum();
+    }
+
+    /**
+     * @return Approximate value in nanoseconds below which the given fraction of the recorded
+     *         latencies fall, i.e. the upper bound of the bucket that contains it; <tt>0</tt>
+     *         if there are no latencies recorded.
+     */
+    public long getPercentile(double fraction) {
+        long[] counts = getCounts();
+        long total = 0;
+        for (long count : counts) {
+            total += count;
+        }
+        long threshold = (long) Math.ceil(total * fraction);
+        long seen = 0;
+
+        for (int i = 0; i < BUCKETS && total > 0; i++) {
+            seen += counts[i];
+            if (seen >= threshold && counts[i] > 0) {
+                return getBucketBounds()[i];
+            }
+        }
+        return 0;
+    }
+
+
+    public void record(long nanos) {
+        buckets.incrementAndGet(StripedCounter.stripe() * STRIPE_SIZE + bucket(nanos));
+        totalNanos.add(nanos);
+    }
+
+    static int bucket(long nanos) {
+        int bits = 64 - Long.numberOfLeadingZeros(Math.max(0, nanos));
+        return Math.min(Math.max(bits - FIRST_BUCKET_BITS, 0), BUCKETS - 1);
+    }
+}
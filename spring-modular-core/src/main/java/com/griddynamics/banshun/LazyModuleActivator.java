@@ -0,0 +1,185 @@
+/*
+ * Copyright 2012 Grid Dynamics Consulting Services, Inc.
+ *      http://www.griddynamics.com
+ *
+ * Copyright 2013 Jakub Jirutka <jakub@jirutka.cz>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.griddynamics.banshun;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Activates the lazy modules of a {@link ContextParentBean} on the first lookup of a service
+ * they export, see {@link ContextParentBean#setLazyConfigLocations(String[])}.
+ */
+class LazyModuleActivator implements ModuleActivator {
+
+    private static final Logger log = LoggerFactory.getLogger(LazyModuleActivator.class);
+
+    private final ContextParentBean parent;
+    private final ModuleReloader reloader;
+
+    private Set<String> lazyLocations = Collections.emptySet();
+    private final Set<String> pendingLocations = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    private final List<ModuleActivation> activations = new CopyOnWriteArrayList<>();
+    // never removed, so the module is activated at most once
+    private final ConcurrentMap<String, Activation> activating = new ConcurrentHashMap<>();
+
+
+    LazyModuleActivator(ContextParentBean parent, ModuleReloader reloader) {
+        this.parent = parent;
+        this.reloader = reloader;
+    }
+
+
+    void setLazyLocations(Set<String> lazyLocations) {
+        this.lazyLocations = lazyLocations;
+    }
+
+    /**
+     * @return Locations of all the lazy modules, activated or not.
+     */
+    Set<String> getLazyLocations() {
+        return lazyLocations;
+    }
+
+    /**
+     * @return <tt>true</tt> if there are any lazy modules.
+     */
+    boolean isEnabled() {
+        return !lazyLocations.isEmpty();
+    }
+
+    /**
+     * Marks all the lazy modules as pending activation.
+     */
+    void start() {
+        pendingLocations.addAll(lazyLocations);
+    }
+
+    /**
+     * @return Activations of the lazy modules in the order they've been activated.
+     */
+    List<ModuleActivation> getActivations() {
+        return Collections.unmodifiableList(activations);
+    }
+
+    /**
+     * @return Locations of the lazy modules that have not been activated yet.
+     */
+    Set<String> getPendingLocations() {
+        return Collections.unmodifiableSet(pendingLocations);
+    }
+
+    /**
+     * Activates the lazy module that exports the given service, if it's not active yet, and all
+     * the lazy modules it depends on. The modules are activated in the order of
+     * {@link ContextParentBean#getResultConfigLocations() resultConfigLocations}, i.e.
+     * dependencies first. Each module is activated under its own lock, so lookups of services
+     * from unrelated modules don't wait for each other.
+     */
+    public void activateExporterOf(String serviceName) {
+        if (pendingLocations.isEmpty()) {
+            return;
+        }
+        LocationsGraph graph = parent.getLocationsGraph();
+        String location = graph.getExportLocation(serviceName);
+
+        if (location == null || !pendingLocations.contains(location)) {
+            return;
+        }
+        Set<String> required = new HashSet<>();
+        graph.transitiveClosure(location, required, true);
+
+        for (String loc : parent.getResultConfigLocations()) {
+            if (required.contains(loc) && pendingLocations.contains(loc) && !parent.getIgnoredLocations().contains(loc)) {
+                if (!activate(loc, serviceName)) {
+                    return;  // interrupted
+                }
+            }
+        }
+    }
+
+    /**
+     * Activates the lazy module, or waits until it's activated if another thread already does so.
+     *
+     * @return <tt>false</tt> if interrupted while waiting, <tt>true</tt> otherwise.
+     */
+    private boolean activate(String location, String serviceName) {
+        Activation activation = new Activation();
+        Activation current = activating.putIfAbsent(location, activation);
+
+        if (current != null) {
+            return current.await();
+        }
+        try {
+            if (!pendingLocations.contains(location)) {
+                return true;
+            }
+            log.info("Activating lazy module {} on lookup of service '{}'", location, serviceName);
+
+            long startTime = System.currentTimeMillis();
+            long start = System.nanoTime();
+            // the module may be activated while another one is being reloaded
+            Map<String, ExportTargetSource> staged = reloader.suspendStaging();
+            LocationContexts result;
+            try {
+                result = parent.createChildContexts(location);
+            } finally {
+                reloader.resumeStaging(staged);
+            }
+            long duration = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+            pendingLocations.remove(location);
+            activations.add(new ModuleActivation(location, serviceName, startTime, duration, result.failure == null));
+            parent.completeChildContexts(result);
+
+        } finally {
+            activation.done.countDown();
+        }
+        return true;
+    }
+
+
+    /**
+     * Activation of a single lazy module, the other threads that need the module wait for it.
+     */
+    private static class Activation {
+
+        final Thread thread = Thread.currentThread();
+        final CountDownLatch done = new CountDownLatch(1);
+
+        boolean await() {
+            if (thread == Thread.currentThread()) {
+                return true;  // looked up while refreshing the module itself
+            }
+            try {
+                done.await();
+                return true;
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright 2012 Grid Dynamics Consulting Services, Inc.
+ *      http://www.griddynamics.com
+ *
+ * Copyright 2013 Jakub Jirutka <jakub@jirutka.cz>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.griddynamics.banshun;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Exports and imports declared in a single config location, with the service interfaces
+ * stored as class names.
+ */
+public class LocationReferences {
+
+    private final List<String[]> exports = new ArrayList<>();
+    private final List<String[]> imports = new ArrayList<>();
+
+
+    /**
+     * @param serviceName The name of the exported service.
+     * @param serviceInterface The class name of the service interface.
+     * @param beanName The name of the export declaration bean.
+     */
+    public void addExport(String serviceName, String serviceInterface, String beanName) {
+        exports.add(new String[]{ serviceName, serviceInterface, beanName });
+    }
+
+    /**
+     * @param serviceName The name of the imported service.
+     * @param serviceInterface The class name of the service interface.
+     */
+    public void addImport(String serviceName, String serviceInterface) {
+        imports.add(new String[]{ serviceName, serviceInterface });
+    }
+
+    /**
+     * @return Triplets of service name, interface name and export bean name.
+     */
+    public List<String[]> getExports() {
+        return exports;
+    }
+
+    /**
+     * @return Pairs of service name and interface name.
+     */
+    public List<String[]> getImports() {
+        return imports;
+    }
+}
@@ -22,8 +22,12 @@ public class LocationsGraph {
 
     private Map<String, HashSet<String>> dependOn = new HashMap<>();
     private Map<String, HashSet<String>> dependenciesOf = new HashMap<>();
+    private Map<String, String> exportLocations = new HashMap<>();
 
     public LocationsGraph(Map<String, List<BeanReferenceInfo>> imports, Map<String, BeanReferenceInfo> exports) {
+        for (BeanReferenceInfo export : exports.values()) {
+            exportLocations.put(export.getServiceName(), export.getLocation());
+        }
         for (String beanName : imports.keySet()) {
             String expLoc = exports.get(beanName).getLocation();
 
@@ -40,6 +44,23 @@ public class LocationsGraph {
         }
     }
 
+    /**
+     * @param location The location to get dependencies for.
+     * @return Locations that export beans imported by the given location.
+     */
+    public Set<String> getDependencies(String location) {
+        Set<String> dependencies = dependOn.get(location);
+        return dependencies != null ? Collections.unmodifiableSet(dependencies) : Collections.<String>emptySet();
+    }
+
+    /**
+     * @param serviceName The name of the exported service.
+     * @return Location that exports the service, or <tt>null</tt> if it's not exported.
+     */
+    public String getExportLocation(String serviceName) {
+        return exportLocations.get(serviceName);
+    }
+
     public List<String> filterConfigLocations(List<String> limitedLocations, String[] allLocations) {
         Set<String> marked = new HashSet<>();
         List<String> resultLocationList = new ArrayList<>(Arrays.asList(allLocations));
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2012 Grid Dynamics Consulting Services, Inc.
+ *      http://www.griddynamics.com
+ *
+ * Copyright 2013 Jakub Jirutka <jakub@jirutka.cz>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.griddynamics.banshun;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Future of an imported service returned by {@link ContextParentBean#lookupAsync(String, Class)}.
+ * It's done once the service is exported, its value is the import proxy of the service. A lazy
+ * module exporting the service is activated on the first blocking {@code get}.
+ */
+class LookupFuture<T> implements Future<T> {
+
+    private final String serviceName;
+    private final Class<T> serviceInterface;
+    private final Registry registry;
+    private final ServiceRegistry serviceRegistry;
+    private final ModuleActivator moduleActivator;
+
+
+    /**
+     * @param moduleActivator The activator to activate a lazy module exporting the service;
+     *                        may be <tt>null</tt>.
+     */
+    LookupFuture(String serviceName, Class<T> serviceInterface, Registry registry,
+                 ServiceRegistry serviceRegistry, ModuleActivator moduleActivator) {
+        this.serviceName = serviceName;
+        this.serviceInterface = serviceInterface;
+        this.registry = registry;
+        this.serviceRegistry = serviceRegistry;
+        this.moduleActivator = moduleActivator;
+    }
+
+
+    /**
+     * The lookup can't be cancelled, this method always returns <tt>false</tt>.
+     */
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        return false;
+    }
+
+    public boolean isCancelled() {
+        return false;
+    }
+
+    public boolean isDone() {
+        return serviceRegistry.getExport(serviceName) != null;
+    }
+
+    public T get() throws InterruptedException, ExecutionException {
+        activateExporter();
+        serviceRegistry.awaitExport(serviceName);
+
+        return lookup();
+    }
+
+    public T get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+        activateExporter();
+        if (serviceRegistry.awaitExport(serviceName, timeout, unit) == null) {
+            throw new TimeoutException(String.format("Service '%s' has not been exported within %d %s",
+                    serviceName, timeout, unit.toString().toLowerCase()));
+        }
+        return lookup();
+    }
+
+
+    private void activateExporter() throws ExecutionException {
+        if (moduleActivator != null && !isDone()) {
+            try {
+                moduleActivator.activateExporterOf(serviceName);
+            } catch (RuntimeException ex) {
+                throw new ExecutionException(ex);
+            }
+        }
+    }
+
+    private T lookup() throws ExecutionException {
+        try {
+            return registry.lookup(serviceName, serviceInterface);
+        } catch (RuntimeException ex) {
+            throw new ExecutionException(ex);
+        }
+    }
+}
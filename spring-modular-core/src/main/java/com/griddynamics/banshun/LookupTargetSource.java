@@ -25,10 +25,12 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.aop.TargetSource;
 import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.BeanCreationNotAllowedException;
 import org.springframework.beans.factory.BeanNotOfRequiredTypeException;
 import org.springframework.beans.factory.NoSuchBeanDefinitionException;
-import org.springframework.context.ApplicationContext;
 
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
 
 import static org.apache.commons.lang3.builder.ToStringStyle.SHORT_PREFIX_STYLE;
@@ -37,19 +39,63 @@ public class LookupTargetSource implements TargetSource {
 
     private static final Logger log = LoggerFactory.getLogger(LookupTargetSource.class);
 
-    private AtomicReference<Object> target = new AtomicReference<>();
+    private final AtomicReference<Binding> binding = new AtomicReference<>();
+    // bindings replaced by a reload that may still have calls in progress
+    private final CopyOnWriteArrayList<Binding> retiredBindings = new CopyOnWriteArrayList<>();
 
     private final String serviceName;
     private final Class<?> serviceInterface;
-    private final String exportProxyName;
-    private final ApplicationContext rootContext;
+    private final ServiceRegistry serviceRegistry;
+    private final ModuleActivator moduleActivator;
+    private final long exportTimeout;
+    private final ModuleTracer tracer;
+    private final boolean countingCalls;
 
 
-    public LookupTargetSource(String serviceName, Class<?> serviceInterface, String exportProxyName, ApplicationContext rootContext) {
+    public LookupTargetSource(String serviceName, Class<?> serviceInterface, ServiceRegistry serviceRegistry) {
+        this(serviceName, serviceInterface, serviceRegistry, null);
+    }
+
+    public LookupTargetSource(String serviceName, Class<?> serviceInterface, ServiceRegistry serviceRegistry,
+                              ModuleActivator moduleActivator) {
+        this(serviceName, serviceInterface, serviceRegistry, moduleActivator, 0);
+    }
+
+    /**
+     * @param serviceRegistry The registry to resolve the export of the service from.
+     * @param moduleActivator The activator to activate a lazy module exporting the service
+     *                        before the first lookup; may be <tt>null</tt>.
+     * @param exportTimeout   Maximal time in milliseconds to wait for the service to be exported
+     *                        on the first lookup; <tt>0</tt> to fail immediately.
+     */
+    public LookupTargetSource(String serviceName, Class<?> serviceInterface, ServiceRegistry serviceRegistry,
+                              ModuleActivator moduleActivator, long exportTimeout) {
+        this(serviceName, serviceInterface, serviceRegistry, moduleActivator, exportTimeout, ModuleTracers.NOOP);
+    }
+
+    /**
+     * @param tracer The tracer to trace resolving of the exported bean with.
+     */
+    public LookupTargetSource(String serviceName, Class<?> serviceInterface, ServiceRegistry serviceRegistry,
+                              ModuleActivator moduleActivator, long exportTimeout, ModuleTracer tracer) {
+        this(serviceName, serviceInterface, serviceRegistry, moduleActivator, exportTimeout, tracer, true);
+    }
+
+    /**
+     * @param countingCalls Whether to register the calls on the export, so it can be drained
+     *                      before closing, see {@link ExportTargetSource#drain(long, TimeUnit)}.
+     *                      If not, the target is just returned and nothing is done on release.
+     */
+    public LookupTargetSource(String serviceName, Class<?> serviceInterface, ServiceRegistry serviceRegistry,
+                              ModuleActivator moduleActivator, long exportTimeout, ModuleTracer tracer,
+                              boolean countingCalls) {
         this.serviceName = serviceName;
         this.serviceInterface = serviceInterface;
-        this.exportProxyName = exportProxyName;
-        this.rootContext = rootContext;
+        this.serviceRegistry = serviceRegistry;
+        this.moduleActivator = moduleActivator;
+        this.exportTimeout = exportTimeout;
+        this.tracer = tracer;
+        this.countingCalls = countingCalls;
     }
 
 
@@ -61,34 +107,147 @@ public class LookupTargetSource implements TargetSource {
         return false;
     }
 
+    boolean isCountingCalls() {
+        return countingCalls;
+    }
+
+    /**
+     * Completes the call registered by {@link #getTarget()} on the export, if counting calls.
+     */
     public void releaseTarget(Object target) throws Exception {
+        if (!countingCalls) {
+            return;
+        }
+        Binding local = binding.get();
+
+        if (local != null && local.target == target) {
+            local.export.exit();
+            return;
+        }
+        for (Binding retired : retiredBindings) {
+            if (retired.target == target) {
+                retired.export.exit();
+                return;
+            }
+        }
     }
 
+    /**
+     * Resolves the exported bean on the first invocation, or when the export has been
+     * superseded by a reload of the exporting module. If counting calls, registers a call of it
+     * on the export, see {@link ExportTargetSource#tryEnter()}, which must be completed by
+     * {@link #releaseTarget(Object)}.
+     */
     public Object getTarget() throws BeansException {
-        Object localTarget = target.get();
+        Binding local = binding.get();
 
-        if (localTarget == null) {
-            if (!rootContext.containsBean(exportProxyName)) {
-                throw new NoSuchBeanDefinitionException(exportProxyName, String.format(
-                        "can't find export declaration for lookup(%s, %s)", serviceName, serviceInterface));
-            }
-            ExportTargetSource exportProxy = rootContext.getBean(exportProxyName, ExportTargetSource.class);
+        return countingCalls ? enter(local).target : current(local).target;
+    }
+
+    /**
+     * @param local The binding cached by the caller, or <tt>null</tt>.
+     * @return The given binding, or the current one if the given one is missing or superseded.
+     */
+    Binding current(Binding local) {
+        if (local == null || local.isSuperseded()) {
+            Binding latest = binding.get();
+            local = latest != null && !latest.isSuperseded() ? latest : bind(latest);
+        }
+        return local;
+    }
+
+    /**
+     * Registers a call on the export of the given binding, or of the current one if the given
+     * one is missing or superseded. The call must be completed by {@link Binding#exit()}.
+     *
+     * @param local The binding cached by the caller, or <tt>null</tt>.
+     * @return The binding the call has been registered on.
+     */
+    Binding enter(Binding local) {
+        while (true) {
+            local = current(local);
 
-            // verify if service interfaces on both sides are compatible
-            if (!serviceInterface.isAssignableFrom(exportProxy.getTargetClass())) {
-                throw new BeanNotOfRequiredTypeException(serviceName, serviceInterface, exportProxy.getTargetClass());
+            if (local.export.tryEnter()) {
+                return local;
             }
+            if (!local.isSuperseded()) {
+                throw new BeanCreationNotAllowedException(serviceName, "Exported bean is being closed");
+            }
+            // superseded concurrently, bind to the replacement
+        }
+    }
 
-            if (target.compareAndSet(null, localTarget = exportProxy.getTarget())) {
-                return localTarget;
+    private Binding bind(Binding previous) {
+        ModuleTracer.Span span = tracer.startResolution(serviceName, serviceInterface);
+        BeanCreationProfiler.enterLookup();
+        try {
+            Binding result = resolve(previous);
+            span.end();
+            return result;
 
-            } else {
-                // log potentially redundant instance initialization
-                log.warn("Bean {} was created earlier", serviceName);
-                return target.get();
+        } catch (RuntimeException ex) {
+            span.fail(ex);
+            throw ex;
+
+        } finally {
+            BeanCreationProfiler.exitLookup();
+        }
+    }
+
+    private Binding resolve(Binding previous) {
+        if (previous == null && moduleActivator != null) {
+            moduleActivator.activateExporterOf(serviceName);
+        }
+        ExportTargetSource exportProxy = serviceRegistry.getExport(serviceName);
+
+        if (exportProxy == null && exportTimeout > 0) {
+            exportProxy = awaitExport();
+        }
+        if (exportProxy == null) {
+            throw new NoSuchBeanDefinitionException(serviceName + ContextParentBean.TARGET_SOURCE_SUFFIX,
+                    String.format("can't find export declaration for lookup(%s, %s)", serviceName, serviceInterface));
+        }
+
+        // verify if service interfaces on both sides are compatible
+        if (!serviceInterface.isAssignableFrom(exportProxy.getTargetClass())) {
+            throw new BeanNotOfRequiredTypeException(serviceName, serviceInterface, exportProxy.getTargetClass());
+        }
+        Binding created = new Binding(exportProxy, exportProxy.getTarget());
+
+        if (previous != null && countingCalls) {
+            retire(previous);
+        }
+        if (binding.compareAndSet(previous, created)) {
+            return created;
+
+        } else {
+            // log potentially redundant instance initialization
+            log.warn("Bean {} was created earlier", serviceName);
+            return binding.get();
+        }
+    }
+
+    private void retire(Binding previous) {
+        for (Binding retired : retiredBindings) {
+            // a drained export doesn't admit new calls, so it can't be released anymore
+            if (retired.export.isDraining() && retired.export.getInFlightCalls() == 0) {
+                retiredBindings.remove(retired);
             }
         }
-        return localTarget;
+        // the binding may be retired concurrently by another caller
+        retiredBindings.addIfAbsent(previous);
+    }
+
+    private ExportTargetSource awaitExport() {
+        log.debug("Waiting up to {} ms for service '{}' to be exported", exportTimeout, serviceName);
+        try {
+            return serviceRegistry.awaitExport(serviceName, exportTimeout, TimeUnit.MILLISECONDS);
+
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new NoSuchBeanDefinitionException(serviceName + ContextParentBean.TARGET_SOURCE_SUFFIX,
+                    String.format("interrupted while waiting for export of service %s", serviceName));
+        }
     }
 
     @Override
@@ -98,11 +257,35 @@ public class LookupTargetSource implements TargetSource {
 
     @Override
     public boolean equals(Object obj) {
-        return EqualsBuilder.reflectionEquals(this, obj, "target");
+        return EqualsBuilder.reflectionEquals(this, obj, "binding", "retiredBindings", "moduleActivator", "tracer",
+                "countingCalls");
     }
 
     @Override
     public int hashCode() {
-        return HashCodeBuilder.reflectionHashCode(this, "target");
+        return HashCodeBuilder.reflectionHashCode(this, "binding", "retiredBindings", "moduleActivator", "tracer",
+                "countingCalls");
+    }
+
+
+    /**
+     * Resolved target together with the export it has been obtained from.
+     */
+    static final class Binding {
+        final ExportTargetSource export;
+        final Object target;
+
+        Binding(ExportTargetSource export, Object target) {
+            this.export = export;
+            this.target = target;
+        }
+
+        boolean isSuperseded() {
+            return export.isSuperseded();
+        }
+
+        void exit() {
+            export.exit();
+        }
     }
 }
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2012 Grid Dynamics Consulting Services, Inc.
+ *      http://www.griddynamics.com
+ *
+ * Copyright 2013 Jakub Jirutka <jakub@jirutka.cz>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.griddynamics.banshun;
+
+/**
+ * Invocation metrics of a single method of an imported service.
+ */
+public class MethodMetrics {
+
+    private final String methodName;
+    private final StripedCounter calls = new StripedCounter();
+    private final StripedCounter errors = new StripedCounter();
+    private final LatencyHistogram latency = new LatencyHistogram();
+
+
+    MethodMetrics(String methodName) {
+        this.methodName = methodName;
+    }
+
+
+    /**
+     * @return Name of the method with simple names of its parameter types, e.g.
+     *         <tt>add(int,int)</tt>.
+     */
+    public String getMethodName() {
+        return methodName;
+    }
+
+    public long getCalls() {
+        return calls.sum();
+    }
+
+    /**
+     * @return Number of the calls that have thrown an exception.
+     */
+    public long getErrors() {
+        return errors.sum();
+    }
+
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+
+    /**
+     * @return Mean latency in nanoseconds, or <tt>0</tt> if there are no calls recorded.
+     */
+    public long getMeanNanos() {
+        long count = calls.sum();
+        return count > 0 ? latency.getTotalNanos() / count : 0;
+    }
+
+
+    void record(long nanos, boolean failed) {
+        calls.increment();
+        if (failed) {
+            errors.increment();
+        }
+        latency.record(nanos);
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright 2012 Grid Dynamics Consulting Services, Inc.
+ *      http://www.griddynamics.com
+ *
+ * Copyright 2013 Jakub Jirutka <jakub@jirutka.cz>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.griddynamics.banshun;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+
+/**
+ * Interceptor of an import proxy that records the {@link ServiceMetrics} of the calls.
+ */
+class MetricsInterceptor implements MethodInterceptor {
+
+    private final ServiceMetrics metrics;
+
+
+    MetricsInterceptor(ServiceMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+
+    public Object invoke(MethodInvocation invocation) throws Throwable {
+        MethodMetrics methodMetrics = metrics.getMethodMetrics(invocation.getMethod());
+
+        if (methodMetrics == null) {
+            return invocation.proceed();
+        }
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            Object result = invocation.proceed();
+            failed = false;
+            return result;
+        } finally {
+            methodMetrics.record(System.nanoTime() - start, failed);
+        }
+    }
+}
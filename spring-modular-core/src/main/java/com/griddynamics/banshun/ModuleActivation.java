@@ -0,0 +1,54 @@
+/*
+ * Copyright 2012 Grid Dynamics Consulting Services, Inc.
+ *      http://www.griddynamics.com
+ *
+ * Copyright 2013 Jakub Jirutka <jakub@jirutka.cz>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.griddynamics.banshun;
+
+import lombok.Data;
+
+/**
+ * Record of a lazy module activation.
+ */
+@Data
+public class ModuleActivation {
+
+    /**
+     * The activated location.
+     */
+    private final String location;
+
+    /**
+     * The name of the service whose lookup has triggered the activation. It's exported by
+     * this location, or by a location that depends on it.
+     */
+    private final String triggeringService;
+
+    /**
+     * Time when the activation started, in milliseconds since the epoch.
+     */
+    private final long startTime;
+
+    /**
+     * Duration of the activation (refresh of the nested contexts) in milliseconds.
+     */
+    private final long duration;
+
+    /**
+     * Whether the nested contexts have been refreshed successfully.
+     */
+    private final boolean successful;
+}
@@ -0,0 +1,34 @@
+/*
+ * Copyright 2012 Grid Dynamics Consulting Services, Inc.
+ *      http://www.griddynamics.com
+ *
+ * Copyright 2013 Jakub Jirutka <jakub@jirutka.cz>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.griddynamics.banshun;
+
+/**
+ * Activates lazy modules on demand, see {@link ContextParentBean#setLazyConfigLocations(String[])}.
+ */
+public interface ModuleActivator {
+
+    /**
+     * Activates the module (i.e. refreshes the nested context) that exports the given service,
+     * together with the modules it depends on, if it's not active yet. This method is
+     * thread-safe, the module is activated only once even if invoked concurrently.
+     *
+     * @param serviceName The name of the service that is about to be looked up.
+     */
+    void activateExporterOf(String serviceName);
+}
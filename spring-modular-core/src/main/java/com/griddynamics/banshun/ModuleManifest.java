@@ -0,0 +1,135 @@
+/*
+ * Copyright 2012 Grid Dynamics Consulting Services, Inc.
+ *      http://www.griddynamics.com
+ *
+ * Copyright 2013 Jakub Jirutka <jakub@jirutka.cz>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.griddynamics.banshun;
+
+import java.io.*;
+import java.nio.charset.Charset;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Exports and imports of the config locations packaged in an artifact, generated at build
+ * time by the spring-modular Maven plugin. It allows {@link StrictContextParentBean} to
+ * analyze dependencies between the locations without parsing them.
+ *
+ * <p>The manifest is stored in {@value #MANIFEST_LOCATION} as an UTF-8 text file with one
+ * record per line:</p>
+ * <pre>
+ * location com/example/module.xml
+ * export serviceName com.example.ServiceInterface serviceName-export-ref
+ * import otherService com.example.OtherInterface
+ * </pre>
+ * Each location is specified by its path relative to the root of the artifact and it's
+ * followed by its exports and imports. Empty lines and lines starting with <tt>#</tt> are
+ * ignored.
+ */
+public class ModuleManifest {
+
+    public static final String MANIFEST_LOCATION = "META-INF/banshun/manifest";
+
+    private static final Charset CHARSET = Charset.forName("UTF-8");
+    private static final String
+            LOCATION = "location",
+            EXPORT = "export",
+            IMPORT = "import";
+
+    private final Map<String, LocationReferences> locations = new LinkedHashMap<>();
+
+
+    /**
+     * Reads the manifest from the given stream.
+     *
+     * @param input The stream to read; it's not closed.
+     * @param baseLocation The prefix to prepend to paths of the locations, e.g. URI of the
+     *                     artifact's root.
+     * @throws IOException If the stream can't be read or the manifest is malformed.
+     */
+    public static ModuleManifest read(InputStream input, String baseLocation) throws IOException {
+        ModuleManifest manifest = new ModuleManifest();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(input, CHARSET));
+        LocationReferences current = null;
+
+        String line;
+        for (int lineNo = 1; (line = reader.readLine()) != null; lineNo++) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String[] tokens = line.split("\\s+");
+
+            if (LOCATION.equals(tokens[0]) && tokens.length == 2) {
+                current = manifest.addLocation(baseLocation + tokens[1]);
+            } else if (EXPORT.equals(tokens[0]) && tokens.length == 4 && current != null) {
+                current.addExport(tokens[1], tokens[2], tokens[3]);
+            } else if (IMPORT.equals(tokens[0]) && tokens.length == 3 && current != null) {
+                current.addImport(tokens[1], tokens[2]);
+            } else {
+                throw new IOException("Malformed module manifest at line " + lineNo + ": " + line);
+            }
+        }
+        return manifest;
+    }
+
+    /**
+     * Writes the manifest into the given stream.
+     *
+     * @param output The stream to write; it's flushed, but not closed.
+     */
+    public void write(OutputStream output) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(output, CHARSET));
+        writer.write("# Generated by spring-modular-maven-plugin, do not edit.\n");
+
+        for (Map.Entry<String, LocationReferences> entry : locations.entrySet()) {
+            writer.write(LOCATION + ' ' + entry.getKey() + '\n');
+
+            for (String[] export : entry.getValue().getExports()) {
+                writer.write(EXPORT + ' ' + export[0] + ' ' + export[1] + ' ' + export[2] + '\n');
+            }
+            for (String[] imp : entry.getValue().getImports()) {
+                writer.write(IMPORT + ' ' + imp[0] + ' ' + imp[1] + '\n');
+            }
+        }
+        writer.flush();
+    }
+
+    /**
+     * Adds the location to the manifest, or returns the existing one.
+     */
+    public LocationReferences addLocation(String location) {
+        LocationReferences refs = locations.get(location);
+        if (refs == null) {
+            refs = new LocationReferences();
+            locations.put(location, refs);
+        }
+        return refs;
+    }
+
+    /**
+     * @return The exports and imports of the location, or <tt>null</tt> if the location
+     *         isn't in the manifest.
+     */
+    public LocationReferences getLocation(String location) {
+        return locations.get(location);
+    }
+
+    public Map<String, LocationReferences> getLocations() {
+        return Collections.unmodifiableMap(locations);
+    }
+}
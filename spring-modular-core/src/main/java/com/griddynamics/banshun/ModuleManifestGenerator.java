@@ -0,0 +1,157 @@
+/*
+ * Copyright 2012 Grid Dynamics Consulting Services, Inc.
+ *      http://www.griddynamics.com
+ *
+ * Copyright 2013 Jakub Jirutka <jakub@jirutka.cz>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.griddynamics.banshun;
+
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.beans.factory.xml.ResourceEntityResolver;
+import org.springframework.beans.factory.xml.XmlBeanDefinitionReader;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.core.io.Resource;
+import org.springframework.util.ClassUtils;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Generates {@link ModuleManifest} from the config locations of an artifact. The locations
+ * are parsed and validated in the same way as by {@link StrictContextParentBean} at runtime,
+ * i.e. service interfaces and bean classes must exist and imported services must be
+ * compatible with the exported ones (if exported from the same artifact).
+ *
+ * <p>Note that the locations are parsed with the default profiles only.</p>
+ */
+public class ModuleManifestGenerator {
+
+    private static final String BEANS_NAMESPACE = "http://www.springframework.org/schema/beans";
+
+    private final ClassLoader classLoader;
+    private final String registryName;
+    private final ContextAnalyzer analyzer;
+    private final ModuleManifest manifest = new ModuleManifest();
+    private final List<String> errors = new ArrayList<>();
+
+
+    /**
+     * @param classLoader The class loader of the artifact and its dependencies.
+     * @param registryName The name of the registry bean (i.e. context parent bean) that
+     *                     the locations export to and import from.
+     */
+    public ModuleManifestGenerator(ClassLoader classLoader, String registryName) {
+        this.classLoader = classLoader;
+        this.registryName = registryName;
+        this.analyzer = new ContextAnalyzer(classLoader);
+    }
+
+
+    /**
+     * Checks whether the resource is a Spring beans definition file, i.e. its root element
+     * is <tt>beans</tt>.
+     */
+    public static boolean isBeansDefinition(Resource resource) throws IOException {
+        try (InputStream input = resource.getInputStream()) {
+            XMLStreamReader reader = XMLInputFactory.newInstance().createXMLStreamReader(input);
+            try {
+                while (reader.hasNext()) {
+                    if (reader.next() == XMLStreamReader.START_ELEMENT) {
+                        return "beans".equals(reader.getLocalName())
+                                && BEANS_NAMESPACE.equals(reader.getNamespaceURI());
+                    }
+                }
+                return false;
+            } finally {
+                reader.close();
+            }
+        } catch (XMLStreamException ex) {
+            return false;
+        }
+    }
+
+    /**
+     * Parses the location and adds its exports and imports into the manifest. Errors are
+     * collected, see {@link #getErrors()}.
+     *
+     * @param path The path of the location relative to the root of the artifact.
+     * @param resource The resource of the location.
+     */
+    public void addLocation(String path, Resource resource) {
+        DefaultListableBeanFactory beanFactory = new DefaultListableBeanFactory();
+        DefaultResourceLoader resourceLoader = new DefaultResourceLoader(classLoader);
+
+        XmlBeanDefinitionReader reader = new XmlBeanDefinitionReader(beanFactory);
+        reader.setBeanClassLoader(classLoader);
+        reader.setResourceLoader(resourceLoader);
+        reader.setEntityResolver(new ResourceEntityResolver(resourceLoader));
+        try {
+            reader.loadBeanDefinitions(resource);
+        } catch (RuntimeException ex) {
+            errors.add(String.format("Failed to parse location %s: %s", path, ex.getMessage()));
+            return;
+        }
+
+        LocationReferences refs = manifest.addLocation(path);
+
+        for (String beanName : beanFactory.getBeanDefinitionNames()) {
+            BeanDefinition beanDefinition = beanFactory.getBeanDefinition(beanName);
+            try {
+                if (ContextAnalyzer.isExport(beanDefinition, registryName)) {
+                    BeanReferenceInfo ref = analyzer.addExport(beanDefinition, path);
+                    refs.addExport(ref.getServiceName(), ref.getServiceInterfaceName(), beanName);
+
+                } else if (ContextAnalyzer.isImport(beanDefinition, registryName)) {
+                    BeanReferenceInfo ref = analyzer.addImport(beanDefinition, path);
+                    refs.addImport(ref.getServiceName(), ref.getServiceInterfaceName());
+
+                } else if (beanDefinition.getBeanClassName() != null
+                        && !ClassUtils.isPresent(beanDefinition.getBeanClassName(), classLoader)) {
+                    errors.add(String.format("Class not found %s in location: %s for bean: %s",
+                            beanDefinition.getBeanClassName(), path, beanName));
+                }
+            } catch (Exception ex) {
+                errors.add(String.format("Invalid bean %s in location %s: %s", beanName, path, ex.getMessage()));
+            }
+        }
+    }
+
+    /**
+     * Validates the exports and imports of all the added locations.
+     *
+     * @return <tt>true</tt> if there are no errors.
+     */
+    public boolean validate() {
+        if (!analyzer.areImportsTypesCorrect()) {
+            errors.add("There are imports incompatible with the exported services. See logs for details");
+        }
+        return errors.isEmpty();
+    }
+
+    public List<String> getErrors() {
+        return Collections.unmodifiableList(errors);
+    }
+
+    public ModuleManifest getManifest() {
+        return manifest;
+    }
+}
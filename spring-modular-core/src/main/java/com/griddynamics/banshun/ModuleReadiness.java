@@ -0,0 +1,181 @@
+/*
+ * Copyright 2012 Grid Dynamics Consulting Services, Inc.
+ *      http://www.griddynamics.com
+ *
+ * Copyright 2013 Jakub Jirutka <jakub@jirutka.cz>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.griddynamics.banshun;
+
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * Readiness of a nested module, or of the whole tree of the nested modules, of a
+ * {@link ContextParentBean}. The future is done once the module is initialized, failed or
+ * skipped; its value is the list of the nested contexts created for the module.
+ */
+public class ModuleReadiness implements Future<List<ConfigurableApplicationContext>> {
+
+    public enum Status {
+        /** The module has not been initialized yet, e.g. it's lazy. */
+        PENDING,
+        INITIALIZING,
+        READY,
+        FAILED,
+        /** The module has not been initialized, because a module it depends on failed. */
+        SKIPPED
+    }
+
+    private final String location;
+    private final CountDownLatch done = new CountDownLatch(1);
+
+    private volatile Status status = Status.PENDING;
+    private volatile List<ConfigurableApplicationContext> contexts;
+    private volatile Throwable failure;
+    private volatile long refreshDuration = -1;
+    private long startNanos;
+    private boolean started;
+
+
+    /**
+     * @param location Location of the module, or <tt>null</tt> for the whole tree.
+     */
+    ModuleReadiness(String location) {
+        this.location = location;
+    }
+
+
+    /**
+     * @return Location of the module, or <tt>null</tt> for the whole tree.
+     */
+    public String getLocation() {
+        return location;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public boolean isReady() {
+        return status == Status.READY;
+    }
+
+    /**
+     * @return Cause of the failure, if the module has failed.
+     */
+    public Throwable getFailure() {
+        return failure;
+    }
+
+    /**
+     * @return Duration of the initialization of the module in milliseconds, i.e. from the start of
+     *         its refresh until it's ready or failed, or <tt>-1</tt> if it has not been initialized.
+     */
+    public long getRefreshDuration() {
+        return refreshDuration;
+    }
+
+    /**
+     * Readiness can't be cancelled, this method always returns <tt>false</tt>.
+     */
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        return false;
+    }
+
+    /**
+     * @return <tt>true</tt> if the module has been skipped.
+     */
+    public boolean isCancelled() {
+        return status == Status.SKIPPED;
+    }
+
+    public boolean isDone() {
+        return done.getCount() == 0;
+    }
+
+    public List<ConfigurableApplicationContext> get() throws InterruptedException, ExecutionException {
+        done.await();
+        return result();
+    }
+
+    public List<ConfigurableApplicationContext> get(long timeout, TimeUnit unit)
+            throws InterruptedException, ExecutionException, TimeoutException {
+        if (!done.await(timeout, unit)) {
+            throw new TimeoutException(String.format("Module %s is not initialized within %d %s",
+                    describe(), timeout, unit.toString().toLowerCase()));
+        }
+        return result();
+    }
+
+    @Override
+    public String toString() {
+        return describe() + ": " + status;
+    }
+
+
+    synchronized void initializing() {
+        if (!isDone()) {
+            status = Status.INITIALIZING;
+            startNanos = System.nanoTime();
+            started = true;
+        }
+    }
+
+    synchronized void ready(List<ConfigurableApplicationContext> contexts) {
+        if (!isDone()) {
+            this.contexts = contexts;
+            complete(Status.READY);
+        }
+    }
+
+    synchronized void failed(Throwable failure) {
+        if (!isDone()) {
+            this.failure = failure;
+            complete(Status.FAILED);
+        }
+    }
+
+    synchronized void skipped() {
+        if (!isDone()) {
+            complete(Status.SKIPPED);
+        }
+    }
+
+
+    private void complete(Status status) {
+        if (started && status != Status.SKIPPED) {
+            refreshDuration = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+        }
+        this.status = status;
+        done.countDown();
+    }
+
+    private List<ConfigurableApplicationContext> result() throws ExecutionException {
+        switch (status) {
+            case FAILED:
+                throw new ExecutionException(failure);
+            case SKIPPED:
+                throw new CancellationException(String.format("Module %s has been skipped", describe()));
+            default:
+                return contexts;
+        }
+    }
+
+    private String describe() {
+        return location != null ? location : "tree";
+    }
+}
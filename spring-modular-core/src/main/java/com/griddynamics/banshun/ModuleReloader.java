@@ -0,0 +1,209 @@
+/*
+ * Copyright 2012 Grid Dynamics Consulting Services, Inc.
+ *      http://www.griddynamics.com
+ *
+ * Copyright 2013 Jakub Jirutka <jakub@jirutka.cz>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.griddynamics.banshun;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.ApplicationContextException;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.util.Assert;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Reloads modules of a {@link ContextParentBean}, see {@link ContextParentBean#reloadLocation(String)}.
+ * The services exported by a module being reloaded are staged until its new contexts are
+ * refreshed, and then published at once.
+ */
+class ModuleReloader {
+
+    private static final Logger log = LoggerFactory.getLogger(ModuleReloader.class);
+
+    private final ContextParentBean parent;
+    private final ServiceRegistry serviceRegistry;
+    private final ExportDrainer drainer;
+    // exports of the module being reloaded on the current thread, published once it's refreshed
+    private final ThreadLocal<Map<String, ExportTargetSource>> stagedExports = new ThreadLocal<>();
+    private final Map<String, Exception> failures = new ConcurrentHashMap<>();
+    private final Object monitor = new Object();
+
+
+    ModuleReloader(ContextParentBean parent, ServiceRegistry serviceRegistry, ExportDrainer drainer) {
+        this.parent = parent;
+        this.serviceRegistry = serviceRegistry;
+        this.drainer = drainer;
+    }
+
+
+    /**
+     * @return The reloaded locations, i.e. the given one followed by the reloaded dependents.
+     */
+    List<String> reload(String location) {
+        List<String> reloaded = new ArrayList<>();
+
+        synchronized (monitor) {
+            reload(location, reloaded);
+        }
+        return reloaded;
+    }
+
+    /**
+     * @return Failures of the last reloads by the locations, see {@link ContextParentBean#getReloadFailures()}.
+     */
+    Map<String, Exception> getFailures() {
+        return Collections.unmodifiableMap(failures);
+    }
+
+    /**
+     * Stages the export, if a module is being reloaded on the current thread.
+     *
+     * @return <tt>false</tt> if no module is being reloaded on the current thread, i.e. the
+     *         export should be registered as usual.
+     */
+    boolean stageExport(String serviceName, ExportTargetSource export) {
+        Map<String, ExportTargetSource> staged = stagedExports.get();
+
+        if (staged == null) {
+            return false;
+        }
+        staged.put(serviceName, export);
+        return true;
+    }
+
+    /**
+     * Stops staging the exports on the current thread, e.g. while another module is being
+     * activated by the module being reloaded.
+     *
+     * @return The exports staged so far, to be passed to {@link #resumeStaging(Map)}.
+     */
+    Map<String, ExportTargetSource> suspendStaging() {
+        Map<String, ExportTargetSource> staged = stagedExports.get();
+        stagedExports.remove();
+        return staged;
+    }
+
+    void resumeStaging(Map<String, ExportTargetSource> staged) {
+        if (staged != null) {
+            stagedExports.set(staged);
+        }
+    }
+
+
+    private void reload(String location, List<String> reloaded) {
+        List<ConfigurableApplicationContext> oldContexts = parent.getActiveChildContexts(location);
+        Assert.isTrue(!oldContexts.isEmpty(), "There are no active nested contexts of location " + location);
+
+        Map<String, ExportTargetSource> oldExports = new HashMap<>();
+        for (ConfigurableApplicationContext child : oldContexts) {
+            oldExports.putAll(drainer.findExports(child.getBeanFactory()));
+        }
+
+        log.info("Reloading nested contexts of location {}", location);
+
+        // the old contexts stay in service until the new ones are refreshed, and so their readiness
+        ModuleReadiness readiness = new ModuleReadiness(location);
+        Map<String, ExportTargetSource> newExports = new HashMap<>();
+        LocationContexts result;
+        stagedExports.set(newExports);
+        try {
+            result = parent.createChildContexts(location, readiness);
+        } finally {
+            stagedExports.remove();
+        }
+        if (result.failure != null) {
+            for (ConfigurableApplicationContext ctx : result.contexts) {
+                ctx.close();
+            }
+            failures.put(location, result.failure);
+            throw new ApplicationContextException("Failed to reload nested contexts of location " + location, result.failure);
+        }
+
+        Set<String> changedServices = publishReloadedExports(oldExports, newExports);
+        parent.replaceChildContexts(location, oldContexts, result.contexts);
+        parent.replaceModuleReadiness(location, readiness);
+        failures.remove(location);
+        reloaded.add(location);
+
+        drainer.drainExports(oldExports.values());
+        for (ConfigurableApplicationContext ctx : oldContexts) {
+            ctx.close();
+        }
+
+        if (!changedServices.isEmpty()) {
+            reloadDependents(location, changedServices, reloaded);
+        }
+    }
+
+    /**
+     * Replaces the old exports with the new ones in the registry and marks the old ones as
+     * superseded, so that the import proxies switch to the new ones.
+     *
+     * @return Names of the services that are not exported anymore, or whose interface has changed.
+     */
+    private Set<String> publishReloadedExports(Map<String, ExportTargetSource> oldExports,
+                                               Map<String, ExportTargetSource> newExports) {
+        Set<String> changed = new TreeSet<>();
+
+        for (Map.Entry<String, ExportTargetSource> entry : newExports.entrySet()) {
+            String serviceName = entry.getKey();
+            ExportTargetSource oldExport = oldExports.get(serviceName);
+
+            if (!serviceRegistry.replaceExport(serviceName, oldExport, entry.getValue())) {
+                log.warn("Service '{}' is exported by another location, its reloaded export is ignored", serviceName);
+                continue;
+            }
+            if (oldExport != null && !oldExport.getTargetClass().equals(entry.getValue().getTargetClass())) {
+                changed.add(serviceName);
+            }
+        }
+        for (Map.Entry<String, ExportTargetSource> entry : oldExports.entrySet()) {
+            if (!newExports.containsKey(entry.getKey())) {
+                serviceRegistry.replaceExport(entry.getKey(), entry.getValue(), null);
+                changed.add(entry.getKey());
+            }
+            entry.getValue().supersede();
+        }
+        for (String serviceName : changed) {
+            if (serviceRegistry.removeImport(serviceName)) {
+                ExportTargetSource newExport = newExports.get(serviceName);
+                parent.republishImport(serviceName, newExport != null ? newExport.getTargetClass() : null);
+            }
+        }
+        return changed;
+    }
+
+    private void reloadDependents(String location, Set<String> changedServices, List<String> reloaded) {
+        LocationsGraph graph = parent.getLocationsGraph();
+
+        if (graph == null) {
+            log.warn("Dependency graph of the contexts is not available, dependents of {} are not reloaded " +
+                    "although services {} have changed", location, changedServices);
+            return;
+        }
+        log.info("Services {} of location {} have changed, reloading its dependents", changedServices, location);
+
+        for (String loc : parent.getResultConfigLocations()) {
+            if (!reloaded.contains(loc) && graph.getDependencies(loc).contains(location)
+                    && !parent.getActiveChildContexts(loc).isEmpty()) {
+                reload(loc, reloaded);
+            }
+        }
+    }
+}
@@ -0,0 +1,229 @@
+/*
+ * Copyright 2012 Grid Dynamics Consulting Services, Inc.
+ *      http://www.griddynamics.com
+ *
+ * Copyright 2013 Jakub Jirutka <jakub@jirutka.cz>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.griddynamics.banshun;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Closes the nested contexts of a {@link ContextParentBean} on its destruction, in reverse
+ * order of their dependencies, see {@link ContextParentBean#setShutdownParallelism(int)}
+ * and {@link ContextParentBean#setShutdownTimeout(long)}.
+ */
+class ModuleShutdown {
+
+    private static final Logger log = LoggerFactory.getLogger(ModuleShutdown.class);
+
+    private final ContextParentBean parent;
+    private final ExportDrainer drainer;
+    private final List<String> overruns = new CopyOnWriteArrayList<>();
+
+    private int parallelism = 1;
+    private long timeout = 0;
+
+
+    ModuleShutdown(ContextParentBean parent, ExportDrainer drainer) {
+        this.parent = parent;
+        this.drainer = drainer;
+    }
+
+
+    void setParallelism(int parallelism) {
+        this.parallelism = parallelism;
+    }
+
+    void setTimeout(long timeout) {
+        this.timeout = timeout;
+    }
+
+    /**
+     * @return Locations of the nested contexts that have not been closed within the timeout.
+     */
+    List<String> getOverruns() {
+        return Collections.unmodifiableList(overruns);
+    }
+
+    /**
+     * Closes the given nested contexts.
+     *
+     * @param contexts The nested contexts in order of their creation.
+     */
+    void close(List<ConfigurableApplicationContext> contexts) throws InterruptedException {
+        List<ConfigurableApplicationContext> reversed = new ArrayList<>(contexts);
+        Collections.reverse(reversed);
+
+        if (parallelism == 1 && timeout == 0) {
+            for (ConfigurableApplicationContext child : reversed) {
+                closeChildContext(child);
+            }
+        } else {
+            closeLevels(resolveLevels(reversed));
+        }
+    }
+
+
+    private void closeChildContext(ConfigurableApplicationContext child) {
+        drainer.drain(child);
+        child.close();
+    }
+
+    /**
+     * Groups the given nested contexts into levels that can be closed concurrently. A context
+     * is placed on a level after all the contexts that depend on it. Without the dependency
+     * graph, every context is on its own level.
+     *
+     * @param contexts The nested contexts in reverse order of their creation.
+     */
+    private List<List<ConfigurableApplicationContext>> resolveLevels(List<ConfigurableApplicationContext> contexts) {
+        List<List<ConfigurableApplicationContext>> result = new ArrayList<>();
+        LocationsGraph graph = parent.getLocationsGraph();
+        List<String> locations = parent.getResultConfigLocations();
+
+        if (parallelism == 1 || graph == null) {
+            for (ConfigurableApplicationContext ctx : contexts) {
+                result.add(Collections.singletonList(ctx));
+            }
+            return result;
+        }
+        Map<String, List<String>> dependents = new HashMap<>();
+        for (String loc : locations) {
+            dependents.put(loc, new ArrayList<String>());
+        }
+        for (String loc : locations) {
+            for (String dependency : graph.getDependencies(loc)) {
+                if (dependents.containsKey(dependency)) {
+                    dependents.get(dependency).add(loc);
+                }
+            }
+        }
+        // dependents that precede the location (i.e. cycles) are ignored, as well as on startup
+        Map<String, Integer> levels = new HashMap<>();
+        for (int i = locations.size() - 1; i >= 0; i--) {
+            String loc = locations.get(i);
+            int level = 0;
+            for (String dependent : dependents.get(loc)) {
+                if (levels.containsKey(dependent)) {
+                    level = Math.max(level, levels.get(dependent) + 1);
+                }
+            }
+            levels.put(loc, level);
+        }
+        for (ConfigurableApplicationContext ctx : contexts) {
+            String loc = parent.getChildLocation(ctx);
+            int level = loc != null && levels.containsKey(loc) ? levels.get(loc) : 0;
+
+            while (result.size() <= level) {
+                result.add(new ArrayList<ConfigurableApplicationContext>());
+            }
+            result.get(level).add(ctx);
+        }
+        return result;
+    }
+
+    /**
+     * Closes the given levels of the nested contexts one after another, up to
+     * {@link #setParallelism(int) parallelism} contexts of a level concurrently. A context that
+     * is not closed within the {@link #setTimeout(long) timeout} from the start of its closing
+     * is left closing and doesn't count towards the parallelism anymore.
+     */
+    private void closeLevels(List<List<ConfigurableApplicationContext>> levels) throws InterruptedException {
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("banshun-shutdown-");
+        // contexts that overrun their timeout are left closing, they must not block JVM exit
+        threadFactory.setDaemon(true);
+        ExecutorService executor = Executors.newCachedThreadPool(threadFactory);
+
+        try {
+            for (List<ConfigurableApplicationContext> level : levels) {
+                closeLevel(executor, level);
+            }
+        } finally {
+            executor.shutdown();
+        }
+        if (!overruns.isEmpty()) {
+            log.warn("Nested contexts {} have not been closed within {} ms", overruns, timeout);
+        }
+    }
+
+    private void closeLevel(ExecutorService executor, List<ConfigurableApplicationContext> level)
+            throws InterruptedException {
+        CompletionService<ConfigurableApplicationContext> completion = new ExecutorCompletionService<>(executor);
+        Queue<ConfigurableApplicationContext> pending = new ArrayDeque<>(level);
+        // contexts being closed in order of their start, and the deadlines of their closing
+        Map<Future<ConfigurableApplicationContext>, ConfigurableApplicationContext> running = new LinkedHashMap<>();
+        Map<Future<ConfigurableApplicationContext>, Long> deadlines = new HashMap<>();
+
+        while (!pending.isEmpty() || !running.isEmpty()) {
+            while (running.size() < parallelism && !pending.isEmpty()) {
+                final ConfigurableApplicationContext ctx = pending.poll();
+                Future<ConfigurableApplicationContext> future = completion.submit(
+                        new Callable<ConfigurableApplicationContext>() {
+                            public ConfigurableApplicationContext call() {
+                                closeChildContext(ctx);
+                                return ctx;
+                            }
+                        });
+                running.put(future, ctx);
+                deadlines.put(future, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout));
+            }
+            Future<ConfigurableApplicationContext> done;
+            if (timeout > 0) {
+                long earliest = deadlines.get(running.keySet().iterator().next());
+                done = completion.poll(Math.max(0, earliest - System.nanoTime()), TimeUnit.NANOSECONDS);
+            } else {
+                done = completion.take();
+            }
+            if (done == null) {
+                expireOverruns(running, deadlines);
+            } else if (running.containsKey(done)) {  // contexts that have overrun are not awaited anymore
+                ConfigurableApplicationContext ctx = running.remove(done);
+                deadlines.remove(done);
+                try {
+                    done.get();
+                } catch (ExecutionException ex) {
+                    log.error("Failed to close nested context from location [{}]", locationOf(ctx), ex.getCause());
+                }
+            }
+        }
+    }
+
+    private void expireOverruns(Map<Future<ConfigurableApplicationContext>, ConfigurableApplicationContext> running,
+                                Map<Future<ConfigurableApplicationContext>, Long> deadlines) {
+        long now = System.nanoTime();
+
+        for (Iterator<Future<ConfigurableApplicationContext>> it = running.keySet().iterator(); it.hasNext(); ) {
+            Future<ConfigurableApplicationContext> future = it.next();
+            if (deadlines.get(future) - now > 0 || future.isDone()) {
+                continue;
+            }
+            overruns.add(locationOf(running.get(future)));
+            deadlines.remove(future);
+            it.remove();
+        }
+    }
+
+    private String locationOf(ConfigurableApplicationContext ctx) {
+        String loc = parent.getChildLocation(ctx);
+        return loc != null ? loc : ctx.getDisplayName();
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2012 Grid Dynamics Consulting Services, Inc.
+ *      http://www.griddynamics.com
+ *
+ * Copyright 2013 Jakub Jirutka <jakub@jirutka.cz>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.griddynamics.banshun;
+
+import java.lang.reflect.Method;
+
+/**
+ * Receives lifecycle events of the modules and calls of the imported services, e.g. to record
+ * them as JDK Flight Recorder events. Each event is a {@link Span} started before the traced
+ * operation and ended after it.
+ *
+ * <p>The tracer used by default is discovered with {@link java.util.ServiceLoader}, see
+ * {@link ModuleTracers#getDefault()}. Implementations should return {@link ModuleTracers#NOOP_SPAN}
+ * when the event is not being recorded, so that tracing costs nearly nothing when disabled.</p>
+ */
+public interface ModuleTracer {
+
+    /** Resolving of the config locations, including the excluded ones. */
+    String PHASE_RESOLVE = "resolve";
+    /** Parsing of the locations and analysis of their exports and imports. */
+    String PHASE_ANALYZE = "analyze";
+    /** Sorting of the locations by their dependencies. */
+    String PHASE_SORT = "sort";
+
+    /**
+     * @param phase One of the <tt>PHASE_*</tt> constants.
+     */
+    Span startPhase(String phase);
+
+    /**
+     * Starts creating and refreshing the nested contexts of the given location.
+     */
+    Span startRefresh(String location);
+
+    Span startExport(String serviceName, Class<?> serviceInterface, String beanName);
+
+    /**
+     * Starts resolving the exported bean of the given service on the first call of its import
+     * proxy, or after the service has been reloaded.
+     */
+    Span startResolution(String serviceName, Class<?> serviceInterface);
+
+    /**
+     * Starts a call of an imported service, invoked only for the sampled calls, see
+     * {@link ContextParentBean#setInvocationTracingRate(double)}.
+     */
+    Span startInvocation(String serviceName, Method method);
+
+
+    interface Span {
+
+        /**
+         * Ends the traced operation successfully.
+         */
+        void end();
+
+        /**
+         * Ends the traced operation with the given failure.
+         */
+        void fail(Throwable cause);
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright 2012 Grid Dynamics Consulting Services, Inc.
+ *      http://www.griddynamics.com
+ *
+ * Copyright 2013 Jakub Jirutka <jakub@jirutka.cz>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.griddynamics.banshun;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Method;
+import java.util.Iterator;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+
+/**
+ * Provides the default {@link ModuleTracer}.
+ */
+public final class ModuleTracers {
+
+    private static final Logger log = LoggerFactory.getLogger(ModuleTracers.class);
+
+    /**
+     * Span that does nothing.
+     */
+    public static final ModuleTracer.Span NOOP_SPAN = new ModuleTracer.Span() {
+        public void end() {
+        }
+        public void fail(Throwable cause) {
+        }
+    };
+
+    /**
+     * Tracer that doesn't trace anything.
+     */
+    public static final ModuleTracer NOOP = new ModuleTracer() {
+        public ModuleTracer.Span startPhase(String phase) {
+            return NOOP_SPAN;
+        }
+        public ModuleTracer.Span startRefresh(String location) {
+            return NOOP_SPAN;
+        }
+        public ModuleTracer.Span startExport(String serviceName, Class<?> serviceInterface, String beanName) {
+            return NOOP_SPAN;
+        }
+        public ModuleTracer.Span startResolution(String serviceName, Class<?> serviceInterface) {
+            return NOOP_SPAN;
+        }
+        public ModuleTracer.Span startInvocation(String serviceName, Method method) {
+            return NOOP_SPAN;
+        }
+    };
+
+
+    private ModuleTracers() {
+    }
+
+    /**
+     * @return The first {@link ModuleTracer} registered in
+     *         <tt>META-INF/services/com.griddynamics.banshun.ModuleTracer</tt> that can be loaded,
+     *         or {@link #NOOP} if there's none, e.g. when spring-modular-jfr is not on the
+     *         classpath or runs on a JVM without Flight Recorder.
+     */
+    public static ModuleTracer getDefault() {
+        return DefaultHolder.INSTANCE;
+    }
+
+
+    static ModuleTracer load(ClassLoader classLoader) {
+        Iterator<ModuleTracer> it = ServiceLoader.load(ModuleTracer.class, classLoader).iterator();
+
+        while (true) {
+            try {
+                if (!it.hasNext()) {
+                    return NOOP;
+                }
+                ModuleTracer tracer = it.next();
+                log.info("Using module tracer {}", tracer.getClass().getName());
+                return tracer;
+
+            } catch (ServiceConfigurationError | LinkageError ex) {
+                log.warn("Failed to load module tracer: {}", ex.toString());
+            }
+        }
+    }
+
+
+    private static class DefaultHolder {
+        static final ModuleTracer INSTANCE = load(ModuleTracers.class.getClassLoader());
+    }
+}
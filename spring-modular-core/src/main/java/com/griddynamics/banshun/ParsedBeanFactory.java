@@ -0,0 +1,56 @@
+/*
+ * Copyright 2012 Grid Dynamics Consulting Services, Inc.
+ *      http://www.griddynamics.com
+ *
+ * Copyright 2013 Jakub Jirutka <jakub@jirutka.cz>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.griddynamics.banshun;
+
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bean factory that holds the bean definitions parsed from a location during analysis. It
+ * records all the aliases registered by the location in order, including aliases of beans
+ * defined in other contexts, so they can be registered again in the nested context, see
+ * {@link SingleResourceXmlChildContext}.
+ */
+class ParsedBeanFactory extends DefaultListableBeanFactory {
+
+    private final Map<String, String> aliases = new LinkedHashMap<>();
+
+
+    @Override
+    public void registerAlias(String name, String alias) {
+        super.registerAlias(name, alias);
+        aliases.put(alias, name);
+    }
+
+    @Override
+    public void removeAlias(String alias) {
+        super.removeAlias(alias);
+        aliases.remove(alias);
+    }
+
+    /**
+     * @return Map of the registered aliases to the names they refer to, in order of registration.
+     */
+    Map<String, String> getRegisteredAliases() {
+        return Collections.unmodifiableMap(aliases);
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright 2012 Grid Dynamics Consulting Services, Inc.
+ *      http://www.griddynamics.com
+ *
+ * Copyright 2013 Jakub Jirutka <jakub@jirutka.cz>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.griddynamics.banshun;
+
+import java.lang.reflect.Method;
+import java.util.*;
+
+/**
+ * Invocation metrics of an imported service, recorded per method of the service interface by
+ * the import proxy when enabled by {@link ContextParentBean#setMetricsEnabled(boolean)}. Calls
+ * of the methods inherited from {@link Object} are not recorded.
+ */
+public class ServiceMetrics implements ServiceMetricsMXBean {
+
+    private final String serviceName;
+    private final Class<?> serviceInterface;
+    // not modified after construction, so lookups on the hot path need neither locks nor allocations
+    private final Map<Method, MethodMetrics> methods = new HashMap<>();
+
+
+    ServiceMetrics(String serviceName, Class<?> serviceInterface) {
+        this.serviceName = serviceName;
+        this.serviceInterface = serviceInterface;
+
+        for (Method method : serviceInterface.getMethods()) {
+            methods.put(method, new MethodMetrics(describe(method)));
+        }
+    }
+
+
+    public String getServiceName() {
+        return serviceName;
+    }
+
+    public Class<?> getServiceInterface() {
+        return serviceInterface;
+    }
+
+    /**
+     * @return Metrics of the methods of the service interface ordered by their names.
+     */
+    public List<MethodMetrics> getMethods() {
+        List<MethodMetrics> result = new ArrayList<>(methods.values());
+
+        Collections.sort(result, new Comparator<MethodMetrics>() {
+            public int compare(MethodMetrics m1, MethodMetrics m2) {
+                return m1.getMethodName().compareTo(m2.getMethodName());
+            }
+        });
+        return result;
+    }
+
+    public long getCalls() {
+        long sum = 0;
+        for (MethodMetrics method : methods.values()) {
+            sum += method.getCalls();
+        }
+        return sum;
+    }
+
+    public long getErrors() {
+        long sum = 0;
+        for (MethodMetrics method : methods.values()) {
+            sum += method.getErrors();
+        }
+        return sum;
+    }
+
+    public Map<String, Long> getMethodCalls() {
+        Map<String, Long> result = new TreeMap<>();
+        for (MethodMetrics method : methods.values()) {
+            result.put(method.getMethodName(), method.getCalls());
+        }
+        return result;
+    }
+
+    public Map<String, Long> getMethodErrors() {
+        Map<String, Long> result = new TreeMap<>();
+        for (MethodMetrics method : methods.values()) {
+            result.put(method.getMethodName(), method.getErrors());
+        }
+        return result;
+    }
+
+    public Map<String, Long> getMethodMeanNanos() {
+        Map<String, Long> result = new TreeMap<>();
+        for (MethodMetrics method : methods.values()) {
+            result.put(method.getMethodName(), method.getMeanNanos());
+        }
+        return result;
+    }
+
+    public Map<String, Long> getMethod99thPercentileNanos() {
+        Map<String, Long> result = new TreeMap<>();
+        for (MethodMetrics method : methods.values()) {
+            result.put(method.getMethodName(), method.getLatency().getPercentile(0.99));
+        }
+        return result;
+    }
+
+    public Map<String, long[]> getMethodLatencyHistograms() {
+        Map<String, long[]> result = new TreeMap<>();
+        for (MethodMetrics method : methods.values()) {
+            result.put(method.getMethodName(), method.getLatency().getCounts());
+        }
+        return result;
+    }
+
+    public long[] getLatencyBucketBounds() {
+        return LatencyHistogram.getBucketBounds();
+    }
+
+
+    /**
+     * @return Metrics of the given method, or <tt>null</tt> if it's not a method of the service
+     *         interface.
+     */
+    MethodMetrics getMethodMetrics(Method method) {
+        return methods.get(method);
+    }
+
+    private static String describe(Method method) {
+        StringBuilder result = new StringBuilder(method.getName()).append('(');
+        Class<?>[] parameterTypes = method.getParameterTypes();
+
+        for (int i = 0; i < parameterTypes.length; i++) {
+            if (i > 0) {
+                result.append(',');
+            }
+            result.append(parameterTypes[i].getSimpleName());
+        }
+        return result.append(')').toString();
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright 2012 Grid Dynamics Consulting Services, Inc.
+ *      http://www.griddynamics.com
+ *
+ * Copyright 2013 Jakub Jirutka <jakub@jirutka.cz>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.griddynamics.banshun;
+
+import java.util.Map;
+
+/**
+ * JMX view of the invocation metrics of an imported service, see {@link ServiceMetrics}. The
+ * per-method attributes are keyed by {@link MethodMetrics#getMethodName() method names}.
+ */
+public interface ServiceMetricsMXBean {
+
+    String getServiceName();
+
+    long getCalls();
+
+    long getErrors();
+
+    Map<String, Long> getMethodCalls();
+
+    Map<String, Long> getMethodErrors();
+
+    Map<String, Long> getMethodMeanNanos();
+
+    Map<String, Long> getMethod99thPercentileNanos();
+
+    /**
+     * @return Counts of the latency histogram buckets, see {@link #getLatencyBucketBounds()}.
+     */
+    Map<String, long[]> getMethodLatencyHistograms();
+
+    /**
+     * @return Exclusive upper bounds of the latency histogram buckets in nanoseconds.
+     */
+    long[] getLatencyBucketBounds();
+}
@@ -0,0 +1,243 @@
+/*
+ * Copyright 2012 Grid Dynamics Consulting Services, Inc.
+ *      http://www.griddynamics.com
+ *
+ * Copyright 2013 Jakub Jirutka <jakub@jirutka.cz>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.griddynamics.banshun;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Storage of the exported services and import proxies of a {@link ContextParentBean}, kept
+ * aside of the root bean factory. Lookups are lock-free and each registration is a single
+ * atomic operation, so the registry can be used by nested contexts that are refreshed
+ * concurrently.
+ */
+public class ServiceRegistry {
+
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+
+
+    /**
+     * Registers the export of the given service, unless the service has been already exported.
+     *
+     * @return <tt>true</tt> if the export has been registered, <tt>false</tt> if another export
+     *         of the service exists.
+     */
+    public boolean registerExport(String serviceName, ExportTargetSource exportTargetSource) {
+        Entry entry = entry(serviceName);
+
+        if (entry.export.compareAndSet(null, exportTargetSource)) {
+            entry.exported.countDown();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Replaces the export of the given service, if it's the expected one.
+     *
+     * @param expected    The current export, or <tt>null</tt> if the service should not be exported.
+     * @param replacement The new export, or <tt>null</tt> to remove the export.
+     * @return <tt>true</tt> if the export has been replaced.
+     */
+    public boolean replaceExport(String serviceName, ExportTargetSource expected, ExportTargetSource replacement) {
+        Entry entry = entry(serviceName);
+
+        if (entry.export.compareAndSet(expected, replacement)) {
+            if (replacement != null) {
+                entry.exported.countDown();
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return The export of the given service, or <tt>null</tt> if it has not been exported yet.
+     */
+    public ExportTargetSource getExport(String serviceName) {
+        Entry entry = entries.get(serviceName);
+        return entry != null ? entry.export.get() : null;
+    }
+
+    /**
+     * Waits until the given service is exported.
+     *
+     * @return The export of the given service.
+     * @throws InterruptedException If the current thread is interrupted while waiting.
+     */
+    public ExportTargetSource awaitExport(String serviceName) throws InterruptedException {
+        Entry entry = entry(serviceName);
+
+        entry.exported.await();
+        return entry.export.get();
+    }
+
+    /**
+     * Waits at most the given time until the given service is exported.
+     *
+     * @return The export of the given service, or <tt>null</tt> if it has not been exported
+     *         before the timeout elapsed.
+     * @throws InterruptedException If the current thread is interrupted while waiting.
+     */
+    public ExportTargetSource awaitExport(String serviceName, long timeout, TimeUnit unit) throws InterruptedException {
+        Entry entry = entry(serviceName);
+
+        entry.exported.await(timeout, unit);
+        return entry.export.get();
+    }
+
+    /**
+     * Registers the import proxy of the given service, unless another one has been already
+     * registered.
+     *
+     * @return The registered proxy, i.e. either the given one, or the one registered before.
+     */
+    public Object registerImport(String serviceName, Object importProxy) {
+        AtomicReference<Object> ref = entry(serviceName).importProxy;
+
+        return ref.compareAndSet(null, importProxy) ? importProxy : ref.get();
+    }
+
+    /**
+     * @return The import proxy of the given service, or <tt>null</tt> if it has not been
+     *         looked up yet.
+     */
+    public Object getImport(String serviceName) {
+        Entry entry = entries.get(serviceName);
+        return entry != null ? entry.importProxy.get() : null;
+    }
+
+    /**
+     * Removes the import proxy of the given service, so that a new one is created on the next
+     * lookup, e.g. because the service interface has changed.
+     *
+     * @return <tt>true</tt> if the removed proxy has been published in the root context, see
+     *         {@link #markImportPublished(String)}.
+     */
+    public boolean removeImport(String serviceName) {
+        Entry entry = entries.get(serviceName);
+
+        if (entry == null) {
+            return false;
+        }
+        entry.importProxy.set(null);
+        return entry.importPublished.getAndSet(false);
+    }
+
+    /**
+     * Marks the import proxy of the given service as published in the root context.
+     *
+     * @return <tt>true</tt> if the proxy has not been marked before, i.e. the caller should
+     *         publish it.
+     */
+    public boolean markImportPublished(String serviceName) {
+        return entry(serviceName).importPublished.compareAndSet(false, true);
+    }
+
+    /**
+     * Registers the invocation metrics of the given service, unless metrics of the same service
+     * interface have been already registered.
+     *
+     * @return The registered metrics, i.e. either the given ones, or the ones registered before.
+     */
+    public ServiceMetrics registerMetrics(String serviceName, ServiceMetrics metrics) {
+        AtomicReference<ServiceMetrics> ref = entry(serviceName).metrics;
+
+        while (true) {
+            ServiceMetrics current = ref.get();
+
+            if (current != null && current.getServiceInterface() == metrics.getServiceInterface()) {
+                return current;
+            }
+            if (ref.compareAndSet(current, metrics)) {
+                return metrics;
+            }
+        }
+    }
+
+    /**
+     * @return The invocation metrics of the given service, or <tt>null</tt> if not recorded.
+     */
+    public ServiceMetrics getMetrics(String serviceName) {
+        Entry entry = entries.get(serviceName);
+        return entry != null ? entry.metrics.get() : null;
+    }
+
+    /**
+     * @return The invocation metrics of all the services by their names.
+     */
+    public Map<String, ServiceMetrics> getMetrics() {
+        Map<String, ServiceMetrics> result = new TreeMap<>();
+
+        for (Entry entry : entries.values()) {
+            ServiceMetrics metrics = entry.metrics.get();
+            if (metrics != null) {
+                result.put(entry.serviceName, metrics);
+            }
+        }
+        return Collections.unmodifiableMap(result);
+    }
+
+    /**
+     * @return Names of the exported services.
+     */
+    public Set<String> getExportedServiceNames() {
+        Set<String> result = new TreeSet<>();
+
+        for (Entry entry : entries.values()) {
+            if (entry.export.get() != null) {
+                result.add(entry.serviceName);
+            }
+        }
+        return Collections.unmodifiableSet(result);
+    }
+
+
+    private Entry entry(String serviceName) {
+        Entry entry = entries.get(serviceName);
+
+        if (entry == null) {
+            Entry created = new Entry(serviceName);
+            entry = entries.putIfAbsent(serviceName, created);
+            if (entry == null) {
+                entry = created;
+            }
+        }
+        return entry;
+    }
+
+
+    private static class Entry {
+        final String serviceName;
+        final AtomicReference<ExportTargetSource> export = new AtomicReference<>();
+        final CountDownLatch exported = new CountDownLatch(1);
+        final AtomicReference<Object> importProxy = new AtomicReference<>();
+        final AtomicBoolean importPublished = new AtomicBoolean();
+        final AtomicReference<ServiceMetrics> metrics = new AtomicReference<>();
+
+        Entry(String serviceName) {
+            this.serviceName = serviceName;
+        }
+    }
+}
@@ -17,25 +17,69 @@
 package com.griddynamics.banshun;
 
 import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.beans.factory.support.BeanDefinitionRegistry;
 import org.springframework.beans.factory.xml.XmlBeanDefinitionReader;
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.support.ClassPathXmlApplicationContext;
 import org.springframework.core.io.Resource;
 
 import java.io.IOException;
+import java.util.Map;
 
 public final class SingleResourceXmlChildContext extends ClassPathXmlApplicationContext {
 
     private Resource resource;
+    private BeanDefinitionRegistry parsedDefinitions;
 
     public SingleResourceXmlChildContext(Resource resource, ApplicationContext parent) {
+        this(resource, parent, null);
+    }
+
+    /**
+     * @param resource The XML resource of this context.
+     * @param parent The parent context.
+     * @param parsedDefinitions Bean definitions already parsed from the given resource. If not
+     *        <tt>null</tt>, they are used instead of parsing the resource again. The registry is
+     *        not referenced anymore after refresh.
+     */
+    public SingleResourceXmlChildContext(Resource resource, ApplicationContext parent, BeanDefinitionRegistry parsedDefinitions) {
         this.resource = resource;
+        this.parsedDefinitions = parsedDefinitions;
+        setDisplayName(resource.getDescription());
         setParent(parent);
         refresh();
     }
 
+    @Override
+    protected void postProcessBeanFactory(ConfigurableListableBeanFactory beanFactory) {
+        super.postProcessBeanFactory(beanFactory);
+        BeanCreationProfiler.registerActive(beanFactory);
+    }
+
     @Override
     protected void loadBeanDefinitions(XmlBeanDefinitionReader reader) throws BeansException, IOException {
-        reader.loadBeanDefinitions(resource);
+        if (parsedDefinitions == null) {
+            reader.loadBeanDefinitions(resource);
+            return;
+        }
+        BeanDefinitionRegistry registry = reader.getRegistry();
+
+        for (String beanName : parsedDefinitions.getBeanDefinitionNames()) {
+            registry.registerBeanDefinition(beanName, parsedDefinitions.getBeanDefinition(beanName));
+        }
+        if (parsedDefinitions instanceof ParsedBeanFactory) {
+            // includes aliases of beans defined in the parent or other modules
+            for (Map.Entry<String, String> alias : ((ParsedBeanFactory) parsedDefinitions).getRegisteredAliases().entrySet()) {
+                registry.registerAlias(alias.getValue(), alias.getKey());
+            }
+        } else {
+            for (String beanName : parsedDefinitions.getBeanDefinitionNames()) {
+                for (String alias : parsedDefinitions.getAliases(beanName)) {
+                    registry.registerAlias(beanName, alias);
+                }
+            }
+        }
+        parsedDefinitions = null;
     }
 }
@@ -0,0 +1,277 @@
+/*
+ * Copyright 2012 Grid Dynamics Consulting Services, Inc.
+ *      http://www.griddynamics.com
+ *
+ * Copyright 2013 Jakub Jirutka <jakub@jirutka.cz>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.griddynamics.banshun;
+
+import lombok.Data;
+
+import java.util.*;
+
+/**
+ * Startup critical path of the nested modules, i.e. the chain of dependent modules with the
+ * longest sum of refresh durations. It bounds the time until all the modules are ready, no
+ * matter how many of them are refreshed concurrently, so only shortening a module on the path
+ * (or making it lazy) shortens the startup. Modules off the path have a slack, i.e. time their
+ * refresh may take longer without delaying the startup.
+ *
+ * <p>The dependencies are taken from the {@link LocationsGraph}; without it, every module is
+ * considered independent. A dependency on a module that follows the dependent one in the
+ * startup order (i.e. a cycle) is ignored.</p>
+ */
+public class StartupReport {
+
+    private final List<ModuleTiming> modules;
+    private final List<String> criticalPath;
+    private final long criticalPathDuration;
+    private final long totalDuration;
+
+
+    /**
+     * @param locations     The locations in startup order.
+     * @param graph         Dependencies between the locations; may be <tt>null</tt>.
+     * @param durations     Refresh durations of the locations in milliseconds; missing ones are
+     *                      considered zero.
+     * @param totalDuration Measured duration of the whole startup in milliseconds, or <tt>-1</tt>.
+     */
+    StartupReport(List<String> locations, LocationsGraph graph, Map<String, Long> durations, long totalDuration) {
+        int size = locations.size();
+        Map<String, Integer> indexes = new HashMap<>();
+        List<List<Integer>> dependencies = new ArrayList<>(size);
+        long[] duration = new long[size];
+        long[] earliestStart = new long[size];
+        long[] earliestFinish = new long[size];
+        int[] predecessor = new int[size];
+
+        for (int i = 0; i < size; i++) {
+            String location = locations.get(i);
+            Long measured = durations.get(location);
+            List<Integer> deps = new ArrayList<>();
+
+            if (graph != null) {
+                for (String dependency : graph.getDependencies(location)) {
+                    Integer index = indexes.get(dependency);
+                    if (index != null) {
+                        deps.add(index);
+                    }
+                }
+                Collections.sort(deps);
+            }
+            dependencies.add(deps);
+            indexes.put(location, i);
+            duration[i] = measured != null ? Math.max(measured, 0) : 0;
+            predecessor[i] = -1;
+
+            for (int dep : deps) {
+                if (predecessor[i] < 0 || earliestFinish[dep] > earliestStart[i]) {
+                    earliestStart[i] = earliestFinish[dep];
+                    predecessor[i] = dep;
+                }
+            }
+            earliestFinish[i] = earliestStart[i] + duration[i];
+        }
+
+        int last = -1;
+        for (int i = 0; i < size; i++) {
+            if (last < 0 || earliestFinish[i] > earliestFinish[last]) {
+                last = i;
+            }
+        }
+        long finish = last >= 0 ? earliestFinish[last] : 0;
+
+        long[] latestFinish = new long[size];
+        Arrays.fill(latestFinish, finish);
+        long[] latestStart = new long[size];
+
+        for (int i = size - 1; i >= 0; i--) {
+            latestStart[i] = latestFinish[i] - duration[i];
+            for (int dep : dependencies.get(i)) {
+                latestFinish[dep] = Math.min(latestFinish[dep], latestStart[i]);
+            }
+        }
+
+        LinkedList<String> path = new LinkedList<>();
+        Set<Integer> critical = new HashSet<>();
+        for (int i = last; i >= 0; i = predecessor[i]) {
+            path.addFirst(locations.get(i));
+            critical.add(i);
+        }
+
+        List<ModuleTiming> timings = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            List<String> deps = new ArrayList<>();
+            for (int dep : dependencies.get(i)) {
+                deps.add(locations.get(dep));
+            }
+            timings.add(new ModuleTiming(locations.get(i), duration[i], earliestStart[i], earliestFinish[i],
+                    latestStart[i], latestStart[i] - earliestStart[i], critical.contains(i),
+                    Collections.unmodifiableList(deps)));
+        }
+
+        this.modules = Collections.unmodifiableList(timings);
+        this.criticalPath = Collections.unmodifiableList(path);
+        this.criticalPathDuration = finish;
+        this.totalDuration = totalDuration;
+    }
+
+
+    /**
+     * @return Timings of the modules in startup order.
+     */
+    public List<ModuleTiming> getModules() {
+        return modules;
+    }
+
+    /**
+     * @return Locations on the critical path in order of their dependencies.
+     */
+    public List<String> getCriticalPath() {
+        return criticalPath;
+    }
+
+    /**
+     * @return Sum of the refresh durations of the modules on the critical path in milliseconds.
+     */
+    public long getCriticalPathDuration() {
+        return criticalPathDuration;
+    }
+
+    /**
+     * @return Measured duration of the startup of all the modules in milliseconds, or <tt>-1</tt>
+     *         if not finished.
+     */
+    public long getTotalDuration() {
+        return totalDuration;
+    }
+
+    /**
+     * @return This report as a JSON object.
+     */
+    public String toJson() {
+        StringBuilder json = new StringBuilder("{");
+        json.append("\"totalDuration\":").append(totalDuration);
+        json.append(",\"criticalPathDuration\":").append(criticalPathDuration);
+        json.append(",\"criticalPath\":");
+        appendStrings(json, criticalPath);
+        json.append(",\"modules\":[");
+
+        for (int i = 0; i < modules.size(); i++) {
+            ModuleTiming module = modules.get(i);
+            json.append(i > 0 ? ",{" : "{");
+            json.append("\"location\":");
+            appendString(json, module.getLocation());
+            json.append(",\"duration\":").append(module.getDuration());
+            json.append(",\"earliestStart\":").append(module.getEarliestStart());
+            json.append(",\"earliestFinish\":").append(module.getEarliestFinish());
+            json.append(",\"latestStart\":").append(module.getLatestStart());
+            json.append(",\"slack\":").append(module.getSlack());
+            json.append(",\"critical\":").append(module.isCritical());
+            json.append(",\"dependencies\":");
+            appendStrings(json, module.getDependencies());
+            json.append('}');
+        }
+        return json.append("]}").toString();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d ms of %d ms: %s", criticalPathDuration, totalDuration, criticalPath);
+    }
+
+
+    private static void appendStrings(StringBuilder json, List<String> values) {
+        json.append('[');
+        for (int i = 0; i < values.size(); i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            appendString(json, values.get(i));
+        }
+        json.append(']');
+    }
+
+    private static void appendString(StringBuilder json, String value) {
+        json.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    json.append("\\\"");
+                    break;
+                case '\\':
+                    json.append("\\\\");
+                    break;
+                case '\n':
+                    json.append("\\n");
+                    break;
+                case '\r':
+                    json.append("\\r");
+                    break;
+                case '\t':
+                    json.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        json.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        json.append(c);
+                    }
+            }
+        }
+        json.append('"');
+    }
+
+
+    /**
+     * Startup timing of a single module. All the times are in milliseconds relative to the start
+     * of the first module, assuming that each module starts as soon as its dependencies are ready.
+     */
+    @Data
+    public static class ModuleTiming {
+
+        private final String location;
+
+        /**
+         * Refresh duration of the module, <tt>0</tt> if it has not been refreshed, e.g. it's lazy.
+         */
+        private final long duration;
+
+        private final long earliestStart;
+        private final long earliestFinish;
+
+        /**
+         * The latest time the module may start without delaying the startup.
+         */
+        private final long latestStart;
+
+        /**
+         * Difference between the latest and the earliest start, <tt>0</tt> for the modules on
+         * the critical path.
+         */
+        private final long slack;
+
+        /**
+         * Whether the module is on the critical path.
+         */
+        private final boolean critical;
+
+        /**
+         * Locations the module depends on.
+         */
+        private final List<String> dependencies;
+    }
+}
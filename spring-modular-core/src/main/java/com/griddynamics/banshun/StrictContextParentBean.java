@@ -20,14 +20,24 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.BeanNameAware;
 import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.beans.factory.parsing.EmptyReaderEventListener;
+import org.springframework.beans.factory.parsing.ImportDefinition;
 import org.springframework.beans.factory.support.BeanDefinitionRegistry;
 import org.springframework.beans.factory.support.BeanDefinitionValidationException;
-import org.springframework.beans.factory.support.SimpleBeanDefinitionRegistry;
 import org.springframework.beans.factory.xml.ResourceEntityResolver;
 import org.springframework.beans.factory.xml.XmlBeanDefinitionReader;
+import org.springframework.core.env.Environment;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.UrlResource;
+import org.springframework.util.ClassUtils;
+import org.springframework.util.StringUtils;
 
-import java.text.MessageFormat;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * @author Alexey Olenev
@@ -39,18 +49,79 @@ public class StrictContextParentBean extends ContextParentBean implements BeanNa
     private String name;
     private List<String> runOnlyServices = new ArrayList<>();
     private LocationsGraph locationsGraph;
+    private final Map<String, BeanDefinitionRegistry> parsedDefinitions = new ConcurrentHashMap<>();
 
     private boolean prohibitCycles = true;
+    private boolean reuseParsedDefinitions = true;
+    private boolean useModuleManifests = false;
+    private ClassVerifier.Mode classCheckMode = ClassVerifier.Mode.INITIALIZE;
+    private File analysisCacheFile;
 
     public void setProhibitCycles(boolean prohibitCycles) {
         this.prohibitCycles = prohibitCycles;
     }
 
+    /**
+     * Specifies whether bean definitions parsed during analysis of dependencies should be
+     * used to create the nested contexts, instead of parsing their resources again. This
+     * applies only to contexts created without a
+     * {@link #setChildContextPrototype(String) childContextPrototype}.
+     *
+     * @default true
+     */
+    public void setReuseParsedDefinitions(boolean reuseParsedDefinitions) {
+        this.reuseParsedDefinitions = reuseParsedDefinitions;
+    }
+
+    /**
+     * Specifies file to persist exports and imports of the locations, and their sorted order,
+     * between restarts. Only locations that have been changed since the last start are then
+     * parsed and analyzed; a location is considered changed if its resource, any resource it
+     * imports, or a class of its beans has been modified. The cache is used only with the same
+     * name of this bean and the same profiles. If the file is corrupted or stale, full analysis
+     * is performed.
+     *
+     * @default null (no cache)
+     */
+    public void setAnalysisCacheFile(File analysisCacheFile) {
+        this.analysisCacheFile = analysisCacheFile;
+    }
+
+    /**
+     * Specifies whether module manifests ({@value ModuleManifest#MANIFEST_LOCATION}) generated
+     * at build time by the spring-modular Maven plugin should be used. Locations listed in
+     * the manifests are not parsed during analysis and their classes are not loaded, since
+     * they've been already validated at build time. Other locations are analyzed as usual.
+     *
+     * <p>The manifests are generated with the default profiles only, so they're ignored when
+     * the root context has any active profiles or non-default default profiles; all the
+     * locations are analyzed then.</p>
+     *
+     * @default false
+     */
+    public void setUseModuleManifests(boolean useModuleManifests) {
+        this.useModuleManifests = useModuleManifests;
+    }
+
+    /**
+     * Specifies how to check that classes of the beans in the analyzed locations exist.
+     * {@link ClassVerifier.Mode#LOAD LOAD} and {@link ClassVerifier.Mode#RESOURCE RESOURCE}
+     * don't run static initializers of the classes, so they're faster and free of side effects,
+     * and the classes are checked in parallel. All the missing classes are reported together.
+     *
+     * @default INITIALIZE
+     */
+    public void setClassCheckMode(ClassVerifier.Mode classCheckMode) {
+        this.classCheckMode = classCheckMode;
+    }
+
     public String getName() {
         return name;
     }
 
+    @Override
     public void setBeanName(String name) {
+        super.setBeanName(name);
         this.name = name;
     }
 
@@ -67,108 +138,347 @@ public class StrictContextParentBean extends ContextParentBean implements BeanNa
         locationsGraph.transitiveClosure(loc, ignoredLocations, false);
     }
 
+    @Override
+    protected BeanDefinitionRegistry pollParsedBeanDefinitions(String location) {
+        return parsedDefinitions.remove(location);
+    }
+
+    @Override
+    void initializeChildContexts() {
+        try {
+            super.initializeChildContexts();
+        } finally {
+            // release definitions of the locations that have been skipped
+            parsedDefinitions.clear();
+        }
+    }
+
+    @Override
+    protected LocationsGraph getLocationsGraph() {
+        return locationsGraph;
+    }
+
     @Override
     protected List<String> analyzeDependencies(List<String> configLocations) throws Exception {
-        ContextAnalyzer analyzer = new ContextAnalyzer();
+        ContextAnalyzer analyzer = new ContextAnalyzer(context.getClassLoader());
         List<Exception> exceptions = new LinkedList<>();
+        ClassVerifier classVerifier = new ClassVerifier(context.getClassLoader(), classCheckMode);
 
+        ModuleTracer.Span analysis = getTracer().startPhase(ModuleTracer.PHASE_ANALYZE);
+        AnalysisCache cache;
+        AnalysisCache updatedCache = new AnalysisCache(cacheKey());
+        boolean allCached;
         List<String> limitedLocations = new ArrayList<>();
-        for (String loc : configLocations) {
-            BeanDefinitionRegistry beanFactory = getBeanFactory(loc);
-
-            String[] beanNames = beanFactory.getBeanDefinitionNames();
-            for (String beanName : beanNames) {
-                BeanDefinition beanDefinition = beanFactory.getBeanDefinition(beanName);
-                try {
-                    if (isExport(beanDefinition)) {
-                        analyzer.addExport(beanDefinition, loc);
-                        if (checkForRunOnly(beanName)) {
-                            limitedLocations.add(loc);
-                        }
-                    } else if (isImport(beanDefinition)) {
-                        analyzer.addImport(beanDefinition, loc);
-                    } else if (beanDefinition.getBeanClassName() != null) {
-                        checkClassExist(loc, beanName, beanDefinition.getBeanClassName());
-                    }
-                } catch (Exception ex) {
-                    exceptions.add(ex);
+        try {
+            Map<String, LocationReferences> manifests = useModuleManifests && !hasCustomProfiles()
+                    ? loadModuleManifests() : Collections.<String, LocationReferences>emptyMap();
+
+            cache = analysisCacheFile != null ? AnalysisCache.load(analysisCacheFile, cacheKey()) : null;
+            allCached = cache != null;
+            parsedDefinitions.clear();
+
+            for (String loc : configLocations) {
+                LocationReferences manifestRefs = manifests.get(loc);
+                if (manifestRefs != null) {
+                    log.debug("Using module manifest of location {}", loc);
+                    allCached = false;
+                    addReferences(loc, manifestRefs, false, analyzer, limitedLocations, exceptions);
+                    continue;
+                }
+                AnalysisCache.Entry entry = cache != null ? cache.get(loc, context) : null;
+
+                if (entry != null && addReferences(loc, entry, true, analyzer, limitedLocations, exceptions)) {
+                    log.debug("Using cached analysis of location {}", loc);
+                } else {
+                    allCached = false;
+                    entry = analyzeLocation(loc, cache != null, analyzer, classVerifier, limitedLocations, exceptions);
+                }
+                if (entry != null) {
+                    updatedCache.put(loc, entry);
                 }
             }
-        }
 
-        analyzer.areThereExportsWithoutImport();
+            List<String> missingClasses = classVerifier.verify();
+            if (!missingClasses.isEmpty()) {
+                exceptions.add(new ClassNotFoundException(StringUtils.collectionToDelimitedString(missingClasses, "\n")));
+            }
+
+            analyzer.areThereExportsWithoutImport();
 
-        if (analyzer.areThereImportsWithoutExports() || !analyzer.areImportsTypesCorrect()) {
-            exceptions.add(new BeanDefinitionValidationException(
-                    "There are severe errors while parsing contexts. See logs for details"));
-        }
-        
-        if (!exceptions.isEmpty()) {
-            for (Exception exception : exceptions) {
-                log.error(exception.getMessage());
+            if (analyzer.areThereImportsWithoutExports() || !analyzer.areImportsTypesCorrect()) {
+                exceptions.add(new BeanDefinitionValidationException(
+                        "There are severe errors while parsing contexts. See logs for details"));
             }
-            throw exceptions.get(0);
+
+            if (!exceptions.isEmpty()) {
+                for (Exception exception : exceptions) {
+                    log.error(exception.getMessage());
+                }
+                throw exceptions.get(0);
+            }
+            analysis.end();
+
+        } catch (Exception ex) {
+            analysis.fail(ex);
+            throw ex;
         }
 
-        DependencySorter sorter = new DependencySorter(configLocations.toArray(new String[0]), analyzer.getImports(), analyzer.getExports());
-        sorter.setProhibitCycles(prohibitCycles);
+        String sortKey = configLocations + ";prohibitCycles=" + prohibitCycles;
+        List<String> sortedLocations = allCached ? cache.getSortedLocations(sortKey) : null;
+        List<String> analyzedConfigLocations;
 
-        locationsGraph = new LocationsGraph(analyzer.getImports(), analyzer.getExports());
-        List<String> analyzedConfigLocations = locationsGraph.filterConfigLocations(limitedLocations, sorter.sort());
+        ModuleTracer.Span sorting = getTracer().startPhase(ModuleTracer.PHASE_SORT);
+        try {
+            if (sortedLocations == null) {
+                DependencySorter sorter = new DependencySorter(configLocations.toArray(new String[0]), analyzer.getImports(), analyzer.getExports());
+                sorter.setProhibitCycles(prohibitCycles);
+                sortedLocations = Arrays.asList(sorter.sort());
+            }
+
+            locationsGraph = new LocationsGraph(analyzer.getImports(), analyzer.getExports());
+            analyzedConfigLocations = locationsGraph.filterConfigLocations(
+                    limitedLocations, sortedLocations.toArray(new String[sortedLocations.size()]));
+            sorting.end();
+
+        } catch (RuntimeException ex) {
+            sorting.fail(ex);
+            throw ex;
+        }
+        parsedDefinitions.keySet().retainAll(analyzedConfigLocations);
+
+        if (analysisCacheFile != null) {
+            updatedCache.setSortedLocations(sortKey, sortedLocations);
+            try {
+                updatedCache.save(analysisCacheFile);
+            } catch (IOException ex) {
+                log.warn("Failed to save analysis cache {}: {}", analysisCacheFile, ex.toString());
+            }
+        }
 
         log.info("ordered list of the contexts: {}", analyzedConfigLocations);
 
         return analyzedConfigLocations;
     }
 
-    private void checkClassExist(String location, String beanName, String beanClassName) throws ClassNotFoundException {
+    /**
+     * Parses the location and adds its exports and imports to the analyzer.
+     *
+     * @param cached Whether to create the cache entry.
+     * @return The cache entry for the location, or <tt>null</tt> if it should not be cached.
+     */
+    private AnalysisCache.Entry analyzeLocation(String loc, boolean cached, ContextAnalyzer analyzer, ClassVerifier classVerifier,
+                                                List<String> limitedLocations, List<Exception> exceptions) {
+        List<Resource> importedResources = new ArrayList<>();
+        BeanDefinitionRegistry beanFactory = getBeanFactory(loc, importedResources);
+        if (reuseParsedDefinitions) {
+            parsedDefinitions.put(loc, beanFactory);
+        }
+        AnalysisCache.Entry entry = cached ? new AnalysisCache.Entry() : null;
+
+        if (entry != null && !entry.addResource(loc, context.getResource(loc))) {
+            entry = null;
+        }
+        for (Resource resource : importedResources) {
+            if (entry != null && !addResource(entry, resource)) {
+                entry = null;
+            }
+        }
+
+        String[] beanNames = beanFactory.getBeanDefinitionNames();
+        for (String beanName : beanNames) {
+            BeanDefinition beanDefinition = beanFactory.getBeanDefinition(beanName);
+            try {
+                if (isExport(beanDefinition)) {
+                    BeanReferenceInfo ref = analyzer.addExport(beanDefinition, loc);
+                    if (checkForRunOnly(beanName)) {
+                        limitedLocations.add(loc);
+                    }
+                    if (entry != null && ref.getServiceInterface() != null
+                            && addClassResource(entry, ref.getServiceInterface().getName())) {
+                        entry.addExport(ref.getServiceName(), ref.getServiceInterface().getName(), beanName);
+                    } else {
+                        entry = null;
+                    }
+                } else if (isImport(beanDefinition)) {
+                    BeanReferenceInfo ref = analyzer.addImport(beanDefinition, loc);
+                    if (entry != null && ref.getServiceInterface() != null
+                            && addClassResource(entry, ref.getServiceInterface().getName())) {
+                        entry.addImport(ref.getServiceName(), ref.getServiceInterface().getName());
+                    } else {
+                        entry = null;
+                    }
+                } else if (beanDefinition.getBeanClassName() != null) {
+                    classVerifier.add(beanDefinition.getBeanClassName(), loc, beanName);
+
+                    if (entry != null && !addClassResource(entry, beanDefinition.getBeanClassName())) {
+                        entry = null;
+                    }
+                }
+            } catch (Exception ex) {
+                exceptions.add(ex);
+                entry = null;
+            }
+        }
+        return entry;
+    }
+
+    /**
+     * Adds the resource imported by a location to its cache entry.
+     *
+     * @return <tt>false</tt> if the resource can't be fingerprinted.
+     */
+    private boolean addResource(AnalysisCache.Entry entry, Resource resource) {
         try {
-            Class.forName(beanClassName);
-        } catch (ClassNotFoundException e) {
-            throw new ClassNotFoundException (MessageFormat.format(
-                    "Class not found {0} in location: {1} for bean: {2}", beanClassName, location, beanName));
+            return entry.addResource(resource.getURL().toString(), resource);
+        } catch (IOException ex) {
+            log.debug("Location of resource {} is unknown, it can't be cached: {}", resource, ex.toString());
+            return false;
         }
     }
 
-    private BeanDefinitionRegistry getBeanFactory(String location) {
-        XmlBeanDefinitionReader beanDefinitionReader = new XmlBeanDefinitionReader(new SimpleBeanDefinitionRegistry());
-        beanDefinitionReader.setResourceLoader(context);
-        beanDefinitionReader.setEntityResolver(new ResourceEntityResolver(context));
-        beanDefinitionReader.loadBeanDefinitions(location);
+    /**
+     * Adds the class file of the given class to the cache entry, so that the entry becomes
+     * stale when the class is modified or removed.
+     *
+     * @return <tt>false</tt> if the class file doesn't exist or can't be fingerprinted.
+     */
+    private boolean addClassResource(AnalysisCache.Entry entry, String className) {
+        String path = ClassUtils.convertClassNameToResourcePath(className) + ClassUtils.CLASS_FILE_SUFFIX;
+        URL url = context.getClassLoader().getResource(path);
 
-        return beanDefinitionReader.getBeanFactory();
+        return url != null && entry.addResource(url.toString(), new UrlResource(url));
+    }
+
+    /**
+     * @return Key of the settings the analysis depends on, i.e. the name of this bean (which
+     *         identifies the exports and imports) and the profiles of the root context.
+     */
+    private String cacheKey() {
+        Environment environment = context.getEnvironment();
+
+        return "registry=" + getName()
+                + ";activeProfiles=" + Arrays.toString(environment.getActiveProfiles())
+                + ";defaultProfiles=" + Arrays.toString(environment.getDefaultProfiles());
     }
 
     /**
-     * Check whether bean will be imported into other contexts.
+     * Adds exports and imports of the location from the analysis cache or a module manifest
+     * to the analyzer.
      *
-     * @param beanDefinition Definition of the bean to check.
-     * @return <tt>true</tt> if the bean will be imported, <tt>false</tt> otherwise.
+     * @param resolveClasses Whether to load the service interfaces, or create unresolved
+     *                       references with the interface names only.
+     * @return <tt>false</tt> if the references are stale (i.e. some of the service interfaces
+     *         doesn't exist anymore), so the location must be analyzed again.
      */
-    private boolean isImport(BeanDefinition beanDefinition) {
-        if (beanDefinition.getFactoryMethodName() != null) {
-            if (beanDefinition.getFactoryMethodName().equals("lookup")
-                && beanDefinition.getFactoryBeanName().equals(getName())) {
-                return true;
+    private boolean addReferences(String loc, LocationReferences refs, boolean resolveClasses, ContextAnalyzer analyzer,
+                                  List<String> limitedLocations, List<Exception> exceptions) {
+        List<BeanReferenceInfo> exports = new ArrayList<>();
+        List<BeanReferenceInfo> imports = new ArrayList<>();
+        try {
+            for (String[] export : refs.getExports()) {
+                exports.add(resolveClasses
+                        ? new BeanReferenceInfo(export[0], loadClass(export[1]), loc)
+                        : new BeanReferenceInfo(export[0], export[1], loc));
+            }
+            for (String[] imp : refs.getImports()) {
+                imports.add(resolveClasses
+                        ? new BeanReferenceInfo(imp[0], loadClass(imp[1]), loc)
+                        : new BeanReferenceInfo(imp[0], imp[1], loc));
+            }
+        } catch (ClassNotFoundException ex) {
+            log.debug("Cached analysis of location {} is stale: {}", loc, ex.toString());
+            return false;
+        }
+
+        for (int i = 0; i < exports.size(); i++) {
+            try {
+                analyzer.putInExports(exports.get(i));
+                if (checkForRunOnly(refs.getExports().get(i)[2])) {
+                    limitedLocations.add(loc);
+                }
+            } catch (Exception ex) {
+                exceptions.add(ex);
             }
         }
+        for (BeanReferenceInfo ref : imports) {
+            analyzer.putInImports(ref);
+        }
+        return true;
+    }
+
+    /**
+     * @return <tt>true</tt> if the root context has other profiles than the default one, which
+     *         the module manifests have been generated with.
+     */
+    private boolean hasCustomProfiles() {
+        Environment environment = context.getEnvironment();
+
+        if (environment.getActiveProfiles().length > 0
+                || !Arrays.equals(environment.getDefaultProfiles(), new String[]{"default"})) {
+            log.info("Module manifests are ignored, since profiles {} are active",
+                    Arrays.asList(environment.getActiveProfiles().length > 0
+                            ? environment.getActiveProfiles() : environment.getDefaultProfiles()));
+            return true;
+        }
         return false;
     }
 
     /**
-     * Check whether bean will be exported from this context into others.
+     * Loads all the module manifests on the classpath.
      *
-     * @param beanDefinition Definition of the bean to check.
-     * @return <tt>true</tt> if the bean will be exported, <tt>false</tt> otherwise.
+     * @return Map of the location URIs to their exports and imports.
      */
-    private boolean isExport(BeanDefinition beanDefinition) {
-        if (beanDefinition.getFactoryMethodName() != null) {
-            if (beanDefinition.getFactoryMethodName().equals("export")
-                && beanDefinition.getFactoryBeanName().equals(getName())) {
-                return true;
+    private Map<String, LocationReferences> loadModuleManifests() throws IOException {
+        Map<String, LocationReferences> result = new HashMap<>();
+
+        for (Resource resource : context.getResources("classpath*:" + ModuleManifest.MANIFEST_LOCATION)) {
+            String uri = resource.getURI().toString();
+            String baseUri = uri.substring(0, uri.length() - ModuleManifest.MANIFEST_LOCATION.length());
+
+            try (InputStream input = resource.getInputStream()) {
+                result.putAll(ModuleManifest.read(input, baseUri).getLocations());
+            } catch (IOException ex) {
+                log.warn("Ignoring module manifest {}: {}", uri, ex.getMessage());
             }
         }
-        return false;
+        log.info("Loaded module manifests of {} locations", result.size());
+
+        return result;
+    }
+
+    private Class<?> loadClass(String className) throws ClassNotFoundException {
+        return ClassUtils.forName(className, context.getClassLoader());
+    }
+
+    /**
+     * Parses bean definitions from the given location into a registry that preserves order of
+     * the definitions and aliases, so it can be used as a source for the nested context.
+     *
+     * @param importedResources The list to add the resources imported by the location into,
+     *                          including the transitively imported ones.
+     */
+    private BeanDefinitionRegistry getBeanFactory(String location, final List<Resource> importedResources) {
+        XmlBeanDefinitionReader beanDefinitionReader = new XmlBeanDefinitionReader(new ParsedBeanFactory());
+        beanDefinitionReader.setEnvironment(context.getEnvironment());
+        beanDefinitionReader.setResourceLoader(context);
+        beanDefinitionReader.setEntityResolver(new ResourceEntityResolver(context));
+        beanDefinitionReader.setEventListener(new EmptyReaderEventListener() {
+            @Override
+            public void importProcessed(ImportDefinition importDefinition) {
+                importedResources.addAll(Arrays.asList(importDefinition.getActualResources()));
+            }
+        });
+        beanDefinitionReader.loadBeanDefinitions(location);
+
+        return beanDefinitionReader.getBeanFactory();
+    }
+
+    private boolean isImport(BeanDefinition beanDefinition) {
+        return ContextAnalyzer.isImport(beanDefinition, getName());
+    }
+
+    private boolean isExport(BeanDefinition beanDefinition) {
+        return ContextAnalyzer.isExport(beanDefinition, getName());
     }
 
     private boolean checkForRunOnly(String beanName) {
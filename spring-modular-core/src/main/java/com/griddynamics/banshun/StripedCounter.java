@@ -0,0 +1,75 @@
+/*
+ * Copyright 2012 Grid Dynamics Consulting Services, Inc.
+ *      http://www.griddynamics.com
+ *
+ * Copyright 2013 Jakub Jirutka <jakub@jirutka.cz>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.griddynamics.banshun;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counter striped by thread, so concurrent updates don't contend on a single variable. Updates
+ * don't allocate; reading the value sums all the stripes.
+ */
+public class StripedCounter {
+
+    static final int STRIPES = stripes(Runtime.getRuntime().availableProcessors());
+    // each stripe occupies its own cache line
+    static final int PADDING = 8;
+
+    private final AtomicLongArray counts = new AtomicLongArray(STRIPES * PADDING);
+
+
+    public void increment() {
+        counts.incrementAndGet(index());
+    }
+
+    public void decrement() {
+        counts.decrementAndGet(index());
+    }
+
+    public void add(long delta) {
+        counts.addAndGet(index(), delta);
+    }
+
+    public long sum() {
+        long sum = 0;
+        for (int i = 0; i < STRIPES; i++) {
+            sum += counts.get(i * PADDING);
+        }
+        return sum;
+    }
+
+
+    /**
+     * @return Stripe of the current thread, between <tt>0</tt> and <tt>STRIPES - 1</tt>.
+     */
+    static int stripe() {
+        return (int) Thread.currentThread().getId() & (STRIPES - 1);
+    }
+
+    private static int index() {
+        return stripe() * PADDING;
+    }
+
+    private static int stripes(int processors) {
+        int result = 1;
+        while (result < processors * 2) {
+            result <<= 1;
+        }
+        return result;
+    }
+}
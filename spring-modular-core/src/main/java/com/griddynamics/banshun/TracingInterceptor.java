@@ -0,0 +1,59 @@
+/*
+ * Copyright 2012 Grid Dynamics Consulting Services, Inc.
+ *      http://www.griddynamics.com
+ *
+ * Copyright 2013 Jakub Jirutka <jakub@jirutka.cz>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.griddynamics.banshun;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Interceptor of an import proxy that reports a random sample of the calls to the
+ * {@link ModuleTracer}.
+ */
+class TracingInterceptor implements MethodInterceptor {
+
+    private final String serviceName;
+    private final ModuleTracer tracer;
+    private final double rate;
+
+
+    TracingInterceptor(String serviceName, ModuleTracer tracer, double rate) {
+        this.serviceName = serviceName;
+        this.tracer = tracer;
+        this.rate = rate;
+    }
+
+
+    public Object invoke(MethodInvocation invocation) throws Throwable {
+        if (rate < 1 && ThreadLocalRandom.current().nextDouble() >= rate) {
+            return invocation.proceed();
+        }
+        ModuleTracer.Span span = tracer.startInvocation(serviceName, invocation.getMethod());
+        try {
+            Object result = invocation.proceed();
+            span.end();
+            return result;
+
+        } catch (Throwable ex) {
+            span.fail(ex);
+            throw ex;
+        }
+    }
+}
@@ -20,6 +20,7 @@ package com.griddynamics.banshun.config.xml;
 
 import org.springframework.beans.factory.CannotLoadBeanClassException;
 import org.springframework.beans.factory.xml.ParserContext;
+import org.springframework.util.ClassUtils;
 
 public final class ParserUtils {
 
@@ -37,7 +38,8 @@ public final class ParserUtils {
     public static Class<?> findClassByName(String className, String beanName, ParserContext parserContext) {
         String description = parserContext.getReaderContext().getResource().getDescription();
         try {
-            return Class.forName(className);
+            // falls back to the default class loader when the reader has no bean class loader
+            return ClassUtils.forName(className, parserContext.getReaderContext().getBeanClassLoader());
         } catch (ClassNotFoundException ex) {
             throw new CannotLoadBeanClassException(description, beanName, className, ex);
         }
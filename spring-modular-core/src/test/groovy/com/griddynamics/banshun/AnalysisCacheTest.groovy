@@ -0,0 +1,114 @@
+/*
+ * Copyright 2013 Jakub Jirutka <jakub@jirutka.cz>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.griddynamics.banshun
+
+import org.springframework.core.io.ByteArrayResource
+import org.springframework.core.io.DefaultResourceLoader
+import org.springframework.core.io.FileSystemResource
+import spock.lang.Specification
+
+class AnalysisCacheTest extends Specification {
+
+    def file = File.createTempFile('banshun-cache', '.bin')
+    def resourceLoader = new DefaultResourceLoader()
+    def resource = File.createTempFile('banshun-ctx', '.xml')
+
+    def cleanup() {
+        file.delete()
+        resource.delete()
+    }
+
+
+    def 'save and load cache'() {
+        setup:
+            def cache = new AnalysisCache('key1')
+            def entry = new AnalysisCache.Entry()
+            entry.addResource(resource.toURI().toString(), new FileSystemResource(resource))
+            entry.addExport('service1', 'com.example.Face', 'service1-export-ref')
+            entry.addImport('service2', 'com.example.OtherFace')
+            cache.put('ctx1.xml', entry)
+            cache.setSortedLocations('key', ['ctx1.xml', 'ctx2.xml'])
+        when:
+            cache.save(file)
+            def loaded = AnalysisCache.load(file, 'key1')
+        then:
+            def loadedEntry = loaded.get('ctx1.xml', resourceLoader)
+            loadedEntry.resources == entry.resources
+            loadedEntry.exports*.toList() == [['service1', 'com.example.Face', 'service1-export-ref']]
+            loadedEntry.imports*.toList() == [['service2', 'com.example.OtherFace']]
+        and:
+            loaded.getSortedLocations('key') == ['ctx1.xml', 'ctx2.xml']
+            loaded.getSortedLocations('another key') == null
+    }
+
+    def 'ignore cache saved with another key'() {
+        setup:
+            def cache = new AnalysisCache('registry=root')
+            def entry = new AnalysisCache.Entry()
+            entry.addResource(resource.toURI().toString(), new FileSystemResource(resource))
+            cache.put('ctx1.xml', entry)
+            cache.setSortedLocations('key', ['ctx1.xml'])
+            cache.save(file)
+        when:
+            def loaded = AnalysisCache.load(file, 'registry=other')
+        then:
+            loaded.key == 'registry=other'
+            loaded.get('ctx1.xml', resourceLoader) == null
+            loaded.getSortedLocations('key') == null
+    }
+
+    def 'ignore entry when any of its resources has changed'() {
+        setup:
+            def imported = File.createTempFile('banshun-imported', '.xml')
+            def cache = new AnalysisCache()
+            def entry = new AnalysisCache.Entry()
+            [resource, imported].each { entry.addResource(it.toURI().toString(), new FileSystemResource(it)) }
+            cache.put('ctx1.xml', entry)
+        expect:
+            cache.get('ctx1.xml', resourceLoader) != null
+            cache.get('ctx2.xml', resourceLoader) == null
+        when:
+            imported.text = '<beans/>'
+        then:
+            cache.get('ctx1.xml', resourceLoader) == null
+        when:
+            imported.delete()
+        then:
+            cache.get('ctx1.xml', resourceLoader) == null
+    }
+
+    def 'load empty cache from #description file'() {
+        setup:
+            file.bytes = content as byte[]
+        when:
+            def cache = AnalysisCache.load(file)
+        then:
+            cache.get('ctx1.xml', resourceLoader) == null
+            cache.getSortedLocations('key') == null
+        where:
+            content                             || description
+            []                                  || 'empty'
+            [0x42, 0x53, 0x48, 0x43, 0, 0, 0]   || 'truncated'
+            'foo bar baz qux'.bytes             || 'corrupted'
+    }
+
+    def 'fingerprint resource'() {
+        expect:
+            AnalysisCache.fingerprint(new ByteArrayResource('<beans/>'.bytes)) == null
+            AnalysisCache.fingerprint(new FileSystemResource(file)) ==
+                    "${file.lastModified()}:${file.length()}"
+    }
+}
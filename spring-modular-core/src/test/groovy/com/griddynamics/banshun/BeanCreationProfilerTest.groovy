@@ -0,0 +1,114 @@
+/*
+ * Copyright 2013 Jakub Jirutka <jakub@jirutka.cz>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.griddynamics.banshun
+
+import org.springframework.beans.factory.support.DefaultListableBeanFactory
+import spock.lang.Specification
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS
+import static org.springframework.beans.factory.support.BeanDefinitionBuilder.rootBeanDefinition
+
+class BeanCreationProfilerTest extends Specification {
+
+    def profiler = new BeanCreationProfiler('ctx1.xml', 2)
+
+
+    def 'keep slowest beans and exclude creation of their dependencies'() {
+        setup:
+            def beanFactory = new DefaultListableBeanFactory()
+            beanFactory.registerBeanDefinition('outer', sleeper(30).addPropertyReference('dependency', 'inner').beanDefinition)
+            beanFactory.registerBeanDefinition('inner', sleeper(50).beanDefinition)
+            beanFactory.registerBeanDefinition('fast', sleeper(0).beanDefinition)
+            beanFactory.addBeanPostProcessor(profiler)
+        when:
+            beanFactory.preInstantiateSingletons()
+        then:
+            def timings = profiler.slowestBeans
+            timings*.beanName == ['outer', 'inner']
+        and:
+            timings[0].totalNanos >= MILLISECONDS.toNanos(80)
+            timings[0].selfNanos >= MILLISECONDS.toNanos(30)
+            timings[0].selfNanos <= timings[0].totalNanos - timings[1].totalNanos
+            timings[1].selfNanos >= MILLISECONDS.toNanos(50)
+    }
+
+    def 'attribute lookups to bean being created'() {
+        when:
+            profiler.postProcessBeforeInstantiation(Object, 'bean1')
+            BeanCreationProfiler.enterLookup()
+            Thread.sleep(20)
+            BeanCreationProfiler.exitLookup()
+            profiler.postProcessAfterInitialization(new Object(), 'bean1')
+        then:
+            def timing = profiler.slowestBeans[0]
+            timing.lookupNanos >= MILLISECONDS.toNanos(20)
+            timing.selfNanos == timing.totalNanos - timing.lookupNanos
+    }
+
+    def 'ignore lookups outside bean creation'() {
+        when:
+            BeanCreationProfiler.enterLookup()
+            BeanCreationProfiler.exitLookup()
+        then:
+            notThrown(Exception)
+            profiler.slowestBeans.empty
+    }
+
+    def 'forget beans whose creation has failed'() {
+        setup:
+            def previous = BeanCreationProfiler.activate(profiler)
+        when:
+            profiler.postProcessBeforeInstantiation(Object, 'bean1')
+            profiler.postProcessBeforeInstantiation(Object, 'failing')
+            profiler.postProcessAfterInitialization(new Object(), 'bean1')
+            profiler.postProcessBeforeInstantiation(Object, 'failing')
+            BeanCreationProfiler.deactivate(previous)
+        then:
+            profiler.slowestBeans*.beanName == ['bean1']
+        when:
+            BeanCreationProfiler.enterLookup()
+            BeanCreationProfiler.exitLookup()
+            profiler.postProcessAfterInitialization(new Object(), 'failing')
+        then:
+            profiler.slowestBeans*.beanName == ['bean1']
+    }
+
+    def 'register active profiler into bean factory'() {
+        setup:
+            def beanFactory = new DefaultListableBeanFactory()
+            def previous = BeanCreationProfiler.activate(profiler)
+        when:
+            BeanCreationProfiler.registerActive(beanFactory)
+            BeanCreationProfiler.deactivate(previous)
+            BeanCreationProfiler.registerActive(beanFactory)
+        then:
+            beanFactory.beanPostProcessors == [profiler]
+    }
+
+
+    def sleeper(long millis) {
+        rootBeanDefinition(Sleeper).addPropertyValue('millis', millis).setInitMethodName('init')
+    }
+
+    static class Sleeper {
+        long millis
+        Sleeper dependency
+
+        void init() {
+            Thread.sleep(millis)
+        }
+    }
+}
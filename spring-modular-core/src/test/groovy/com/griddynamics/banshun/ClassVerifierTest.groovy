@@ -0,0 +1,111 @@
+/*
+ * Copyright 2013 Jakub Jirutka <jakub@jirutka.cz>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.griddynamics.banshun
+
+import com.griddynamics.banshun.fixtures.JustBean
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import static com.griddynamics.banshun.ClassVerifier.Mode.*
+
+@Unroll
+class ClassVerifierTest extends Specification {
+
+    def classLoader = getClass().classLoader
+
+
+    def 'verify existing and missing classes [#mode]'() {
+        setup:
+            def verifier = new ClassVerifier(classLoader, mode)
+            verifier.add(JustBean.name, 'ctx1.xml', 'bean1')
+            verifier.add('com.example.DoesNotExist', 'ctx1.xml', 'bean2')
+        expect:
+            verifier.verify() == ['Class not found com.example.DoesNotExist in location: ctx1.xml for bean: bean2']
+        where:
+            mode << ClassVerifier.Mode.values()
+    }
+
+    def "don't initialize classes [#mode]"() {
+        setup:
+            def verifier = new ClassVerifier(classLoader, mode)
+            verifier.add('com.griddynamics.banshun.fixtures.StaticInitBean', 'ctx1.xml', 'bean1')
+        expect:
+            verifier.verify().isEmpty()
+            ! System.getProperty('StaticInitBean.initialized')
+        where:
+            mode << [LOAD, RESOURCE]
+    }
+
+    def 'report failed static initializer separately from missing class'() {
+        setup:
+            def verifier = new ClassVerifier(classLoader, INITIALIZE)
+            verifier.add('com.griddynamics.banshun.fixtures.FailingInitBean', 'ctx1.xml', 'bean1')
+        when:
+            def failures = verifier.verify()
+        then:
+            failures.size() == 1
+            failures[0].startsWith('Failed to initialize class com.griddynamics.banshun.fixtures.FailingInitBean ' +
+                                   'in location: ctx1.xml for bean: bean1')
+    }
+
+    def 'report failed static initializer for each bean of the class'() {
+        setup:
+            def verifier = new ClassVerifier(classLoader, INITIALIZE)
+            verifier.add('com.griddynamics.banshun.fixtures.FailingInitBean', 'ctx1.xml', 'bean1')
+            verifier.add('com.griddynamics.banshun.fixtures.FailingInitBean', 'ctx2.xml', 'bean2')
+        when:
+            def failures = verifier.verify()
+        then:
+            failures.size() == 2
+            failures.every { it.startsWith('Failed to initialize class com.griddynamics.banshun.fixtures.FailingInitBean') }
+            failures[1].contains('in location: ctx2.xml for bean: bean2')
+    }
+
+    def 'verify classes on calling thread in INITIALIZE mode'() {
+        setup:
+            def threads = Collections.synchronizedList([])
+            def verifier = new ClassVerifier(classLoader, INITIALIZE) {
+                @Override
+                boolean exists(String className) {
+                    threads << Thread.currentThread()
+                    true
+                }
+            }
+            (1..100).each { verifier.add(JustBean.name, "ctx${it}.xml", "bean${it}") }
+        when:
+            verifier.verify()
+        then:
+            threads.size() == 100
+            threads.every { it.is(Thread.currentThread()) }
+    }
+
+    def 'report all missing classes in order [#mode]'() {
+        setup:
+            def verifier = new ClassVerifier(classLoader, mode)
+            (1..500).each { i ->
+                verifier.add(i % 3 ? JustBean.name : "com.example.Missing${i}", "ctx${i}.xml", "bean${i}")
+            }
+        when:
+            def missing = verifier.verify()
+        then:
+            missing.size() == 166
+            missing == (1..500).findAll { it % 3 == 0 }.collect {
+                "Class not found com.example.Missing${it} in location: ctx${it}.xml for bean: bean${it}".toString()
+            }
+        where:
+            mode << ClassVerifier.Mode.values()
+    }
+}
@@ -116,4 +116,19 @@ class ContextAnalyzerTest extends Specification {
             [Integer, String]     | String     | false  || 'first import differs from export'
     }
 
+    @Unroll
+    def 'verify import types of unresolved interfaces when #description'() {
+        setup:
+            analyzer.putInImports(new BeanReferenceInfo('bean1', importType, 'ctx1'))
+            analyzer.putInExports(new BeanReferenceInfo('bean1', exportType, 'ctx2'))
+        expect:
+            analyzer.areImportsTypesCorrect() == result
+        where:
+            importType             | exportType             | result || description
+            RootFace.name          | RootFace.name          | true   || 'names are same'
+            RootFace.name          | JustBean.name          | true   || 'import is supertype of export'
+            JustBean.name          | RootFace               | false  || 'import is subtype of resolved export'
+            'com.example.Missing'  | RootFace.name          | false  || 'import does not exist'
+    }
+
 }
@@ -15,13 +15,14 @@
  */
 package com.griddynamics.banshun
 
-import com.griddynamics.banshun.fixtures.JustBean
+import com.griddynamics.banshun.fixtures.MiddleFace
 import com.griddynamics.banshun.fixtures.RootFace
 import com.griddynamics.banshun.test.TestUtils
-import org.springframework.aop.framework.ProxyFactoryBean
+import org.springframework.aop.framework.Advised
 import org.springframework.beans.factory.BeanFactory
+import org.springframework.beans.factory.BeanNotOfRequiredTypeException
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory
 import org.springframework.beans.factory.support.DefaultListableBeanFactory
-import org.springframework.beans.factory.support.RootBeanDefinition
 import org.springframework.context.ConfigurableApplicationContext
 import org.springframework.context.event.ContextRefreshedEvent
 import org.springframework.context.event.ContextStoppedEvent
@@ -29,13 +30,16 @@ import org.springframework.context.support.AbstractApplicationContext
 import org.springframework.core.io.ClassPathResource
 import spock.lang.Specification
 
-import static com.griddynamics.banshun.test.TestUtils.BASE_PKG
-import static org.springframework.beans.factory.config.BeanDefinition.ROLE_INFRASTRUCTURE
+import javax.management.ObjectName
+import java.lang.management.ManagementFactory
 
+import static com.griddynamics.banshun.test.TestUtils.BASE_PKG
 class ContextParentBeanTest extends Specification {
 
     static wbase = "${BASE_PKG}/wildcards"
 
+    def mbeanServer = ManagementFactory.platformMBeanServer
+
     def locations = [ "${BASE_PKG}/ctx1.xml", "${BASE_PKG}/ctx2.xml" ] as String[]
 
     def beanFactory = Mock(DefaultListableBeanFactory)
@@ -106,65 +110,175 @@ class ContextParentBeanTest extends Specification {
             def registry = new ContextParentBean(applicationContext: rootContext)
             def childBeanFactory = Mock(BeanFactory)
             def exportRef = new ExportRef('export1', RootFace, 'bean1', childBeanFactory)
-            ExportTargetSource targetSource = null
         when:
             registry.export(exportRef)
         then:
-            1 * rootContext.containsBean('export1_targetSource') >> false
-            1 * beanFactory.registerSingleton('export1_targetSource', { targetSource = it })
+            0 * beanFactory._
         and:
+            def targetSource = registry.serviceRegistry.getExport('export1')
             targetSource.beanName == 'bean1'
             targetSource.targetClass == RootFace
             targetSource.beanFactory == childBeanFactory
     }
 
+    def 'trace export'() {
+        setup:
+            def tracer = Mock(ModuleTracer)
+            def span = Mock(ModuleTracer.Span)
+            def registry = new ContextParentBean(applicationContext: rootContext, tracer: tracer)
+        when:
+            registry.export(new ExportRef('export1', RootFace, 'bean1', Mock(BeanFactory)))
+        then:
+            1 * tracer.startExport('export1', RootFace, 'bean1') >> span
+            1 * span.end()
+    }
+
     def 'export already exported bean'() {
         setup:
             def registry = new ContextParentBean(applicationContext: rootContext)
+            registry.export(new ExportRef('export1', RootFace, 'bean1'))
+            def expected = registry.serviceRegistry.getExport('export1')
         when:
-            registry.export(new ExportRef('bean1', RootFace, 'export1'))
+            registry.export(new ExportRef('export1', RootFace, 'bean2'))
         then:
-            1 * rootContext.containsBean(_) >> true
             0 * beanFactory._
+            registry.serviceRegistry.getExport('export1').is(expected)
     }
 
     def 'lookup bean for the first time'() {
         setup:
+            rootContext.getClassLoader() >> getClass().classLoader
             def registry = new ContextParentBean(applicationContext: rootContext)
-            def expectedTargetSource = new LookupTargetSource('export1', JustBean, 'export1_targetSource', rootContext)
-            def expectedResult = new JustBean()
-            def RootBeanDefinition registeredBeanDef
+            def expectedTargetSource = new LookupTargetSource('export1', RootFace, registry.serviceRegistry)
         when:
-            def result = registry.lookup('export1', JustBean)
+            def result = registry.lookup('export1', RootFace)
         then:
-            1 * rootContext.containsBean('export1_beanDef') >> false
+            0 * beanFactory._
+        and:
+            result instanceof Advised
+            result.targetSource == expectedTargetSource
+            registry.serviceRegistry.getImport('export1').is(result)
+    }
+
+    def 'lookup already registered bean'() {
+        setup:
+            rootContext.getClassLoader() >> getClass().classLoader
+            def registry = new ContextParentBean(applicationContext: rootContext)
+            def expected = registry.lookup('export1', RootFace)
+        when:
+            def actual = registry.lookup('export1', RootFace)
         then:
-            1 * beanFactory.registerBeanDefinition('export1_beanDef', { registeredBeanDef = it })
+            0 * beanFactory._
         and:
-            registeredBeanDef.beanClass == ProxyFactoryBean
-            registeredBeanDef.role == ROLE_INFRASTRUCTURE
-            registeredBeanDef.propertyValues.size() == 1
+            actual.is(expected)
+    }
+
+    def 'lookup registered bean with incompatible interface'() {
+        setup:
+            rootContext.getClassLoader() >> getClass().classLoader
+            def registry = new ContextParentBean(applicationContext: rootContext)
+            registry.lookup('export1', RootFace)
+        when:
+            registry.lookup('export1', MiddleFace)
+        then:
+            def ex = thrown(BeanNotOfRequiredTypeException)
+            ex.beanName == 'export1_beanDef'
+    }
 
-            def targetSource = registeredBeanDef.propertyValues.getPropertyValue('targetSource').value
-            targetSource == expectedTargetSource
+    def 'void lookup publishes import proxy in root context once'() {
+        setup:
+            rootContext.getClassLoader() >> getClass().classLoader
+            def registry = new ContextParentBean(applicationContext: rootContext)
+            def registered = null
+        when:
+            registry.voidLookup('export1', RootFace)
+            registry.voidLookup('export1', RootFace)
         then:
-            1 * rootContext.getBean('export1_beanDef', JustBean) >> expectedResult
+            1 * beanFactory.registerSingleton('export1_beanDef', { registered = it })
         and:
-            result == expectedResult
+            registered.is(registry.lookup('export1', RootFace))
     }
 
-    def 'lookup already registered bean'() {
+    def 'replace published import proxy when service interface changes'() {
         setup:
+            rootContext.getClassLoader() >> getClass().classLoader
             def registry = new ContextParentBean(applicationContext: rootContext)
-            def expected = new JustBean()
+            registry.voidLookup('export1', RootFace)
+            def registered = null
         when:
-            def actual = registry.lookup('export1', JustBean)
+            registry.serviceRegistry.removeImport('export1')
+            registry.republishImport('export1', MiddleFace)
         then:
-            1 * rootContext.containsBean('export1_beanDef') >> true
-            0 * beanFactory._
-            1 * rootContext.getBean('export1_beanDef', JustBean) >> expected
+            1 * beanFactory.destroySingleton('export1_beanDef')
+        then:
+            1 * beanFactory.registerSingleton('export1_beanDef', { registered = it })
         and:
-           actual == expected
+            registered instanceof MiddleFace
+            registered.is(registry.lookup('export1', MiddleFace))
+    }
+
+    def 'record metrics of calls through import proxy and publish them in JMX'() {
+        setup:
+            rootContext.getClassLoader() >> getClass().classLoader
+            rootContext.getId() >> 'root'
+            def registry = new ContextParentBean(applicationContext: rootContext,
+                    metricsEnabled: true, frozenImports: frozen, beanName: 'registry')
+            def calls = 0
+            def target = Stub(MiddleFace) {
+                getName() >> { if (++calls == 3) throw new IllegalStateException('boom'); 'foo' }
+            }
+            def childBeanFactory = Stub(BeanFactory) { getBean('bean1') >> target }
+            registry.export(new ExportRef('export1', MiddleFace, 'bean1', childBeanFactory))
+            def mbeanName = new ObjectName(
+                    'com.griddynamics.banshun:type=ServiceMetrics,context="root",registry="registry",service="export1"')
+        when:
+            def proxy = registry.lookup('export1', MiddleFace)
+            3.times {
+                try { proxy.name } catch (IllegalStateException ex) { }
+            }
+        then:
+            def metrics = registry.serviceMetrics['export1']
+            metrics.calls == 3
+            metrics.errors == 1
+            metrics.methodCalls == ['getName()': 3L]
+            mbeanServer.getAttribute(mbeanName, 'Calls') == 3L
+        when:
+            registry.destroy()
+        then:
+            ! mbeanServer.isRegistered(mbeanName)
+        where:
+            frozen << [false, true]
+    }
+
+    def 'trace sampled calls through import proxy'() {
+        setup:
+            rootContext.getClassLoader() >> getClass().classLoader
+            def tracer = Mock(ModuleTracer) {
+                startExport(*_) >> ModuleTracers.NOOP_SPAN
+                startResolution(*_) >> ModuleTracers.NOOP_SPAN
+            }
+            def span = Mock(ModuleTracer.Span)
+            def registry = new ContextParentBean(applicationContext: rootContext,
+                    tracer: tracer, invocationTracingRate: 1)
+            def target = Stub(MiddleFace) { getName() >> 'foo' }
+            registry.export(new ExportRef('export1', MiddleFace, 'bean1', Stub(BeanFactory) { getBean('bean1') >> target }))
+        when:
+            def name = registry.lookup('export1', MiddleFace).name
+        then:
+            1 * tracer.startInvocation('export1', MiddleFace.getMethod('getName')) >> span
+            1 * span.end()
+            name == 'foo'
+    }
+
+    def 'do not record metrics of calls by default'() {
+        setup:
+            rootContext.getClassLoader() >> getClass().classLoader
+            def registry = new ContextParentBean(applicationContext: rootContext)
+        when:
+            def proxy = registry.lookup('export1', MiddleFace)
+        then:
+            registry.serviceMetrics.isEmpty()
+            (proxy as Advised).advisors.length == 0
     }
 
     def 'invoke children contexts initialization on ContextRefreshedEvent'() {
@@ -202,6 +316,62 @@ class ContextParentBeanTest extends Specification {
             1 * children[0].close()
     }
 
+    def 'destroy children contexts concurrently in reverse order of dependencies'() {
+        setup:
+            def (ctx1, ctx2) = [ Mock(ConfigurableApplicationContext), Mock(ConfigurableApplicationContext) ]
+            def graph = Mock(LocationsGraph, {
+                it.getDependencies(locations[0]) >> ([] as Set)
+                it.getDependencies(locations[1]) >> ([locations[0]] as Set)
+            })
+            parentBeanSpy.shutdownParallelism = 2
+            parentBeanSpy.getLocationsGraph() >> graph
+            parentBeanSpy.createChildContext(_, rootContext) >>> [ctx1, ctx2]
+            parentBeanSpy.initializeChildContexts()
+        when:
+            parentBeanSpy.destroy()
+        then:
+            1 * ctx2.close()
+        then:
+            1 * ctx1.close()
+    }
+
+    def 'drain calls of exported services before closing children contexts'() {
+        setup:
+            def childBeanFactory = Mock(ConfigurableListableBeanFactory)
+            def child = Mock(ConfigurableApplicationContext, {
+                it.isActive() >> true
+                it.getBeanFactory() >> childBeanFactory
+            })
+            def registry = new ContextParentBean(children: [child], drainTimeout: 1000)
+            registry.export(new ExportRef('export1', RootFace, 'bean1', childBeanFactory))
+            registry.export(new ExportRef('export2', RootFace, 'bean2', Mock(BeanFactory)))
+            def export1 = registry.serviceRegistry.getExport('export1')
+            def export2 = registry.serviceRegistry.getExport('export2')
+            boolean drainedBeforeClose = false
+        when:
+            registry.destroy()
+        then:
+            1 * child.close() >> { drainedBeforeClose = export1.draining }
+        and:
+            drainedBeforeClose
+            ! export2.draining
+    }
+
+    def 'report children contexts that are not closed within timeout'() {
+        setup:
+            def slow = Mock(ConfigurableApplicationContext)
+            def fast = Mock(ConfigurableApplicationContext)
+            def registry = new ContextParentBean(children: [fast, slow], shutdownTimeout: 50)
+            slow.getDisplayName() >> 'slow'
+        when:
+            registry.destroy()
+        then:
+            1 * slow.close() >> { sleep(1000) }
+            1 * fast.close()
+        and:
+            registry.shutdownOverruns == ['slow']
+    }
+
 
     def 'initialize child contexts'() {
         setup:
@@ -240,6 +410,21 @@ class ContextParentBeanTest extends Specification {
             parentBeanSpy.children.contains(secondChildCtx)
     }
 
+    def 'track readiness of child contexts'() {
+        setup:
+            def childContext = Mock(ConfigurableApplicationContext)
+        when:
+            parentBeanSpy.initializeChildContexts()
+        then:
+            1 * parentBeanSpy.createChildContext(_, rootContext) >> { throw new Exception('child failed!') }
+            1 * parentBeanSpy.createChildContext(_, rootContext) >> childContext
+        and:
+            parentBeanSpy.readiness.ready
+            parentBeanSpy.readiness.get() == [childContext]
+            parentBeanSpy.moduleReadiness.values()*.status == [ModuleReadiness.Status.FAILED, ModuleReadiness.Status.READY]
+            ! parentBeanSpy.healthy
+    }
+
     def 'initialize child contexts when first fails and strict mode is enabled'() {
         setup:
             parentBeanSpy.strictErrorHandling = true
@@ -139,6 +139,56 @@ class DependencySorterTest extends Specification {
     }
 
 
+    def 'contexts with conflicts followed by dependent contexts'() {
+        given:
+            def builder = new DependencySorterBuilder()
+                .location('module1.xml')
+                    .addImport('TestBean3', Object)
+                    .addExport('TestBean1', Integer)
+
+                .location('module2.xml')
+                    .addImport('TestBean1', Object)
+                    .addExport('TestBean2', Integer)
+
+                .location('module3.xml')
+                    .addImport('TestBean1', Object)
+                    .addImport('TestBean3', Object)
+                    .addExport('TestBean3', Integer)
+
+                .location('module4.xml')
+                    .addImport('TestBean1', Object)
+                    .addExport('TestBean4', Integer)
+
+                .location('module5.xml')
+                    .addImport('TestBean2', Object)
+                    .addImport('TestBean4', Object)
+                .build()
+            def sorter = builder.createDependencySorter()
+        when:
+            sorter.prohibitCycles = false
+            def actual = sorter.sort()
+        then:
+            actual == ['module1.xml', 'module3.xml', 'module2.xml', 'module4.xml', 'module5.xml']
+            sorter.conflictContextGroup == ['module1.xml', 'module3.xml']
+    }
+
+    def 'long chain of contexts in reverse order'() {
+        given:
+            def size = 10000
+            def builder = new DependencySorterBuilder()
+            def module = builder.location('module0.xml').addExport('TestBean0', Integer)
+            (1..<size).each { i ->
+                module = module.location("module${i}.xml")
+                    .addImport("TestBean${i - 1}", Object)
+                    .addExport("TestBean${i}", Integer)
+            }
+            module.build()
+            def expected = builder.locations as List
+            builder.modules.reverse(true)
+        expect:
+            builder.createDependencySorter().sort() as List == expected
+    }
+
 
     ////// Builder //////
 
@@ -18,10 +18,13 @@ package com.griddynamics.banshun
 import com.griddynamics.banshun.fixtures.JustBean
 import com.griddynamics.banshun.fixtures.MiddleFace
 import com.griddynamics.banshun.fixtures.RootFace
+import org.springframework.beans.factory.BeanCreationNotAllowedException
 import org.springframework.beans.factory.BeanFactory
 import org.springframework.beans.factory.BeanNotOfRequiredTypeException
 import spock.lang.Specification
 
+import static java.util.concurrent.TimeUnit.MILLISECONDS
+
 class ExportTargetSourceTest extends Specification {
 
     def beanFactory = Mock(BeanFactory)
@@ -79,4 +82,58 @@ class ExportTargetSourceTest extends Specification {
             new RootFace(){}  | RootFace
            'string'           | String
     }
+
+    def 'count calls in progress'() {
+        when:
+            targetSource.enter()
+            targetSource.enter()
+            targetSource.exit()
+        then:
+            targetSource.inFlightCalls == 1
+            ! targetSource.draining
+    }
+
+    def 'reject new calls once drained'() {
+        when:
+            def drained = targetSource.drain(10, MILLISECONDS)
+            targetSource.enter()
+        then:
+            drained
+            targetSource.draining
+            thrown(BeanCreationNotAllowedException)
+            targetSource.inFlightCalls == 0
+    }
+
+    def 'wait for calls in progress when drained'() {
+        setup:
+            targetSource.enter()
+            def caller = Thread.start { targetSource.enter(); sleep(50); targetSource.exit() }
+            sleep(10)
+        when: 'call entered on this thread is still in progress'
+            def drained = targetSource.drain(100, MILLISECONDS)
+        then:
+            ! drained
+            targetSource.inFlightCalls == 1
+        when: 'the call is completed'
+            targetSource.exit()
+        then:
+            targetSource.drain(100, MILLISECONDS)
+        cleanup:
+            caller?.join()
+    }
+
+    def 'wake up drain once the last call exits on another thread'() {
+        setup:
+            targetSource.enter()
+            def caller = Thread.start { sleep(20); targetSource.exit() }
+        when:
+            def start = System.nanoTime()
+            def drained = targetSource.drain(5000, MILLISECONDS)
+        then:
+            drained
+            System.nanoTime() - start < MILLISECONDS.toNanos(5000)
+            targetSource.inFlightCalls == 0
+        cleanup:
+            caller?.join()
+    }
 }
@@ -0,0 +1,146 @@
+/*
+ * Copyright 2013 Jakub Jirutka <jakub@jirutka.cz>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.griddynamics.banshun
+
+import com.griddynamics.banshun.fixtures.MiddleFace
+import org.springframework.aop.framework.Advised
+import spock.lang.Specification
+
+class FrozenImportInvocationHandlerTest extends Specification {
+
+    def serviceRegistry = Mock(ServiceRegistry)
+    def export = Mock(ExportTargetSource) {
+        getTargetClass() >> MiddleFace
+    }
+    def target = Mock(MiddleFace)
+
+
+    def 'resolve target once and dispatch calls directly to it'() {
+        setup:
+            def proxy = createProxy(false)
+        when:
+            def names = (1..3).collect { proxy.name }
+        then:
+            1 * serviceRegistry.getExport('service') >> export
+            1 * export.getTarget() >> target
+            3 * target.getName() >> 'foo'
+            0 * export.tryEnter()
+            0 * export.exit()
+            names == ['foo'] * 3
+    }
+
+    def 'pass arguments to target and return primitive results'() {
+        setup:
+            def comparatorExport = Mock(ExportTargetSource) {
+                getTargetClass() >> Comparator
+                getTarget() >> String.CASE_INSENSITIVE_ORDER
+            }
+            serviceRegistry.getExport('comparator') >> comparatorExport
+            def proxy = FrozenImportInvocationHandler.createProxy(
+                    new LookupTargetSource('comparator', Comparator, serviceRegistry), getClass().classLoader) as Comparator
+            comparatorExport.tryEnter() >> true
+        expect:
+            proxy.compare('foo', 'FOO') == 0
+            proxy.compare('a', 'b') < 0
+    }
+
+    def 'register calls on cached export when counting calls'() {
+        setup:
+            def proxy = createProxy(true)
+        when:
+            def names = (1..3).collect { proxy.name }
+        then:
+            1 * serviceRegistry.getExport('service') >> export
+            1 * export.getTarget() >> target
+            3 * export.tryEnter() >> true
+            3 * target.getName() >> 'foo'
+            3 * export.exit()
+            names == ['foo'] * 3
+    }
+
+    def 'exit call when target throws exception'() {
+        setup:
+            def proxy = createProxy(true)
+            serviceRegistry.getExport('service') >> export
+            export.getTarget() >> target
+            export.tryEnter() >> true
+            target.getName() >> { throw new IllegalStateException('boom') }
+        when:
+            proxy.name
+        then:
+            thrown(IllegalStateException)
+            1 * export.exit()
+    }
+
+    def 'propagate exception thrown by target'() {
+        setup:
+            def proxy = createProxy(false)
+            serviceRegistry.getExport('service') >> export
+            export.getTarget() >> target
+            target.getName() >> { throw new IllegalStateException('boom') }
+        when:
+            proxy.name
+        then:
+            def ex = thrown(IllegalStateException)
+            ex.message == 'boom'
+    }
+
+    def 'resolve target again once the export is superseded'() {
+        setup:
+            def proxy = createProxy(false)
+            def newTarget = Mock(MiddleFace) { getName() >> 'bar' }
+            def newExport = Mock(ExportTargetSource) {
+                getTargetClass() >> MiddleFace
+                getTarget() >> newTarget
+            }
+            def superseded = false
+            export.isSuperseded() >> { superseded }
+            export.getTarget() >> target
+            target.getName() >> 'foo'
+            serviceRegistry.getExport('service') >>> [export, newExport]
+        when:
+            def before = proxy.name
+            superseded = true
+            def after = proxy.name
+        then:
+            before == 'foo'
+            after == 'bar'
+    }
+
+    def 'implement equals and hashCode without resolving target'() {
+        setup:
+            def proxy = createProxy(false)
+            def other = createProxy(false)
+            def another = FrozenImportInvocationHandler.createProxy(
+                    new LookupTargetSource('another', MiddleFace, serviceRegistry), getClass().classLoader)
+        when:
+            def results = [
+                    proxy.equals(proxy), proxy.equals(other), proxy.hashCode() == other.hashCode(),
+                    proxy.equals(another), proxy.equals(target)
+            ]
+        then:
+            results == [true, true, true, false, false]
+            ! (proxy instanceof Advised)
+            0 * serviceRegistry.getExport(_)
+    }
+
+
+    def createProxy(boolean countingCalls) {
+        def targetSource = new LookupTargetSource('service', MiddleFace, serviceRegistry, null, 0,
+                                                  ModuleTracers.NOOP, countingCalls)
+        FrozenImportInvocationHandler.createProxy(targetSource, getClass().classLoader) as MiddleFace
+    }
+}
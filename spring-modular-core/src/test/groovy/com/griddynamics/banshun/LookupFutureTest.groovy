@@ -0,0 +1,88 @@
+/*
+ * Copyright 2013 Jakub Jirutka <jakub@jirutka.cz>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.griddynamics.banshun
+
+import com.griddynamics.banshun.fixtures.JustBean
+import com.griddynamics.banshun.fixtures.RootFace
+import org.springframework.beans.factory.BeanNotOfRequiredTypeException
+import spock.lang.Specification
+
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.TimeoutException
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS
+
+class LookupFutureTest extends Specification {
+
+    def registry = Mock(Registry)
+    def serviceRegistry = new ServiceRegistry()
+    def future = new LookupFuture('service1', RootFace, registry, serviceRegistry, null)
+
+
+    def 'complete once service is exported'() {
+        setup:
+            def expected = new JustBean()
+        expect:
+            ! future.done
+        when:
+            serviceRegistry.registerExport('service1', new ExportTargetSource(new ExportRef('service1', RootFace, 'bean1')))
+        then:
+            future.done
+        when:
+            def actual = future.get()
+        then:
+            1 * registry.lookup('service1', RootFace) >> expected
+            actual == expected
+    }
+
+    def 'time out when service is not exported'() {
+        when:
+            future.get(10, MILLISECONDS)
+        then:
+            thrown(TimeoutException)
+            0 * registry._
+    }
+
+    def 'wrap lookup failure'() {
+        setup:
+            serviceRegistry.registerExport('service1', new ExportTargetSource(new ExportRef('service1', RootFace, 'bean1')))
+            registry.lookup(*_) >> { throw new BeanNotOfRequiredTypeException('service1', RootFace, String) }
+        when:
+            future.get()
+        then:
+            def ex = thrown(ExecutionException)
+            ex.cause instanceof BeanNotOfRequiredTypeException
+    }
+
+    def 'activate lazy exporter before waiting'() {
+        setup:
+            def activator = Mock(ModuleActivator)
+            def lazyFuture = new LookupFuture('service1', RootFace, registry, serviceRegistry, activator)
+        when:
+            lazyFuture.get(10, MILLISECONDS)
+        then:
+            1 * activator.activateExporterOf('service1') >> {
+                serviceRegistry.registerExport('service1', new ExportTargetSource(new ExportRef('service1', RootFace, 'bean1')))
+            }
+            1 * registry.lookup('service1', RootFace) >> new JustBean()
+    }
+
+    def 'cannot be cancelled'() {
+        expect:
+            ! future.cancel(true)
+            ! future.cancelled
+    }
+}
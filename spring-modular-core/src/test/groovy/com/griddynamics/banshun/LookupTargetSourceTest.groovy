@@ -18,28 +18,30 @@ package com.griddynamics.banshun
 import com.griddynamics.banshun.fixtures.JustBean
 import com.griddynamics.banshun.fixtures.MiddleFace
 import com.griddynamics.banshun.fixtures.RootFace
+import org.springframework.beans.factory.BeanCreationNotAllowedException
 import org.springframework.beans.factory.BeanNotOfRequiredTypeException
 import org.springframework.beans.factory.NoSuchBeanDefinitionException
-import org.springframework.context.ApplicationContext
 import spock.lang.Specification
 
+import static java.util.concurrent.TimeUnit.MILLISECONDS
+
 class LookupTargetSourceTest extends Specification {
 
-    def rootContext = Mock(ApplicationContext)
-    def exportTargetSource = Mock(ExportTargetSource)
+    def serviceRegistry = Mock(ServiceRegistry)
+    def exportTargetSource = Mock(ExportTargetSource) {
+        tryEnter() >> true
+    }
     def serviceName = 'service1'
-    def exportProxyName = 'service1_targetSource'
-    def lookupTargetSource = new LookupTargetSource(serviceName, MiddleFace, exportProxyName, rootContext)
+    def lookupTargetSource = new LookupTargetSource(serviceName, MiddleFace, serviceRegistry)
 
 
-    def 'find target source in context and return its target'() {
+    def 'find target source in registry and return its target'() {
         setup:
-            rootContext.containsBean(_) >> true
             exportTargetSource.getTargetClass() >> type
         when:
             def actual = lookupTargetSource.getTarget()
         then:
-            1 * rootContext.getBean(exportProxyName, *_) >> exportTargetSource
+            1 * serviceRegistry.getExport(serviceName) >> exportTargetSource
             1 * exportTargetSource.getTarget() >> expected
         and:
             actual == expected
@@ -52,7 +54,6 @@ class LookupTargetSourceTest extends Specification {
 
     def 'return cached instance when invoked again'() {
         setup:
-            rootContext.containsBean(_) >> true
             exportTargetSource.getTargetClass() >> MiddleFace
             def expected = new JustBean()
 
@@ -60,30 +61,179 @@ class LookupTargetSourceTest extends Specification {
             lookupTargetSource.getTarget()
 
         then: 'obtain target source and the bean'
-            1 * rootContext.getBean(exportProxyName, *_) >> exportTargetSource
+            1 * serviceRegistry.getExport(serviceName) >> exportTargetSource
             1 * exportTargetSource.getTarget() >> expected
 
         when: 'invoked again'
             def actual = lookupTargetSource.getTarget()
 
         then: 'just return already obtained bean'
-           0 * rootContext._
+           0 * serviceRegistry._
            actual == expected
     }
 
-    def 'throw exception when root context does not contain target bean'() {
+    def 'trace resolution on first call only'() {
+        setup:
+            def tracer = Mock(ModuleTracer)
+            def span = Mock(ModuleTracer.Span)
+            def tracedTargetSource = new LookupTargetSource(serviceName, MiddleFace, serviceRegistry, null, 0, tracer)
+            serviceRegistry.getExport(serviceName) >> exportTargetSource
+            exportTargetSource.getTargetClass() >> MiddleFace
+            exportTargetSource.getTarget() >> new JustBean()
+        when:
+            2.times { tracedTargetSource.getTarget() }
+        then:
+            1 * tracer.startResolution(serviceName, MiddleFace) >> span
+            1 * span.end()
+    }
+
+    def 'trace failed resolution'() {
+        setup:
+            def tracer = Mock(ModuleTracer)
+            def span = Mock(ModuleTracer.Span)
+            def tracedTargetSource = new LookupTargetSource(serviceName, MiddleFace, serviceRegistry, null, 0, tracer)
+        when:
+            tracedTargetSource.getTarget()
+        then:
+            1 * tracer.startResolution(serviceName, MiddleFace) >> span
+            1 * span.fail(_ as NoSuchBeanDefinitionException)
+            thrown(NoSuchBeanDefinitionException)
+    }
+
+    def 'register call on export until target is released'() {
+        setup:
+            serviceRegistry.getExport(serviceName) >> exportTargetSource
+            exportTargetSource.getTargetClass() >> MiddleFace
+            exportTargetSource.getTarget() >> new JustBean()
+        when:
+            def target = lookupTargetSource.getTarget()
+        then:
+            1 * exportTargetSource.tryEnter() >> true
+            0 * exportTargetSource.exit()
+        when:
+            lookupTargetSource.releaseTarget(target)
+        then:
+            1 * exportTargetSource.exit()
+    }
+
+    def 'switch to new export once the old one is superseded'() {
+        setup:
+            def oldTarget = new JustBean()
+            def newTarget = new JustBean()
+            def newExport = Mock(ExportTargetSource) {
+                tryEnter() >> true
+                getTargetClass() >> MiddleFace
+                getTarget() >> newTarget
+            }
+            def superseded = false
+            exportTargetSource.isSuperseded() >> { superseded }
+            exportTargetSource.getTargetClass() >> MiddleFace
+            exportTargetSource.getTarget() >> oldTarget
+            serviceRegistry.getExport(serviceName) >>> [exportTargetSource, newExport]
+
+        when: 'a call is in progress when the export is superseded'
+            def inProgress = lookupTargetSource.getTarget()
+            superseded = true
+            def actual = lookupTargetSource.getTarget()
+
+        then: 'new call uses the new target'
+            inProgress.is(oldTarget)
+            actual.is(newTarget)
+
+        when: 'both calls complete'
+            lookupTargetSource.releaseTarget(inProgress)
+            lookupTargetSource.releaseTarget(actual)
+
+        then: 'each one is completed on its export'
+            1 * exportTargetSource.exit()
+            1 * newExport.exit()
+    }
+
+    def 'neither register nor release calls when not counting calls'() {
+        setup:
+            def targetSource = new LookupTargetSource(serviceName, MiddleFace, serviceRegistry, null, 0,
+                                                      ModuleTracers.NOOP, false)
+            serviceRegistry.getExport(serviceName) >> exportTargetSource
+            exportTargetSource.getTargetClass() >> MiddleFace
+            exportTargetSource.getTarget() >> new JustBean()
+        when:
+            def target = targetSource.getTarget()
+            targetSource.releaseTarget(target)
+        then:
+            0 * exportTargetSource.tryEnter()
+            0 * exportTargetSource.exit()
+    }
+
+    def 'reject call when export is being closed'() {
+        setup:
+            serviceRegistry.getExport(serviceName) >> exportTargetSource
+            exportTargetSource.getTargetClass() >> MiddleFace
+            exportTargetSource.getTarget() >> new JustBean()
+        when:
+            lookupTargetSource.getTarget()
+        then:
+            1 * exportTargetSource.tryEnter() >> false
+            thrown(BeanCreationNotAllowedException)
+    }
+
+    def 'activate exporting module before the first lookup only'() {
+        setup:
+            def activator = Mock(ModuleActivator)
+            def targetSource = new LookupTargetSource(serviceName, MiddleFace, serviceRegistry, activator)
+            serviceRegistry.getExport(serviceName) >> exportTargetSource
+            exportTargetSource.getTargetClass() >> MiddleFace
+            exportTargetSource.getTarget() >> new JustBean()
+
+        when: 'invoked for the first time'
+            targetSource.getTarget()
+        then:
+            1 * activator.activateExporterOf(serviceName)
+
+        when: 'invoked again'
+            targetSource.getTarget()
+        then:
+            0 * activator._
+    }
+
+    def 'throw exception when registry does not contain export'() {
         setup:
-            rootContext.containsBean(_) >> false
+            serviceRegistry.getExport(_) >> null
         when:
             lookupTargetSource.getTarget()
+        then:
+            def ex = thrown(NoSuchBeanDefinitionException)
+            ex.beanName == 'service1_targetSource'
+    }
+
+    def 'wait for export when timeout is specified'() {
+        setup:
+            def targetSource = new LookupTargetSource(serviceName, MiddleFace, serviceRegistry, null, 100)
+            def expected = new JustBean()
+            exportTargetSource.getTargetClass() >> MiddleFace
+            exportTargetSource.getTarget() >> expected
+        when:
+            def actual = targetSource.getTarget()
+        then:
+            1 * serviceRegistry.getExport(serviceName) >> null
+            1 * serviceRegistry.awaitExport(serviceName, 100, MILLISECONDS) >> exportTargetSource
+        and:
+            actual == expected
+    }
+
+    def 'throw exception when export is not published within timeout'() {
+        setup:
+            def targetSource = new LookupTargetSource(serviceName, MiddleFace, serviceRegistry, null, 100)
+            serviceRegistry.getExport(_) >> null
+            serviceRegistry.awaitExport(serviceName, 100, MILLISECONDS) >> null
+        when:
+            targetSource.getTarget()
         then:
             thrown(NoSuchBeanDefinitionException)
     }
 
     def 'throw exception when export and import interfaces are not compatible'() {
         setup:
-            rootContext.containsBean(_) >> true
-            rootContext.getBean(*_) >> exportTargetSource
+            serviceRegistry.getExport(_) >> exportTargetSource
             exportTargetSource.getTargetClass() >> exportType
         when:
             lookupTargetSource.getTarget()
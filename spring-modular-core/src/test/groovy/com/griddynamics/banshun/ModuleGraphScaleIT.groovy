@@ -0,0 +1,59 @@
+/*
+ * Copyright 2013 Jakub Jirutka <jakub@jirutka.cz>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.griddynamics.banshun
+
+import com.griddynamics.banshun.test.ModuleGraphGenerator
+import org.slf4j.LoggerFactory
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import java.nio.file.Files
+
+/**
+ * Boots synthetic module graphs of realistic sizes and reports time to ready and heap
+ * used after boot, so that performance regressions of the startup show up.
+ */
+@Unroll
+class ModuleGraphScaleIT extends Specification {
+
+    static log = LoggerFactory.getLogger(ModuleGraphScaleIT)
+
+    def directory = Files.createTempDirectory('banshun-modules').toFile()
+
+    def cleanup() {
+        directory.deleteDir()
+    }
+
+
+    def 'boot #modules modules [depth: #depth, fanIn: #fanIn, cycles: #cycleProbability, parallelism: #parallelism]'() {
+        setup:
+            def generator = new ModuleGraphGenerator(modules: modules, depth: depth, fanIn: fanIn,
+                                                     fanOut: 5, beansPerModule: 10, cycleProbability: cycleProbability)
+        when:
+            def report = generator.bootAndMeasure(directory, startupParallelism: parallelism)
+            log.info('{}', report)
+        then:
+            report.children == modules
+        cleanup:
+            report?.context?.close()
+        where:
+            modules | depth | fanIn | cycleProbability | parallelism
+            50      | 5     | 3     | 0.0              | 1
+            300     | 10    | 5     | 0.0              | 1
+            300     | 10    | 5     | 0.0              | 4
+            300     | 10    | 5     | 0.05             | 4
+    }
+}
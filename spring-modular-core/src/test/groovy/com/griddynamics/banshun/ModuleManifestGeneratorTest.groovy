@@ -0,0 +1,93 @@
+/*
+ * Copyright 2013 Jakub Jirutka <jakub@jirutka.cz>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.griddynamics.banshun
+
+import org.springframework.core.io.ByteArrayResource
+import org.springframework.core.io.ClassPathResource
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import static com.griddynamics.banshun.test.TestUtils.*
+
+class ModuleManifestGeneratorTest extends Specification {
+
+    def generator = new ModuleManifestGenerator(getClass().classLoader, 'root')
+
+
+    def 'generate manifest of locations'() {
+        when:
+            ['ctx1', 'ctx2', 'ctx3'].each {
+                generator.addLocation("it/${it}.xml", resource("it/${it}.xml"))
+            }
+        then:
+            generator.validate()
+            generator.errors.isEmpty()
+        and:
+            def manifest = generator.manifest
+            manifest.locations.keySet().toList() == ['it/ctx1.xml', 'it/ctx2.xml', 'it/ctx3.xml']
+
+            manifest.getLocation('it/ctx1.xml').exports*.toList() == [
+                    ['exportA1', 'com.griddynamics.banshun.fixtures.Child', 'exportA1-export-ref'],
+                    ['exportA2', 'com.griddynamics.banshun.fixtures.RootFace', 'exportA2-export-ref']
+            ]
+            manifest.getLocation('it/ctx2.xml').imports*.toList() == [
+                    ['exportA1', 'com.griddynamics.banshun.fixtures.Child']
+            ]
+            manifest.getLocation('it/ctx3.xml').imports*.toList() == [
+                    ['exportA1', 'com.griddynamics.banshun.fixtures.Child'],
+                    ['exportB1', 'com.griddynamics.banshun.fixtures.Child']
+            ]
+    }
+
+    def 'report import incompatible with export'() {
+        when:
+            generator.addLocation('illegal-concrete-import.xml', resource('registry/illegal-concrete-import.xml'))
+        then:
+            ! generator.validate()
+            generator.errors.size() == 1
+    }
+
+    def 'report missing classes'() {
+        setup:
+            def xml = BEANS_XML_HEAD + '''
+                <bean id="bean1" class="com.example.DoesNotExist" />
+                <bs:import id="service1" interface="com.griddynamics.banshun.fixtures.Child" />
+            ''' + BEANS_XML_TAIL
+        when:
+            generator.addLocation('ctx.xml', new ByteArrayResource(xml.bytes))
+        then:
+            ! generator.validate()
+            generator.errors.size() == 1
+            generator.errors[0].contains('com.example.DoesNotExist')
+    }
+
+    @Unroll
+    def 'recognize beans definition [#content]'() {
+        expect:
+            ModuleManifestGenerator.isBeansDefinition(new ByteArrayResource(content.bytes)) == expected
+        where:
+            content                                                                || expected
+            '<beans xmlns="http://www.springframework.org/schema/beans"/>'        || true
+            '<?xml version="1.0"?><configuration><beans/></configuration>'        || false
+            '<beans/>'                                                             || false
+            'not xml'                                                              || false
+    }
+
+
+    def resource(String path) {
+        new ClassPathResource("${BASE_PKG}/${path}")
+    }
+}
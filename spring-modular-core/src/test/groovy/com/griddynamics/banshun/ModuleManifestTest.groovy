@@ -0,0 +1,60 @@
+/*
+ * Copyright 2013 Jakub Jirutka <jakub@jirutka.cz>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.griddynamics.banshun
+
+import org.springframework.core.io.ByteArrayResource
+import spock.lang.Specification
+import spock.lang.Unroll
+
+class ModuleManifestTest extends Specification {
+
+    def 'write and read manifest'() {
+        setup:
+            def manifest = new ModuleManifest()
+            manifest.addLocation('com/example/ctx1.xml').addExport('service1', 'com.example.Face', 'service1-export-ref')
+            manifest.addLocation('com/example/ctx2.xml').with {
+                addImport('service1', 'com.example.Face')
+                addExport('service2', 'com.example.OtherFace', 'service2-export-ref')
+            }
+            def output = new ByteArrayOutputStream()
+        when:
+            manifest.write(output)
+            def loaded = ModuleManifest.read(new ByteArrayInputStream(output.toByteArray()), 'file:/app/')
+        then:
+            loaded.locations.keySet().toList() == ['file:/app/com/example/ctx1.xml', 'file:/app/com/example/ctx2.xml']
+        and:
+            def ctx1 = loaded.getLocation('file:/app/com/example/ctx1.xml')
+            ctx1.exports*.toList() == [['service1', 'com.example.Face', 'service1-export-ref']]
+            ctx1.imports.isEmpty()
+        and:
+            def ctx2 = loaded.getLocation('file:/app/com/example/ctx2.xml')
+            ctx2.exports*.toList() == [['service2', 'com.example.OtherFace', 'service2-export-ref']]
+            ctx2.imports*.toList() == [['service1', 'com.example.Face']]
+    }
+
+    @Unroll
+    def 'fail on malformed manifest: #description'() {
+        when:
+            ModuleManifest.read(new ByteArrayResource(content.bytes).inputStream, '')
+        then:
+            thrown IOException
+        where:
+            content                                        || description
+            'export service1 com.example.Face ref'         || 'export without location'
+            'location ctx1.xml\nimport service1'           || 'missing interface'
+            'location ctx1.xml\nunknown service1 Face'     || 'unknown record'
+    }
+}
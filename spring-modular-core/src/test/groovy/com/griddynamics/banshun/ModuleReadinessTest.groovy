@@ -0,0 +1,107 @@
+/*
+ * Copyright 2013 Jakub Jirutka <jakub@jirutka.cz>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.griddynamics.banshun
+
+import org.springframework.context.ConfigurableApplicationContext
+import spock.lang.Specification
+
+import java.util.concurrent.CancellationException
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.TimeoutException
+
+import static com.griddynamics.banshun.ModuleReadiness.Status.*
+import static java.util.concurrent.TimeUnit.MILLISECONDS
+
+class ModuleReadinessTest extends Specification {
+
+    def readiness = new ModuleReadiness('ctx1.xml')
+
+
+    def 'pending module is not done'() {
+        expect:
+            readiness.status == PENDING
+            ! readiness.done
+        when:
+            readiness.get(10, MILLISECONDS)
+        then:
+            thrown(TimeoutException)
+    }
+
+    def 'ready module returns its contexts'() {
+        setup:
+            def contexts = [ Mock(ConfigurableApplicationContext) ]
+        when:
+            readiness.initializing()
+        then:
+            readiness.status == INITIALIZING
+            ! readiness.done
+        when:
+            readiness.ready(contexts)
+        then:
+            readiness.ready
+            readiness.done
+            readiness.get() == contexts
+    }
+
+    def 'measure refresh duration of initialized module only'() {
+        expect:
+            readiness.refreshDuration == -1
+        when:
+            readiness.initializing()
+            Thread.sleep(20)
+            readiness.ready([])
+        then:
+            readiness.refreshDuration >= 20
+        when:
+            def skipped = new ModuleReadiness('ctx2.xml')
+            skipped.skipped()
+        then:
+            skipped.refreshDuration == -1
+    }
+
+    def 'failed module throws its failure'() {
+        setup:
+            def failure = new IllegalStateException()
+        when:
+            readiness.failed(failure)
+            readiness.get()
+        then:
+            def ex = thrown(ExecutionException)
+            ex.cause == failure
+            readiness.status == FAILED
+            readiness.failure == failure
+    }
+
+    def 'skipped module is cancelled'() {
+        when:
+            readiness.skipped()
+            readiness.get()
+        then:
+            thrown(CancellationException)
+            readiness.cancelled
+            readiness.status == SKIPPED
+    }
+
+    def 'completed module does not change its status'() {
+        when:
+            readiness.ready([])
+            readiness.failed(new Exception())
+            readiness.initializing()
+        then:
+            readiness.status == READY
+            readiness.failure == null
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright 2013 Jakub Jirutka <jakub@jirutka.cz>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.griddynamics.banshun
+
+import org.springframework.context.ConfigurableApplicationContext
+import spock.lang.Specification
+
+import java.util.concurrent.CopyOnWriteArrayList
+
+class ModuleShutdownTest extends Specification {
+
+    def events = new CopyOnWriteArrayList<String>()
+
+
+    def 'start closing next context of level as soon as another one is closed'() {
+        setup:
+            def contexts = [closing('a', 50), closing('b', 300), closing('c', 50)]
+            def shutdown = createShutdown(2, 0)
+        when:
+            shutdown.close(contexts)
+        then:
+            // c and b are closed first, a doesn't wait for the slow b
+            events.indexOf('start a') < events.indexOf('end b')
+            events.findAll { it.startsWith('end') }.size() == 3
+    }
+
+    def 'apply timeout to each context from start of its closing'() {
+        setup:
+            def contexts = [closing('a', 150), closing('b', 1000), closing('c', 150)]
+            def shutdown = createShutdown(2, 250)
+        when:
+            shutdown.close(contexts)
+        then:
+            shutdown.overruns == ['b']
+            'end a' in events
+    }
+
+
+    def closing(String name, long millis) {
+        Stub(ConfigurableApplicationContext) {
+            getDisplayName() >> name
+            close() >> {
+                events << "start $name".toString()
+                sleep(millis)
+                events << "end $name".toString()
+            }
+        }
+    }
+
+    def createShutdown(int parallelism, long timeout) {
+        // contexts of unknown locations are all on the same level
+        def parent = Spy(ContextParentBean) {
+            getLocationsGraph() >> Stub(LocationsGraph)
+            getResultConfigLocations() >> []
+        }
+        new ModuleShutdown(parent, Stub(ExportDrainer)).with {
+            it.parallelism = parallelism
+            it.timeout = timeout
+            it
+        }
+    }
+}
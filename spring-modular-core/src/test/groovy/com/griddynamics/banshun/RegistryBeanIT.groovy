@@ -15,7 +15,6 @@
  */
 package com.griddynamics.banshun
 
-import org.springframework.aop.TargetSource
 import org.springframework.beans.factory.BeanCreationException
 import org.springframework.beans.factory.BeanNotOfRequiredTypeException
 import org.springframework.beans.factory.NoSuchBeanDefinitionException
@@ -35,15 +34,19 @@ class RegistryBeanIT extends Specification {
     def 'import exported bean'() {
         setup:
             def ctx = initContext(location) as ClassPathXmlApplicationContext
+            def registry = serviceRegistry(ctx)
             // there shouldn't be any exports yet due to laziness
-            assert hasNoExports(ctx)
-            assert hasNoImports(ctx)
+            assert registry.exportedServiceNames.isEmpty()
+            assert registry.getImport('just-bean') == null
 
         when: 'early-import proxy bean is initialized by context'
             def earlyImport = ctx.getBean('early-import')
 
-        then: 'context should contain bean definition for the bean being imported'
-            ctx.containsBeanDefinition('just-bean' + BEAN_DEF_SUFFIX)
+        then: 'registry should contain import proxy for the bean being imported'
+            registry.getImport('just-bean').is(earlyImport)
+
+        and: 'root context should not contain any infrastructure beans for it'
+            !ctx.containsBean('just-bean' + BEAN_DEF_SUFFIX)
 
         when: 'early-import proxy is invoked without prior export'
             earlyImport.toString()
@@ -55,9 +58,9 @@ class RegistryBeanIT extends Specification {
         when: 'export declaration is initialized'
             ctx.getBean('export-declaration')
 
-        then: 'context should contain ExportTargetSource for exported bean'
-            ctx.getBean('just-bean' + TARGET_SOURCE_SUFFIX, ExportTargetSource)
-                    .beanName == 'just-bean'
+        then: 'registry should contain ExportTargetSource for exported bean'
+            registry.getExport('just-bean').beanName == 'just-bean'
+            !ctx.containsBean('just-bean' + TARGET_SOURCE_SUFFIX)
 
         and: 'early-import proxy can be invoked now'
             earlyImport.toString()
@@ -108,7 +111,7 @@ class RegistryBeanIT extends Specification {
     def 'misconfigured export'() {
         setup:
             def ctx = initContext('registry/wrong-export-class.xml')
-            assert hasNoExports(ctx)
+            assert serviceRegistry(ctx).exportedServiceNames.isEmpty()
 
         when: 'early-import proxy is obtained'
             def earlyImport = ctx.getBean('early-import')
@@ -131,21 +134,7 @@ class RegistryBeanIT extends Specification {
     }
 
 
-    private boolean hasNoExports(ApplicationContext ctx) {
-        ctx.getBeanNamesForType(TargetSource).each { name ->
-            if (name.endsWith(TARGET_SOURCE_SUFFIX)) {
-                return false;
-            }
-        }
-        return true
-    }
-
-    private boolean hasNoImports(ApplicationContext ctx) {
-        ctx.getBeanDefinitionNames().each { name ->
-            if (name.endsWith(BEAN_DEF_SUFFIX)) {
-                return false
-            }
-        }
-        return true
+    private ServiceRegistry serviceRegistry(ApplicationContext ctx) {
+        ctx.getBean('root', ContextParentBean).serviceRegistry
     }
 }
@@ -0,0 +1,121 @@
+/*
+ * Copyright 2013 Jakub Jirutka <jakub@jirutka.cz>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.griddynamics.banshun
+
+import com.griddynamics.banshun.fixtures.MiddleFace
+import org.springframework.aop.framework.ProxyFactory
+import org.springframework.aop.target.SingletonTargetSource
+import spock.lang.Specification
+
+class ServiceMetricsTest extends Specification {
+
+    def metrics = new ServiceMetrics('service1', MiddleFace)
+
+
+    def 'put latency into bucket by its magnitude'() {
+        expect:
+            LatencyHistogram.bucket(nanos) == bucket
+            nanos < LatencyHistogram.bucketBounds[bucket]
+        where:
+            nanos           || bucket
+            0               || 0
+            1023            || 0
+            1024            || 1
+            2047            || 1
+            1_000_000       || 10
+            10_000_000_000  || LatencyHistogram.BUCKETS - 1
+    }
+
+    def 'compute percentile as upper bound of bucket'() {
+        setup:
+            def histogram = new LatencyHistogram()
+            98.times { histogram.record(500) }
+            2.times { histogram.record(5000) }
+        expect:
+            histogram.getPercentile(0.5) == 1024
+            histogram.getPercentile(0.99) == 8192
+            histogram.totalNanos == 98 * 500 + 2 * 5000
+            new LatencyHistogram().getPercentile(0.99) == 0
+    }
+
+    def 'sum histogram stripes of all threads'() {
+        setup:
+            def histogram = new LatencyHistogram()
+            def threads = (1..4).collect {
+                Thread.start { 1000.times { histogram.record(500) } }
+            }
+        when:
+            threads*.join()
+        then:
+            histogram.counts[0] == 4000
+            histogram.counts.sum() == 4000
+    }
+
+    def 'sum striped counter'() {
+        setup:
+            def counter = new StripedCounter()
+            def threads = (1..4).collect {
+                Thread.start { 1000.times { counter.increment() } }
+            }
+        when:
+            threads*.join()
+            counter.add(-1000)
+        then:
+            counter.sum() == 3000
+    }
+
+    def 'record calls and errors through interceptor'() {
+        setup:
+            def calls = 0
+            def target = Stub(MiddleFace) {
+                getName() >> { if (++calls == 2) throw new IllegalStateException('boom'); 'foo' }
+            }
+            def proxyFactory = new ProxyFactory(MiddleFace, new SingletonTargetSource(target))
+            proxyFactory.addAdvice(new MetricsInterceptor(metrics))
+            def proxy = proxyFactory.proxy as MiddleFace
+        when:
+            proxy.name
+            proxy.name
+        then:
+            thrown(IllegalStateException)
+        and:
+            metrics.calls == 2
+            metrics.errors == 1
+            metrics.methodCalls == ['getName()': 2L]
+            metrics.methodErrors == ['getName()': 1L]
+            metrics.methodLatencyHistograms['getName()'].sum() == 2
+    }
+
+    def 'record calls through frozen import proxy'() {
+        setup:
+            def target = Stub(MiddleFace) { getName() >> 'foo' }
+            def registry = Stub(ServiceRegistry) {
+                getExport('service1') >> Stub(ExportTargetSource) {
+                    getTargetClass() >> MiddleFace
+                    getTarget() >> target
+                    tryEnter() >> true
+                }
+            }
+            def targetSource = new LookupTargetSource('service1', MiddleFace, registry)
+            def proxy = FrozenImportInvocationHandler.createProxy(targetSource, getClass().classLoader, metrics)
+        when:
+            3.times { proxy.name }
+            proxy.hashCode()
+        then:
+            metrics.calls == 3
+            metrics.methods*.methodName == ['getName()']
+    }
+}
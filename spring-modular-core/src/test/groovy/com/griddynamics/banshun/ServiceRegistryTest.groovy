@@ -0,0 +1,132 @@
+/*
+ * Copyright 2013 Jakub Jirutka <jakub@jirutka.cz>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.griddynamics.banshun
+
+import com.griddynamics.banshun.fixtures.RootFace
+import spock.lang.Specification
+
+import java.util.concurrent.Callable
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executors
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS
+import static java.util.concurrent.TimeUnit.SECONDS
+
+class ServiceRegistryTest extends Specification {
+
+    def registry = new ServiceRegistry()
+
+
+    def 'register export only once'() {
+        setup:
+            def first = new ExportTargetSource(new ExportRef('service1', RootFace, 'bean1'))
+            def second = new ExportTargetSource(new ExportRef('service1', RootFace, 'bean2'))
+        expect:
+            registry.getExport('service1') == null
+            registry.registerExport('service1', first)
+            !registry.registerExport('service1', second)
+            registry.getExport('service1').is(first)
+            registry.exportedServiceNames == ['service1'] as Set
+    }
+
+    def 'await export that is registered later'() {
+        setup:
+            def export = new ExportTargetSource(new ExportRef('service1', RootFace, 'bean1'))
+            def executor = Executors.newSingleThreadExecutor()
+        when:
+            def future = executor.submit({ registry.awaitExport('service1', 5, SECONDS) } as Callable)
+            registry.registerExport('service1', export)
+        then:
+            future.get().is(export)
+        cleanup:
+            executor.shutdownNow()
+    }
+
+    def 'await export times out'() {
+        expect:
+            registry.awaitExport('service1', 10, MILLISECONDS) == null
+    }
+
+    def 'replace export only if it is the expected one'() {
+        setup:
+            def first = new ExportTargetSource(new ExportRef('service1', RootFace, 'bean1'))
+            def second = new ExportTargetSource(new ExportRef('service1', RootFace, 'bean2'))
+            registry.registerExport('service1', first)
+        expect:
+            ! registry.replaceExport('service1', second, null)
+            registry.replaceExport('service1', first, second)
+            registry.getExport('service1').is(second)
+            registry.replaceExport('service1', second, null)
+            registry.getExport('service1') == null
+            registry.exportedServiceNames.isEmpty()
+    }
+
+    def 'remove import'() {
+        setup:
+            registry.registerImport('service1', new Object())
+        when:
+            registry.removeImport('service1')
+            registry.removeImport('service2')
+        then:
+            registry.getImport('service1') == null
+    }
+
+    def 'remove publication mark with import'() {
+        setup:
+            registry.registerImport('service1', new Object())
+            registry.markImportPublished('service1')
+        expect:
+            registry.removeImport('service1')
+            ! registry.removeImport('service1')
+            registry.markImportPublished('service1')
+    }
+
+    def 'register import only once'() {
+        setup:
+            def first = new Object()
+        expect:
+            registry.getImport('service1') == null
+            registry.registerImport('service1', first).is(first)
+            registry.registerImport('service1', new Object()).is(first)
+            registry.getImport('service1').is(first)
+            registry.exportedServiceNames.isEmpty()
+    }
+
+    def 'mark import published only once'() {
+        expect:
+            registry.markImportPublished('service1')
+            !registry.markImportPublished('service1')
+            registry.markImportPublished('service2')
+    }
+
+    def 'register import concurrently'() {
+        setup:
+            def threads = 8
+            def executor = Executors.newFixedThreadPool(threads)
+            def start = new CountDownLatch(1)
+            def tasks = (1..threads).collect {
+                { -> start.await(); registry.registerImport('service1', new Object()) } as Callable
+            }
+        when:
+            def futures = tasks.collect { executor.submit(it) }
+            start.countDown()
+            def results = futures*.get()
+        then:
+            results.every { it.is(registry.getImport('service1')) }
+        cleanup:
+            executor.shutdownNow()
+    }
+}
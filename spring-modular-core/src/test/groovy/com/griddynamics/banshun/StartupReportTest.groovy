@@ -0,0 +1,87 @@
+/*
+ * Copyright 2013 Jakub Jirutka <jakub@jirutka.cz>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.griddynamics.banshun
+
+import spock.lang.Specification
+
+class StartupReportTest extends Specification {
+
+    def locations = ['a.xml', 'b.xml', 'c.xml', 'd.xml']
+
+    def durations = ['a.xml': 10L, 'b.xml': 20L, 'c.xml': 5L, 'd.xml': 30L]
+
+    // b and c import from a, d imports from b
+    def graph = new LocationsGraph(
+            [ sa: [ref('sa', 'b.xml'), ref('sa', 'c.xml')], sb: [ref('sb', 'd.xml')] ],
+            [ sa: ref('sa', 'a.xml'), sb: ref('sb', 'b.xml') ])
+
+
+    def 'compute critical path and slack of modules'() {
+        when:
+            def report = new StartupReport(locations, graph, durations, 70)
+        then:
+            report.criticalPath == ['a.xml', 'b.xml', 'd.xml']
+            report.criticalPathDuration == 60
+            report.totalDuration == 70
+        and:
+            report.modules*.earliestStart == [0, 10, 10, 30]
+            report.modules*.latestStart == [0, 10, 55, 30]
+            report.modules*.slack == [0, 0, 45, 0]
+            report.modules*.critical == [true, true, false, true]
+            report.modules*.dependencies == [[], ['a.xml'], ['a.xml'], ['b.xml']]
+    }
+
+    def 'consider modules independent without graph'() {
+        when:
+            def report = new StartupReport(locations, null, durations, -1)
+        then:
+            report.criticalPath == ['d.xml']
+            report.criticalPathDuration == 30
+            report.modules*.slack == [20, 10, 25, 0]
+    }
+
+    def 'consider modules that have not been refreshed instantaneous'() {
+        when:
+            def report = new StartupReport(locations, graph, ['b.xml': 20L, 'c.xml': -1L], -1)
+        then:
+            report.criticalPath == ['a.xml', 'b.xml']
+            report.modules*.duration == [0, 20, 0, 0]
+    }
+
+    def 'ignore dependencies on following modules'() {
+        when:
+            def report = new StartupReport(['d.xml', 'b.xml', 'a.xml'], graph, durations, -1)
+        then:
+            report.modules*.dependencies == [[], [], []]
+            report.criticalPath == ['d.xml']
+    }
+
+    def 'write report as JSON'() {
+        setup:
+            def report = new StartupReport(['a.xml', 'b "x".xml'], null, ['a.xml': 10L, 'b "x".xml': 5L], 12)
+        expect:
+            report.toJson() == '{"totalDuration":12,"criticalPathDuration":10,"criticalPath":["a.xml"],"modules":[' +
+                    '{"location":"a.xml","duration":10,"earliestStart":0,"earliestFinish":10,"latestStart":0,' +
+                    '"slack":0,"critical":true,"dependencies":[]},' +
+                    '{"location":"b \\"x\\".xml","duration":5,"earliestStart":0,"earliestFinish":5,"latestStart":5,' +
+                    '"slack":5,"critical":false,"dependencies":[]}]}'
+    }
+
+
+    def ref(String serviceName, String location) {
+        new BeanReferenceInfo(serviceName, Object, location)
+    }
+}
@@ -2,9 +2,15 @@ package com.griddynamics.banshun
 
 import com.griddynamics.banshun.fixtures.Parent
 import com.griddynamics.banshun.test.InMemoryXmlApplicationContext
+import org.springframework.aop.framework.Advised
+import org.springframework.core.io.FileSystemResource
 import spock.lang.Specification
 import spock.lang.Unroll
 
+import java.util.concurrent.ExecutionException
+
+import static java.util.concurrent.TimeUnit.SECONDS
+
 /**
  * TODO
  * - test exports with different ref and name
@@ -85,6 +91,288 @@ class XmlBasedConfigIT extends Specification {
             className = parentBeanClass.simpleName
     }
 
+    def 'modules are refreshed concurrently in #description'() {
+        setup:
+            def ctx0 = initParentContext(StrictContextParentBean, configs as String[], startupParallelism: 4)
+
+        expect:
+            def root = ctx0.getBean('root', ContextParentBean)
+
+            root.children.size() == 3
+            def (ctx1, ctx2, ctx3) = root.children
+
+        and:
+            ctx3.getBean('useExportB1', Parent)
+                .child.toString() == ctx2.getBean('exportB1').toString()
+            ctx3.getBean('exportA1').toString() == ctx1.getBean('beanA1').toString()
+
+        where:
+            configs                   || description
+            ['ctx1', 'ctx2', 'ctx3']  || 'correct order'
+            ['ctx3', 'ctx2', 'ctx1']  || 'wrong order'
+    }
+
+    def 'modules are created from bean definitions parsed during analysis [reuseParsedDefinitions: #reuse]'() {
+        setup:
+            def ctx0 = initParentContext(StrictContextParentBean, 'ctx1', 'ctx2', 'ctx3', reuseParsedDefinitions: reuse)
+            def root = ctx0.getBean('root', StrictContextParentBean)
+
+        expect:
+            root.children.size() == 3
+            root.children[2].getBean('useExportB1', Parent)
+                .child.toString() == root.children[1].getBean('exportB1').toString()
+
+        and: 'parsed definitions are released'
+            root.resultConfigLocations.every { root.pollParsedBeanDefinitions(it) == null }
+
+        where:
+            reuse << [true, false]
+    }
+
+    def 'modules are analyzed using persistent cache'() {
+        setup:
+            def cacheFile = File.createTempFile('banshun-cache', '.bin')
+            cacheFile.delete()
+
+        when: 'started without cache'
+            def root1 = initParentContext(StrictContextParentBean, 'ctx2', 'ctx1', 'ctx3',
+                                          analysisCacheFile: cacheFile.path).getBean('root', ContextParentBean)
+        then:
+            cacheFile.exists()
+
+        when: 'started with cache'
+            def root2 = initParentContext(StrictContextParentBean, 'ctx2', 'ctx1', 'ctx3',
+                                          analysisCacheFile: cacheFile.path).getBean('root', ContextParentBean)
+        then:
+            root2.resultConfigLocations == root1.resultConfigLocations
+            root2.children.size() == 3
+
+        when: 'cache is corrupted'
+            cacheFile.text = 'corrupted'
+            def root3 = initParentContext(StrictContextParentBean, 'ctx2', 'ctx1', 'ctx3',
+                                          analysisCacheFile: cacheFile.path).getBean('root', ContextParentBean)
+        then:
+            root3.resultConfigLocations == root1.resultConfigLocations
+
+        cleanup:
+            cacheFile.delete()
+    }
+
+    def 'cached analysis of module is discarded when its imported resource is modified'() {
+        setup:
+            def dir = File.createTempFile('banshun-modules', '')
+            dir.delete()
+            dir.mkdirs()
+            def cacheFile = new File(dir, 'cache.bin')
+            def imported = new File(dir, 'imported.xml')
+            new File(dir, 'module.xml').text = moduleXml('<import resource="imported.xml" />')
+            imported.text = moduleXml('''
+                <bean id="beanX" class="com.griddynamics.banshun.fixtures.ChildImpl" />
+                <bs:export name="exportX" ref="beanX" interface="com.griddynamics.banshun.fixtures.Child" />''')
+            def start = {
+                new InMemoryXmlApplicationContext("""
+                    <bean id="root" class="${StrictContextParentBean.name}">
+                        <property name="configLocations" value="file:${dir.path}/module.xml" />
+                        <property name="analysisCacheFile" value="${cacheFile.path}" />
+                    </bean>""").getBean('root', ContextParentBean)
+            }
+
+        when: 'started without cache'
+            start()
+        then:
+            cacheFile.exists()
+
+        when: 'the imported resource is modified and started with cache'
+            imported.text = imported.text.replace('exportX', 'exportRenamed')
+            imported.lastModified = imported.lastModified() + 10000
+            def root = start()
+        then:
+            root.locationsGraph.getExportLocation('exportRenamed') != null
+            root.locationsGraph.getExportLocation('exportX') == null
+
+        cleanup:
+            dir.deleteDir()
+    }
+
+    def 'modules are analyzed using module manifests'() {
+        setup: 'generate manifest into the test classpath, as the Maven plugin does'
+            def classpathRoot = new File(getClass().getResource('/').toURI())
+            def manifestFile = new File(classpathRoot, ModuleManifest.MANIFEST_LOCATION)
+            def generator = new ModuleManifestGenerator(getClass().classLoader, 'root')
+            ['ctx1', 'ctx2', 'ctx3'].each {
+                def path = "com/griddynamics/banshun/it/${it}.xml"
+                generator.addLocation(path, new FileSystemResource(new File(classpathRoot, path)))
+            }
+            assert generator.validate()
+            manifestFile.parentFile.mkdirs()
+            manifestFile.withOutputStream { generator.manifest.write(it) }
+
+        when:
+            def root = initParentContext(StrictContextParentBean, 'ctx2', 'ctx1', 'ctx3',
+                                         useModuleManifests: true).getBean('root', ContextParentBean)
+        then:
+            root.resultConfigLocations*.replaceAll('.*/', '') == ['ctx1.xml', 'ctx2.xml', 'ctx3.xml']
+            root.children.size() == 3
+            root.children[2].getBean('useExportB1', Parent).child != null
+
+        cleanup:
+            manifestFile?.delete()
+    }
+
+    def 'modules are analyzed with class check mode #mode'() {
+        setup:
+            def root = initParentContext(StrictContextParentBean, 'ctx2', 'ctx1', 'ctx3',
+                                         classCheckMode: mode).getBean('root', ContextParentBean)
+        expect:
+            root.children.size() == 3
+        where:
+            mode << ClassVerifier.Mode.values()
+    }
+
+    def 'lazy modules are activated on first lookup [startupParallelism: #parallelism]'() {
+        setup:
+            def lazy = ['ctx1', 'ctx2'].collect { "/com/griddynamics/banshun/it/${it}.xml" }.join(',')
+            def root = initParentContext(StrictContextParentBean, 'ctx1', 'ctx2', 'ctx3',
+                                         lazyConfigLocations: lazy, startupParallelism: parallelism)
+                    .getBean('root', ContextParentBean)
+        expect: 'only the eager module is refreshed'
+            root.children.size() == 1
+            root.pendingLazyLocations.size() == 2
+            root.moduleActivations.isEmpty()
+
+        when: 'exported service is used'
+            def eager = root.children[0]
+            def child = eager.getBean('useExportB1', Parent).child
+            def threads = (1..8).collect { Thread.start { child.name } }
+            threads*.join()
+        then: 'exporting module is activated once, after its dependency'
+            child.name == 'exportB1'
+            root.children.size() == 3
+            root.children[2].is(eager)
+            root.pendingLazyLocations.isEmpty()
+            root.moduleActivations*.location*.replaceAll('.*/', '') == ['ctx1.xml', 'ctx2.xml']
+            root.moduleActivations*.triggeringService == ['exportB1', 'exportB1']
+            root.moduleActivations.every { it.successful }
+
+        where:
+            parallelism << [1, 4]
+    }
+
+    def 'modules import frozen proxies'() {
+        setup:
+            def root = initParentContext(StrictContextParentBean, 'ctx1', 'ctx2', 'ctx3',
+                                         frozenImports: true).getBean('root', ContextParentBean)
+            def (ctx1, ctx2, ctx3) = root.children
+        expect:
+            def child = ctx3.getBean('useExportB1', Parent).child
+            child.name == 'exportB1'
+            child.toString() == ctx2.getBean('exportB1').toString()
+            ! (child instanceof Advised)
+        and:
+            ctx3.getBean('exportA1') == ctx2.getBean('exportA1')
+    }
+
+    def 'modules are initialized in background [startupParallelism: #parallelism]'() {
+        setup:
+            def ctx0 = initParentContext(StrictContextParentBean, 'ctx1', 'ctx2', 'ctx3',
+                                         asyncInit: true, startupParallelism: parallelism)
+            def root = ctx0.getBean('root', ContextParentBean)
+        when:
+            def contexts = root.readiness.get(10, SECONDS)
+        then:
+            contexts.size() == 3
+            root.children == contexts
+            root.healthy
+            root.moduleReadiness.values().every { it.ready && it.get().size() == 1 }
+        cleanup:
+            ctx0?.close()
+        where:
+            parallelism << [1, 4]
+    }
+
+    def 'one of modules fails in background and strict error handling is enabled'() {
+        setup:
+            def ctx0 = initParentContext(StrictContextParentBean, 'ctx1', 'ctx6', 'ctx2', 'ctx7',
+                                         asyncInit: true, strictErrorHandling: true)
+            def root = ctx0.getBean('root', ContextParentBean)
+        when:
+            root.readiness.get(10, SECONDS)
+        then:
+            thrown(ExecutionException)
+            ! root.healthy
+            root.moduleReadiness.values()*.status.contains(ModuleReadiness.Status.FAILED)
+        cleanup:
+            ctx0?.close()
+    }
+
+    def 'module is reloaded and import proxies switch to new exports'() {
+        setup:
+            def root = initParentContext(StrictContextParentBean, 'ctx1', 'ctx2', 'ctx3')
+                    .getBean('root', ContextParentBean)
+            def (ctx1, ctx2, ctx3) = root.children
+            def child = ctx3.getBean('useExportB1', Parent).child
+            def oldBean = ctx2.getBean('exportB1').toString()
+            def location = root.resultConfigLocations.find { it.endsWith('ctx2.xml') }
+            def oldReadiness = root.moduleReadiness[location]
+            assert child.toString() == oldBean
+
+        when:
+            def reloaded = root.reloadLocation(location)
+            def newCtx2 = root.children[1]
+
+        then: 'only the reloaded module is replaced'
+            reloaded == [location]
+            root.children.size() == 3
+            root.children[0].is(ctx1)
+            root.children[2].is(ctx3)
+            ! ctx2.active
+            newCtx2.active
+
+        and: 'readiness of the module is replaced by the one of the reload'
+            ! root.moduleReadiness[location].is(oldReadiness)
+            root.moduleReadiness[location].get() == [newCtx2]
+            root.reloadFailures.isEmpty()
+
+        and: 'existing import proxy calls the new bean'
+            child.toString() == newCtx2.getBean('exportB1').toString()
+            child.toString() != oldBean
+    }
+
+    def 'creation of beans of modules is profiled'() {
+        setup:
+            def root = initParentContext(StrictContextParentBean, 'ctx1', 'ctx2', 'ctx3', beanProfilingLimit: 1)
+                    .getBean('root', ContextParentBean)
+        expect:
+            root.beanProfilers.keySet() as List == root.resultConfigLocations
+            root.beanProfilers.values().every { it.slowestBeans.size() == 1 }
+            root.startupReport.modules*.location == root.resultConfigLocations
+    }
+
+    def 'aliases of beans outside the module are kept [reuseParsedDefinitions: #reuse]'() {
+        setup:
+            def ctx0 = initParentContext(StrictContextParentBean, 'ctx8', reuseParsedDefinitions: reuse)
+            def root = ctx0.getBean('root', StrictContextParentBean)
+            def child = root.children[0]
+
+        expect:
+            child.getBean('localAlias').is(child.getBean('beanH1'))
+            child.getBean('rootAlias').is(root)
+
+        where:
+            reuse << [true, false]
+    }
+
+    def 'one of modules fails and modules are refreshed concurrently'() {
+        setup:
+            def ctx0 = initParentContext(StrictContextParentBean, 'ctx1', 'ctx6', 'ctx2', 'ctx7',
+                                         strictErrorHandling: false, startupParallelism: 4)
+            def root = ctx0.getBean('root', ContextParentBean)
+        expect:
+            root.children.size() == 2
+            root.ignoredLocations.size() == 2
+            root.nestedContextsExceptions.size() == 1
+    }
+
     def 'one of modules fails and strict error handling is disabled [StrictContextParentBean]'() {
         setup:
             def ctx0 = initParentContext(StrictContextParentBean, 'ctx1', 'ctx6', 'ctx2', 'ctx7',
@@ -142,4 +430,16 @@ class XmlBasedConfigIT extends Specification {
             """
         new InMemoryXmlApplicationContext(xml)
     }
+
+    static moduleXml(String content) {
+        """<?xml version="1.0" encoding="UTF-8"?>
+           <beans xmlns="http://www.springframework.org/schema/beans"
+                  xmlns:bs="http://www.griddynamics.com/schema/banshun"
+                  xmlns:xsi="http://www.w3.org/2001/XMLSchema-instance"
+                  xsi:schemaLocation="
+                  http://www.springframework.org/schema/beans http://www.springframework.org/schema/beans/spring-beans-3.0.xsd
+                  http://www.griddynamics.com/schema/banshun http://www.griddynamics.com/schema/banshun/banshun-schema.xsd">
+               ${content}
+           </beans>"""
+    }
 }
@@ -0,0 +1,164 @@
+/*
+ * Copyright 2013 Jakub Jirutka <jakub@jirutka.cz>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.griddynamics.banshun.test
+
+import com.griddynamics.banshun.ContextParentBean
+import com.griddynamics.banshun.StrictContextParentBean
+import com.griddynamics.banshun.fixtures.Child
+import com.griddynamics.banshun.fixtures.ChildImpl
+import org.springframework.context.ConfigurableApplicationContext
+
+import static com.griddynamics.banshun.test.TestUtils.BEANS_XML_HEAD
+import static com.griddynamics.banshun.test.TestUtils.BEANS_XML_TAIL
+
+/**
+ * Generator of synthetic module graphs for scale testing. Modules are assigned to
+ * <tt>depth</tt> layers; each module exports <tt>fanOut</tt> services and imports up to
+ * <tt>fanIn</tt> services exported from the lower layers. With <tt>cycleProbability</tt>
+ * a module imports one more service from a higher layer, which may create a cycle.
+ *
+ * <pre>
+ * def generator = new ModuleGraphGenerator(modules: 200, fanIn: 3, depth: 8)
+ * def context = generator.boot(directory, startupParallelism: 4)
+ * </pre>
+ */
+class ModuleGraphGenerator {
+
+    int modules = 100
+    int depth = 5
+    int fanIn = 3
+    int fanOut = 2
+    int beansPerModule = 5
+    double cycleProbability = 0.0
+    long seed = 42
+
+
+    /**
+     * Writes the modules as XML files <tt>module{i}.xml</tt> into the given directory.
+     *
+     * @return URIs of the written files in order of the modules.
+     */
+    List<String> generate(File directory) {
+        def random = new Random(seed)
+        def layers = (0..<modules).groupBy { layerOf(it) }
+        directory.mkdirs()
+
+        (0..<modules).collect { module ->
+            def imports = [] as LinkedHashSet
+            def lower = layers.findAll { it.key < layerOf(module) }.values().flatten()
+            if (lower) {
+                fanIn.times {
+                    imports << serviceName(lower[random.nextInt(lower.size())], random.nextInt(fanOut))
+                }
+            }
+            def higher = layers.findAll { it.key > layerOf(module) }.values().flatten()
+            if (higher && random.nextDouble() < cycleProbability) {
+                imports << serviceName(higher[random.nextInt(higher.size())], random.nextInt(fanOut))
+            }
+            def file = new File(directory, "module${module}.xml")
+            file.text = moduleXml(module, imports)
+            file.toURI().toString()
+        }
+    }
+
+    /**
+     * Generates the modules and boots root context with {@link StrictContextParentBean} named
+     * <tt>root</tt> with the modules.
+     *
+     * @param props Additional properties of the parent bean.
+     */
+    ConfigurableApplicationContext boot(Map props = [:], File directory) {
+        def defaultProps = [
+                configLocations: generate(directory).join(','),
+                strictErrorHandling: true,
+                prohibitCycles: cycleProbability == 0.0
+        ]
+        def propertyElements = (defaultProps + props).collect { key, val ->
+            "<property name='${key}' value='${val}' />"
+        }.join('\n')
+
+        new InMemoryXmlApplicationContext("""
+            <bean id="root" class="${StrictContextParentBean.name}">
+                ${propertyElements}
+            </bean>
+            """)
+    }
+
+    /**
+     * Boots the modules and measures time until the root context is ready (i.e. all the
+     * modules are refreshed) and heap used by the booted contexts.
+     */
+    BootReport bootAndMeasure(Map props = [:], File directory) {
+        def heapBefore = usedHeap()
+        def start = System.nanoTime()
+        def context = boot(props, directory)
+        def timeToReady = (System.nanoTime() - start).intdiv(1000000)
+
+        def root = context.getBean('root', ContextParentBean)
+        new BootReport(
+                context: context,
+                modules: modules,
+                children: root.children.size(),
+                timeToReadyMillis: timeToReady,
+                heapAfterBootBytes: usedHeap() - heapBefore)
+    }
+
+    int layerOf(int module) {
+        (module * depth).intdiv(modules)
+    }
+
+
+    private String moduleXml(int module, Collection<String> imports) {
+        def xml = new StringBuilder(BEANS_XML_HEAD)
+
+        imports.each { service ->
+            xml << """    <bs:import id="${service}" interface="${Child.name}" />\n"""
+        }
+        beansPerModule.times { bean ->
+            xml << """    <bean id="bean${module}_${bean}" class="${ChildImpl.name}" />\n"""
+        }
+        fanOut.times { export ->
+            def bean = export % beansPerModule
+            xml << """    <bs:export name="${serviceName(module, export)}" ref="bean${module}_${bean}" interface="${Child.name}" />\n"""
+        }
+        xml << BEANS_XML_TAIL
+        xml.toString()
+    }
+
+    private static String serviceName(int module, int export) {
+        "service${module}_${export}"
+    }
+
+    private static long usedHeap() {
+        def runtime = Runtime.runtime
+        3.times { System.gc() }
+        runtime.totalMemory() - runtime.freeMemory()
+    }
+
+
+    static class BootReport {
+        ConfigurableApplicationContext context
+        int modules
+        int children
+        long timeToReadyMillis
+        long heapAfterBootBytes
+
+        String toString() {
+            "modules: ${modules}, refreshed: ${children}, time to ready: ${timeToReadyMillis} ms, " +
+                    "heap after boot: ${heapAfterBootBytes.intdiv(1024)} KiB"
+        }
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2012 Grid Dynamics Consulting Services, Inc.
+ *      http://www.griddynamics.com
+ *
+ * Copyright 2013 Jakub Jirutka <jakub@jirutka.cz>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.griddynamics.banshun.jfr;
+
+import com.griddynamics.banshun.ModuleTracer;
+import com.griddynamics.banshun.ModuleTracers;
+
+import java.lang.reflect.Method;
+
+/**
+ * {@link ModuleTracer} that records the spans as JDK Flight Recorder events in the
+ * "Spring Modular" category. When no recording with the event enabled is running, the
+ * event is not populated and the shared {@link ModuleTracers#NOOP_SPAN} is returned.
+ */
+public class JfrModuleTracer implements ModuleTracer {
+
+    public Span startPhase(String phase) {
+        PhaseEvent event = new PhaseEvent();
+        if (!event.isEnabled()) {
+            return ModuleTracers.NOOP_SPAN;
+        }
+        event.phase = phase;
+        return begin(event);
+    }
+
+    public Span startRefresh(String location) {
+        RefreshEvent event = new RefreshEvent();
+        if (!event.isEnabled()) {
+            return ModuleTracers.NOOP_SPAN;
+        }
+        event.location = location;
+        return begin(event);
+    }
+
+    public Span startExport(String serviceName, Class<?> serviceInterface, String beanName) {
+        ExportEvent event = new ExportEvent();
+        if (!event.isEnabled()) {
+            return ModuleTracers.NOOP_SPAN;
+        }
+        event.serviceName = serviceName;
+        event.serviceInterface = serviceInterface;
+        event.beanName = beanName;
+        return begin(event);
+    }
+
+    public Span startResolution(String serviceName, Class<?> serviceInterface) {
+        ResolutionEvent event = new ResolutionEvent();
+        if (!event.isEnabled()) {
+            return ModuleTracers.NOOP_SPAN;
+        }
+        event.serviceName = serviceName;
+        event.serviceInterface = serviceInterface;
+        return begin(event);
+    }
+
+    public Span startInvocation(String serviceName, Method method) {
+        InvocationEvent event = new InvocationEvent();
+        if (!event.isEnabled()) {
+            return ModuleTracers.NOOP_SPAN;
+        }
+        event.serviceName = serviceName;
+        event.serviceInterface = method.getDeclaringClass();
+        event.method = method.getName();
+        return begin(event);
+    }
+
+
+    private static Span begin(ModuleEvent event) {
+        event.begin();
+        return new EventSpan(event);
+    }
+
+
+    /**
+     * Span of an event; {@link jdk.jfr.Event#end()} is final, so the event can't be the span
+     * itself.
+     */
+    private static class EventSpan implements Span {
+        private final ModuleEvent event;
+
+        EventSpan(ModuleEvent event) {
+            this.event = event;
+        }
+
+        public void end() {
+            event.commit();
+        }
+
+        public void fail(Throwable cause) {
+            event.failure = cause.toString();
+            event.commit();
+        }
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2012 Grid Dynamics Consulting Services, Inc.
+ *      http://www.griddynamics.com
+ *
+ * Copyright 2013 Jakub Jirutka <jakub@jirutka.cz>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.griddynamics.banshun.jfr;
+
+import com.griddynamics.banshun.ModuleTracer;
+import com.griddynamics.banshun.ModuleTracers;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class JfrModuleTracerTest {
+
+    private final ModuleTracer tracer = new JfrModuleTracer();
+
+
+    @Test
+    public void isDiscoveredAsDefaultTracer() {
+        assertTrue(ModuleTracers.getDefault() instanceof JfrModuleTracer);
+    }
+
+    @Test
+    public void returnsNoopSpanWhenNotRecording() {
+        assertSame(ModuleTracers.NOOP_SPAN, tracer.startRefresh("ctx1.xml"));
+    }
+
+    @Test
+    public void recordsEvents() throws Exception {
+        Path file = Files.createTempFile("banshun", ".jfr");
+        try {
+            try (Recording recording = new Recording()) {
+                recording.enable(PhaseEvent.class);
+                recording.enable(RefreshEvent.class);
+                recording.enable(InvocationEvent.class);
+                recording.start();
+
+                tracer.startPhase(ModuleTracer.PHASE_SORT).end();
+                tracer.startRefresh("ctx1.xml").fail(new IllegalStateException("boom"));
+                tracer.startInvocation("service1", Runnable.class.getMethod("run")).end();
+
+                recording.stop();
+                recording.dump(file);
+            }
+            List<RecordedEvent> events = RecordingFile.readAllEvents(file);
+            assertEquals(3, events.size());
+
+            RecordedEvent phase = find(events, "com.griddynamics.banshun.Phase");
+            assertEquals("sort", phase.getString("phase"));
+            assertNull(phase.getString("failure"));
+
+            RecordedEvent refresh = find(events, "com.griddynamics.banshun.Refresh");
+            assertEquals("ctx1.xml", refresh.getString("location"));
+            assertEquals("java.lang.IllegalStateException: boom", refresh.getString("failure"));
+
+            RecordedEvent invocation = find(events, "com.griddynamics.banshun.Invocation");
+            assertEquals("service1", invocation.getString("serviceName"));
+            assertEquals("java.lang.Runnable", invocation.getClass("serviceInterface").getName());
+            assertEquals("run", invocation.getString("method"));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+
+    private static RecordedEvent find(List<RecordedEvent> events, String name) {
+        for (RecordedEvent event : events) {
+            if (event.getEventType().getName().equals(name)) {
+                return event;
+            }
+        }
+        throw new AssertionError("No event " + name + " recorded");
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright 2012 Grid Dynamics Consulting Services, Inc.
+ *      http://www.griddynamics.com
+ *
+ * Copyright 2013 Jakub Jirutka <jakub@jirutka.cz>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.griddynamics.banshun.maven;
+
+import com.griddynamics.banshun.ModuleManifest;
+import com.griddynamics.banshun.ModuleManifestGenerator;
+import org.apache.maven.artifact.DependencyResolutionRequiredException;
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.LifecyclePhase;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.plugins.annotations.ResolutionScope;
+import org.apache.maven.project.MavenProject;
+import org.codehaus.plexus.util.DirectoryScanner;
+import org.springframework.core.io.FileSystemResource;
+
+import java.io.*;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Generates module manifest with exports and imports of the module XMLs in the output
+ * directory, and validates them against the project's classpath. The manifest is used
+ * by {@link com.griddynamics.banshun.StrictContextParentBean StrictContextParentBean}
+ * with <tt>useModuleManifests</tt> enabled instead of parsing the XMLs at startup.
+ *
+ * <p>The goal runs before packaging, so the manifest is packaged along with the XMLs.</p>
+ */
+@Mojo(name = "manifest", defaultPhase = LifecyclePhase.PROCESS_CLASSES,
+      requiresDependencyResolution = ResolutionScope.RUNTIME, threadSafe = true)
+public class ManifestMojo extends AbstractMojo {
+
+    @Parameter(defaultValue = "${project}", readonly = true, required = true)
+    private MavenProject project;
+
+    /**
+     * The directory with the compiled classes and resources of the project.
+     */
+    @Parameter(defaultValue = "${project.build.outputDirectory}", required = true)
+    private File outputDirectory;
+
+    /**
+     * Patterns of the module XMLs to include, relative to the output directory. Only files
+     * with the Spring <tt>beans</tt> root element are analyzed.
+     */
+    @Parameter
+    private String[] includes = { "**/*.xml" };
+
+    /**
+     * Patterns of the module XMLs to exclude, relative to the output directory.
+     */
+    @Parameter
+    private String[] excludes = {};
+
+    /**
+     * The name of the context parent bean that the modules export to and import from.
+     */
+    @Parameter(defaultValue = "root")
+    private String registryName;
+
+    /**
+     * Whether to fail the build when a module is invalid, i.e. a class doesn't exist or
+     * imported service is incompatible with the exported one.
+     */
+    @Parameter(defaultValue = "true")
+    private boolean failOnError;
+
+    @Parameter(property = "spring-modular.manifest.skip", defaultValue = "false")
+    private boolean skip;
+
+
+    public void execute() throws MojoExecutionException, MojoFailureException {
+        if (skip || !outputDirectory.isDirectory()) {
+            getLog().info("Skipping module manifest generation");
+            return;
+        }
+        ClassLoader originalClassLoader = Thread.currentThread().getContextClassLoader();
+        ClassLoader projectClassLoader = createProjectClassLoader();
+        Thread.currentThread().setContextClassLoader(projectClassLoader);
+        try {
+            ModuleManifestGenerator generator = new ModuleManifestGenerator(projectClassLoader, registryName);
+
+            for (String path : scanModules()) {
+                FileSystemResource resource = new FileSystemResource(new File(outputDirectory, path));
+                if (ModuleManifestGenerator.isBeansDefinition(resource)) {
+                    getLog().debug("Analyzing module " + path);
+                    generator.addLocation(path.replace(File.separatorChar, '/'), resource);
+                }
+            }
+            if (!generator.validate()) {
+                for (String error : generator.getErrors()) {
+                    getLog().error(error);
+                }
+                if (failOnError) {
+                    throw new MojoFailureException("Modules are invalid, see the errors above");
+                }
+            }
+            writeManifest(generator.getManifest());
+
+        } catch (IOException ex) {
+            throw new MojoExecutionException("Failed to generate module manifest", ex);
+        } finally {
+            Thread.currentThread().setContextClassLoader(originalClassLoader);
+        }
+    }
+
+    private String[] scanModules() {
+        DirectoryScanner scanner = new DirectoryScanner();
+        scanner.setBasedir(outputDirectory);
+        scanner.setIncludes(includes);
+        scanner.setExcludes(excludes);
+        scanner.scan();
+
+        return scanner.getIncludedFiles();
+    }
+
+    private void writeManifest(ModuleManifest manifest) throws IOException {
+        File file = new File(outputDirectory, ModuleManifest.MANIFEST_LOCATION);
+        if (!file.getParentFile().isDirectory() && !file.getParentFile().mkdirs()) {
+            throw new IOException("Can't create directory " + file.getParentFile());
+        }
+        try (OutputStream output = new FileOutputStream(file)) {
+            manifest.write(output);
+        }
+        getLog().info("Generated module manifest with " + manifest.getLocations().size() + " modules");
+    }
+
+    /**
+     * Creates class loader of the project's runtime classpath, so the classes referenced
+     * in the modules can be checked.
+     */
+    private ClassLoader createProjectClassLoader() throws MojoExecutionException {
+        try {
+            List<URL> urls = new ArrayList<>();
+            for (String element : project.getRuntimeClasspathElements()) {
+                urls.add(new File(element).toURI().toURL());
+            }
+            return new URLClassLoader(urls.toArray(new URL[urls.size()]), getClass().getClassLoader());
+
+        } catch (DependencyResolutionRequiredException | MalformedURLException ex) {
+            throw new MojoExecutionException("Failed to resolve project classpath", ex);
+        }
+    }
+}
@@ -17,20 +17,34 @@
 package com.griddynamics.banshun.web;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReference;
 
 import javax.servlet.http.HttpServletRequest;
 
+import com.griddynamics.banshun.web.HandlerTable.HandlerMetadata;
+
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.BeanFactoryUtils;
 import org.springframework.core.annotation.AnnotationUtils;
 import org.springframework.stereotype.Controller;
+import org.springframework.util.AntPathMatcher;
 import org.springframework.util.Assert;
 import org.springframework.util.ObjectUtils;
 import org.springframework.util.StringUtils;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.servlet.HandlerExecutionChain;
 import org.springframework.web.servlet.mvc.annotation.DefaultAnnotationHandlerMapping;
 
 /**
@@ -38,10 +52,106 @@ import org.springframework.web.servlet.mvc.annotation.DefaultAnnotationHandlerMa
  * usage: instantiate this bean in the root context, call registerXxx methods from nested children
  * contexts to register controllers and request handlers.
  * don't forget to instantiate HandlerAdapters beans and follow Spring MVC conventions.
+ *
+ * <p>The handlers are kept in an immutable table of this mapping, which is replaced by a new one
+ * whenever handlers are registered or unregistered. Requests are thus never blocked by modules
+ * being started, reloaded or closed. The registered handlers are exposed by {@link #getHandlers()};
+ * the map of the superclass returned by {@link #getHandlerMap()} is not used and stays empty.</p>
+ *
+ * <p>The URL paths are tagged with the module that has registered them, if any, so requests
+ * to the handlers of each module may be measured (see {@link #setMetricsEnabled(boolean)}).</p>
  */
 public class ContextParentAnnotationHandlerMapping extends DefaultAnnotationHandlerMapping implements HandlersRegistry {
 
-    private final Map<Class<?>, RequestMapping> cachedMappings = new HashMap<Class<?>, RequestMapping>();
+    private final AtomicReference<HandlerTable> handlerTable = new AtomicReference<HandlerTable>(HandlerTable.EMPTY);
+    private final ConcurrentMap<String, ModuleMetricsInterceptor> metricsInterceptors =
+            new ConcurrentHashMap<String, ModuleMetricsInterceptor>();
+
+    private boolean useUrlIndex = true;
+    private boolean lazyInitHandlers = false;
+    private boolean detectHandlersInAncestorContexts = false;
+    private boolean metricsEnabled = false;
+
+    /**
+     * Specifies whether URL patterns of the registered handlers should be looked up in
+     * a {@link UrlPatternIndex}, instead of matching the request path against all of them.
+     * The index is used only with the default {@link AntPathMatcher}; it's built on the first
+     * lookup after handlers have been registered or unregistered. It chooses the same handler as
+     * {@link org.springframework.web.servlet.handler.AbstractUrlHandlerMapping AbstractUrlHandlerMapping}.
+     *
+     * @default true
+     */
+    public void setUseUrlIndex(boolean useUrlIndex) {
+        this.useUrlIndex = useUrlIndex;
+    }
+
+    /**
+     * Specifies whether requests to the handlers registered by modules should be recorded, see
+     * {@link #getModuleMetrics()}. An interceptor of the module is added to the handler execution
+     * chain of each such request; it's the first one, so the latency includes the other
+     * interceptors and rendering of the view. Handlers registered without a module (e.g. by
+     * {@link #registerByName(String, Object)}) and the root and default handler are not recorded.
+     *
+     * @default false
+     */
+    public void setMetricsEnabled(boolean metricsEnabled) {
+        this.metricsEnabled = metricsEnabled;
+    }
+
+    @Override
+    public void setLazyInitHandlers(boolean lazyInitHandlers) {
+        super.setLazyInitHandlers(lazyInitHandlers);
+        this.lazyInitHandlers = lazyInitHandlers;
+    }
+
+    @Override
+    public void setDetectHandlersInAncestorContexts(boolean detectHandlersInAncestorContexts) {
+        super.setDetectHandlersInAncestorContexts(detectHandlersInAncestorContexts);
+        this.detectHandlersInAncestorContexts = detectHandlersInAncestorContexts;
+    }
+
+    /**
+     * Use this instead of {@link #getHandlerMap()}, which is always empty.
+     *
+     * @return Unmodifiable map of the registered URL paths to their handlers (or bean names of
+     *         lazily initialized handlers), except the root and default handler.
+     */
+    public Map<String, Object> getHandlers() {
+        return handlerTable.get().getUrlHandlers();
+    }
+
+    /**
+     * @return Unmodifiable map of the URL paths registered by a module to the module names.
+     */
+    public Map<String, String> getHandlerModules() {
+        return handlerTable.get().getModules();
+    }
+
+    /**
+     * @return Request metrics of the modules by their names. Empty unless
+     *         {@link #setMetricsEnabled(boolean) metricsEnabled}; metrics of a module are
+     *         discarded when it doesn't own any URL path anymore, i.e. its handlers are
+     *         unregistered or taken over by another module.
+     */
+    public Map<String, ModuleRequestMetrics> getModuleMetrics() {
+        Map<String, ModuleRequestMetrics> result = new TreeMap<String, ModuleRequestMetrics>();
+        for (ModuleMetricsInterceptor interceptor : metricsInterceptors.values()) {
+            result.put(interceptor.getMetrics().getModule(), interceptor.getMetrics());
+        }
+        return Collections.unmodifiableMap(result);
+    }
+
+    @Override
+    public Object getRootHandler() {
+        Object handler = handlerTable.get().getRootHandler();
+        return handler != null ? handler : super.getRootHandler();
+    }
+
+    @Override
+    public Object getDefaultHandler() {
+        Object handler = handlerTable.get().getDefaultHandler();
+        return handler != null ? handler : super.getDefaultHandler();
+    }
 
     /**
      * @see org.springframework.web.servlet.handler.BeanNameUrlHandlerMapping.determineUrlsForHandler(String)
@@ -71,9 +181,7 @@ public class ContextParentAnnotationHandlerMapping extends DefaultAnnotationHand
         if (!ObjectUtils.isEmpty(urls)) {
             // URL paths found: Let's consider it a handler.
             Assert.notNull(urls, "URL path array must not be null");
-            for (int j = 0; j < urls.length; j++) {
-                registerHandler(urls[j], handler);
-            }
+            registerHandlers(Collections.singletonMap(handler, urls));
         } else {
             if (logger.isDebugEnabled()) {
                 logger.debug("Rejected bean '" + handler + "': no URL paths identified");
@@ -92,7 +200,6 @@ public class ContextParentAnnotationHandlerMapping extends DefaultAnnotationHand
 
         if (mapping != null) {
             // @RequestMapping found at type level
-            this.cachedMappings.put(handlerType, mapping);
             Set<String> urls = new LinkedHashSet<String>();
             String[] paths = mapping.value();
             if (paths.length > 0) {
@@ -113,13 +220,285 @@ public class ContextParentAnnotationHandlerMapping extends DefaultAnnotationHand
         }
     }
 
+    public Void replaceHandlers(String module, Map<String, ?> handlers) {
+        replaceHandlers(Collections.singletonMap(module, handlers));
+        return null;
+    }
+
+    public Void unregisterHandlers(String module) {
+        Assert.notNull(module, "Module must not be null");
+
+        synchronized (this) {
+            HandlerTable.Builder table = handlerTable.get().toBuilder();
+            List<String> removed = table.removeModule(module);
+
+            if (!removed.isEmpty()) {
+                setHandlerTable(table.build());
+                logger.info("Unmapped URL paths " + removed + " of module '" + module + "'");
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Replaces handlers of several modules at once. A URL path may be taken over from a module
+     * not being replaced (e.g. the previous context of a reloaded module), but not from another
+     * module being replaced.
+     *
+     * @param moduleHandlers Map of the module names to the maps of URL paths to handlers.
+     * @throws IllegalStateException If a URL path is already mapped to another handler. No
+     *         handlers are replaced then.
+     * @see #replaceHandlers(String, Map)
+     */
+    protected void replaceHandlers(Map<String, ? extends Map<String, ?>> moduleHandlers) {
+        synchronized (this) {
+            HandlerTable.Builder table = handlerTable.get().toBuilder();
+
+            for (String module : moduleHandlers.keySet()) {
+                Assert.notNull(module, "Module must not be null");
+                table.removeModule(module);
+            }
+            for (Map.Entry<String, ? extends Map<String, ?>> entry : moduleHandlers.entrySet()) {
+                for (Map.Entry<String, ?> handler : entry.getValue().entrySet()) {
+                    registerHandler(table, handler.getKey(), handler.getValue(), entry.getKey());
+                }
+            }
+            setHandlerTable(table.build());
+        }
+    }
+
+    /**
+     * Detects handlers in the same way as
+     * {@link org.springframework.web.servlet.handler.AbstractDetectingUrlHandlerMapping#detectHandlers()
+     * AbstractDetectingUrlHandlerMapping}, but registers all of them at once.
+     */
+    @Override
+    protected void detectHandlers() throws BeansException {
+        if (logger.isDebugEnabled()) {
+            logger.debug("Looking for URL mappings in application context: " + getApplicationContext());
+        }
+        String[] beanNames = detectHandlersInAncestorContexts
+                ? BeanFactoryUtils.beanNamesForTypeIncludingAncestors(getApplicationContext(), Object.class)
+                : getApplicationContext().getBeanNamesForType(Object.class);
+
+        Map<String, String[]> handlerUrls = new LinkedHashMap<String, String[]>();
+        for (String beanName : beanNames) {
+            String[] urls = determineUrlsForHandler(beanName);
+            if (!ObjectUtils.isEmpty(urls)) {
+                handlerUrls.put(beanName, urls);
+            } else if (logger.isDebugEnabled()) {
+                logger.debug("Rejected bean name '" + beanName + "': no URL paths identified");
+            }
+        }
+        registerHandlers(handlerUrls);
+    }
+
+    @Override
+    protected void registerHandler(String[] urlPaths, String beanName) {
+        Assert.notNull(urlPaths, "URL path array must not be null");
+        registerHandlers(Collections.singletonMap(beanName, urlPaths));
+    }
+
+    @Override
+    protected void registerHandler(String urlPath, Object handler) {
+        synchronized (this) {
+            HandlerTable.Builder table = handlerTable.get().toBuilder();
+            registerHandler(table, urlPath, handler, null);
+            setHandlerTable(table.build());
+        }
+    }
+
+    /**
+     * Registers the handlers without a module, building a single new handler table for all of
+     * them.
+     *
+     * @param handlerUrls Handlers (or bean names of handlers) and their URL paths, in order of
+     *        the registration.
+     */
+    private void registerHandlers(Map<?, String[]> handlerUrls) {
+        synchronized (this) {
+            HandlerTable.Builder table = handlerTable.get().toBuilder();
+
+            for (Map.Entry<?, String[]> entry : handlerUrls.entrySet()) {
+                for (String urlPath : entry.getValue()) {
+                    registerHandler(table, urlPath, entry.getKey(), null);
+                }
+            }
+            setHandlerTable(table.build());
+        }
+    }
+
+    /**
+     * Replaces the current handler table, and discards metrics of the modules that don't own
+     * any URL path in the new one, e.g. because their paths have been taken over by a reloaded
+     * module. Must be called with the lock of this mapping held.
+     */
+    private void setHandlerTable(HandlerTable table) {
+        handlerTable.set(table);
+
+        if (!metricsInterceptors.isEmpty()) {
+            metricsInterceptors.keySet().retainAll(new HashSet<String>(table.getModules().values()));
+        }
+    }
+
+    /**
+     * Registers the handler as {@link org.springframework.web.servlet.handler.AbstractUrlHandlerMapping#registerHandler(String, Object)
+     * AbstractUrlHandlerMapping} does, and looks up validation metadata of its class.
+     *
+     * @param module The module that registers the handler, or <tt>null</tt>.
+     */
+    private void registerHandler(HandlerTable.Builder table, String urlPath, Object handler, String module) {
+        Assert.notNull(urlPath, "URL path must not be null");
+        Assert.notNull(handler, "Handler object must not be null");
+        Object resolvedHandler = handler;
+
+        // Eagerly resolve handler if referencing singleton via name.
+        if (!this.lazyInitHandlers && handler instanceof String) {
+            String handlerName = (String) handler;
+            if (getApplicationContext().isSingleton(handlerName)) {
+                resolvedHandler = getApplicationContext().getBean(handlerName);
+            }
+        }
+        boolean rootOrDefault = urlPath.equals(HandlerTable.ROOT_PATH) || urlPath.equals(HandlerTable.DEFAULT_PATH);
+        Object mappedHandler = table.getHandler(urlPath);
+
+        if (mappedHandler == resolvedHandler) {
+            return;
+        }
+        if (mappedHandler != null && !rootOrDefault) {
+            String mappedModule = table.getModule(urlPath);
+            if (module == null || mappedModule == null || table.isAdded(urlPath)) {
+                throw new IllegalStateException("Cannot map " + getHandlerDescription(handler) + " to URL path [" +
+                        urlPath + "]: There is already " + getHandlerDescription(mappedHandler) + " mapped.");
+            }
+            logger.info("URL path [" + urlPath + "] of module '" + mappedModule + "' is taken over by module '" + module + "'");
+        }
+        table.put(urlPath, resolvedHandler, module);
+
+        if (urlPath.equals(HandlerTable.ROOT_PATH)) {
+            logger.info("Root mapping to " + getHandlerDescription(handler));
+        } else if (urlPath.equals(HandlerTable.DEFAULT_PATH)) {
+            logger.info("Default mapping to " + getHandlerDescription(handler));
+        } else {
+            logger.info("Mapped URL path [" + urlPath + "] onto " + getHandlerDescription(handler));
+        }
+
+        Class<?> handlerType = resolvedHandler instanceof String
+                ? getApplicationContext().getType((String) resolvedHandler) : resolvedHandler.getClass();
+        if (handlerType != null && !table.hasMetadata(handlerType)) {
+            table.putMetadata(handlerType, new HandlerMetadata(AnnotationUtils.findAnnotation(handlerType, RequestMapping.class)));
+        }
+    }
+
+    private String getHandlerDescription(Object handler) {
+        return "handler " + (handler instanceof String ? "'" + handler + "'" : "of type [" + handler.getClass() + "]");
+    }
+
+    /**
+     * Validates the request against the type-level {@link RequestMapping} of the handler, which
+     * has been looked up when the handler was registered.
+     */
     protected void validateHandler(Object handler, HttpServletRequest request) throws Exception {
-        RequestMapping mapping = this.cachedMappings.get(handler.getClass());
-        if (mapping == null) {
-            mapping = AnnotationUtils.findAnnotation(handler.getClass(), RequestMapping.class);
+        HandlerTable table = handlerTable.get();
+        HandlerMetadata metadata = table.getMetadata(handler.getClass());
+        if (metadata == null) {
+            // handler of a bean that has not been resolved at registration; if the table has
+            // been changed meanwhile, the metadata will be looked up again next time
+            metadata = new HandlerMetadata(AnnotationUtils.findAnnotation(handler.getClass(), RequestMapping.class));
+            handlerTable.compareAndSet(table, table.withMetadata(handler.getClass(), metadata));
         }
-        if (mapping != null) {
-            validateMapping(mapping, request);
+        if (metadata.mapping != null) {
+            validateMapping(metadata.mapping, request);
+        }
+    }
+
+    /**
+     * Looks up a handler in the same way as
+     * {@link org.springframework.web.servlet.handler.AbstractUrlHandlerMapping#lookupHandler(String, HttpServletRequest)
+     * AbstractUrlHandlerMapping} in the current handler table, but matches only the patterns
+     * found in the URL index.
+     */
+    @Override
+    protected Object lookupHandler(String urlPath, HttpServletRequest request) throws Exception {
+        HandlerTable table = handlerTable.get();
+
+        // Direct match?
+        Object handler = table.getHandler(urlPath);
+        if (handler != null) {
+            handler = resolveHandler(handler);
+            validateHandler(handler, request);
+            return addMetricsInterceptor(table, urlPath, buildPathExposingHandler(handler, urlPath, urlPath, null));
+        }
+        // Pattern match?
+        Collection<String> candidates = useUrlIndex && getPathMatcher().getClass() == AntPathMatcher.class
+                ? table.getIndex().findCandidates(urlPath) : table.getUrlHandlers().keySet();
+
+        List<String> matchingPatterns = new ArrayList<String>();
+        for (String candidate : candidates) {
+            if (getPathMatcher().match(candidate, urlPath)) {
+                matchingPatterns.add(candidate);
+            }
+        }
+        if (matchingPatterns.isEmpty()) {
+            return null;
+        }
+        Comparator<String> patternComparator = getPathMatcher().getPatternComparator(urlPath);
+        Collections.sort(matchingPatterns, patternComparator);
+        if (logger.isDebugEnabled()) {
+            logger.debug("Matching patterns for request [" + urlPath + "] are " + matchingPatterns);
+        }
+        String bestPatternMatch = matchingPatterns.get(0);
+
+        handler = resolveHandler(table.getHandler(bestPatternMatch));
+        validateHandler(handler, request);
+        String pathWithinMapping = getPathMatcher().extractPathWithinPattern(bestPatternMatch, urlPath);
+
+        // There might be multiple 'best patterns', let's make sure we have the correct URI template variables
+        // for all of them
+        Map<String, String> uriTemplateVariables = new LinkedHashMap<String, String>();
+        for (String matchingPattern : matchingPatterns) {
+            if (patternComparator.compare(bestPatternMatch, matchingPattern) == 0) {
+                Map<String, String> vars = getPathMatcher().extractUriTemplateVariables(matchingPattern, urlPath);
+                uriTemplateVariables.putAll(getUrlPathHelper().decodePathVariables(request, vars));
+            }
+        }
+        if (logger.isDebugEnabled()) {
+            logger.debug("URI Template variables for request [" + urlPath + "] are " + uriTemplateVariables);
+        }
+        return addMetricsInterceptor(table, bestPatternMatch,
+                buildPathExposingHandler(handler, bestPatternMatch, pathWithinMapping, uriTemplateVariables));
+    }
+
+    /**
+     * Adds the metrics interceptor of the module that has registered the URL path, if any.
+     */
+    private Object addMetricsInterceptor(HandlerTable table, String urlPath, Object handler) {
+        if (metricsEnabled && handler instanceof HandlerExecutionChain) {
+            String module = table.getModules().get(urlPath);
+            if (module != null) {
+                ((HandlerExecutionChain) handler).addInterceptor(getMetricsInterceptor(module));
+            }
+        }
+        return handler;
+    }
+
+    private ModuleMetricsInterceptor getMetricsInterceptor(String module) {
+        ModuleMetricsInterceptor interceptor = metricsInterceptors.get(module);
+        if (interceptor == null) {
+            ModuleMetricsInterceptor created = new ModuleMetricsInterceptor(new ModuleRequestMetrics(module));
+            interceptor = metricsInterceptors.putIfAbsent(module, created);
+            if (interceptor == null) {
+                interceptor = created;
+            }
+        }
+        return interceptor;
+    }
+
+    private Object resolveHandler(Object handler) {
+        // Bean name or resolved handler?
+        if (handler instanceof String) {
+            handler = getApplicationContext().getBean((String) handler);
         }
+        return handler;
     }
 }
@@ -0,0 +1,241 @@
+/*
+ * Copyright 2012 Grid Dynamics Consulting Services, Inc.
+ *      http://www.griddynamics.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.griddynamics.banshun.web;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.springframework.web.bind.annotation.RequestMapping;
+
+/**
+ * Immutable snapshot of the handlers registered in {@link ContextParentAnnotationHandlerMapping}:
+ * the URL paths and their handlers in order of registration, the modules that have registered
+ * them, and the validation metadata of the handler classes. A new snapshot is created by
+ * a {@link Builder} whenever the handlers change, so request threads read a consistent table
+ * without locking.
+ */
+final class HandlerTable {
+
+    static final String ROOT_PATH = "/";
+    static final String DEFAULT_PATH = "/*";
+
+    static final HandlerTable EMPTY = new Builder(null).build();
+
+    /** Handlers of all the paths including the root and default one. */
+    private final Map<String, Object> handlers;
+    /** Handlers of the paths except the root and default one. */
+    private final Map<String, Object> urlHandlers;
+    /** Modules of the paths registered by a module. */
+    private final Map<String, String> modules;
+    private final Map<Class<?>, HandlerMetadata> metadata;
+
+    /** Built on the first lookup; concurrent lookups may build it more than once. */
+    private volatile UrlPatternIndex index;
+
+
+    private HandlerTable(Map<String, Object> handlers, Map<String, Object> urlHandlers, Map<String, String> modules,
+                         Map<Class<?>, HandlerMetadata> metadata, UrlPatternIndex index) {
+        this.handlers = handlers;
+        this.urlHandlers = urlHandlers;
+        this.modules = modules;
+        this.metadata = metadata;
+        this.index = index;
+    }
+
+
+    /**
+     * @return The handler of the path, or <tt>null</tt> if not mapped. The root and default
+     *         handler are not returned.
+     */
+    Object getHandler(String urlPath) {
+        return urlHandlers.get(urlPath);
+    }
+
+    /**
+     * @return Unmodifiable map of the paths except the root and default one to their handlers.
+     */
+    Map<String, Object> getUrlHandlers() {
+        return urlHandlers;
+    }
+
+    Object getRootHandler() {
+        return handlers.get(ROOT_PATH);
+    }
+
+    Object getDefaultHandler() {
+        return handlers.get(DEFAULT_PATH);
+    }
+
+    /**
+     * @return Unmodifiable map of the paths registered by a module to the module names.
+     */
+    Map<String, String> getModules() {
+        return modules;
+    }
+
+    /**
+     * @return Metadata of the handler class, or <tt>null</tt> if unknown.
+     */
+    HandlerMetadata getMetadata(Class<?> handlerType) {
+        return metadata.get(handlerType);
+    }
+
+    UrlPatternIndex getIndex() {
+        UrlPatternIndex index = this.index;
+        if (index == null) {
+            index = new UrlPatternIndex(urlHandlers.keySet());
+            this.index = index;
+        }
+        return index;
+    }
+
+    /**
+     * @return Copy of this table with metadata of the given handler class added.
+     */
+    HandlerTable withMetadata(Class<?> handlerType, HandlerMetadata handlerMetadata) {
+        Map<Class<?>, HandlerMetadata> copy = new HashMap<Class<?>, HandlerMetadata>(metadata);
+        copy.put(handlerType, handlerMetadata);
+
+        return new HandlerTable(handlers, urlHandlers, modules, Collections.unmodifiableMap(copy), index);
+    }
+
+    Builder toBuilder() {
+        return new Builder(this);
+    }
+
+
+    /**
+     * Mutable copy of a table.
+     */
+    static final class Builder {
+
+        private final Map<String, Object> handlers;
+        private final Map<String, String> modules;
+        private final Map<Class<?>, HandlerMetadata> metadata;
+        private final Set<String> addedPaths = new HashSet<String>();
+        private boolean removed;
+
+        private Builder(HandlerTable table) {
+            handlers = table != null ? new LinkedHashMap<String, Object>(table.handlers) : new LinkedHashMap<String, Object>();
+            modules = table != null ? new HashMap<String, String>(table.modules) : new HashMap<String, String>();
+            metadata = table != null
+                    ? new HashMap<Class<?>, HandlerMetadata>(table.metadata) : new HashMap<Class<?>, HandlerMetadata>();
+        }
+
+        Object getHandler(String urlPath) {
+            return handlers.get(urlPath);
+        }
+
+        String getModule(String urlPath) {
+            return modules.get(urlPath);
+        }
+
+        /**
+         * @return Whether the path has been put in this builder, not in the original table.
+         */
+        boolean isAdded(String urlPath) {
+            return addedPaths.contains(urlPath);
+        }
+
+        /**
+         * Maps the path to the handler, replacing the previous one.
+         *
+         * @param module The module that registers the handler, or <tt>null</tt>.
+         */
+        void put(String urlPath, Object handler, String module) {
+            // keep the original order of the path being replaced
+            handlers.put(urlPath, handler);
+            if (module != null) {
+                modules.put(urlPath, module);
+            } else {
+                modules.remove(urlPath);
+            }
+            addedPaths.add(urlPath);
+        }
+
+        /**
+         * Removes all the paths registered by the module.
+         *
+         * @return The removed paths.
+         */
+        List<String> removeModule(String module) {
+            List<String> result = new ArrayList<String>();
+
+            for (Iterator<Map.Entry<String, String>> it = modules.entrySet().iterator(); it.hasNext(); ) {
+                Map.Entry<String, String> entry = it.next();
+                if (entry.getValue().equals(module)) {
+                    it.remove();
+                    handlers.remove(entry.getKey());
+                    addedPaths.remove(entry.getKey());
+                    result.add(entry.getKey());
+                }
+            }
+            removed |= !result.isEmpty();
+            return result;
+        }
+
+        boolean hasMetadata(Class<?> handlerType) {
+            return metadata.containsKey(handlerType);
+        }
+
+        void putMetadata(Class<?> handlerType, HandlerMetadata handlerMetadata) {
+            metadata.put(handlerType, handlerMetadata);
+        }
+
+        HandlerTable build() {
+            Map<String, Object> urlHandlers = new LinkedHashMap<String, Object>(handlers);
+            urlHandlers.remove(ROOT_PATH);
+            urlHandlers.remove(DEFAULT_PATH);
+
+            if (removed) {
+                // forget the classes of removed handlers, they may belong to a closed module
+                Set<Class<?>> handlerTypes = new HashSet<Class<?>>();
+                for (Object handler : handlers.values()) {
+                    handlerTypes.add(handler.getClass());
+                }
+                metadata.keySet().retainAll(handlerTypes);
+            }
+            return new HandlerTable(Collections.unmodifiableMap(handlers), Collections.unmodifiableMap(urlHandlers),
+                    Collections.unmodifiableMap(modules), Collections.unmodifiableMap(metadata), null);
+        }
+    }
+
+
+    /**
+     * Request conditions of a handler class.
+     */
+    static final class HandlerMetadata {
+
+        /**
+         * The type-level mapping, or <tt>null</tt> if it doesn't restrict the requests.
+         */
+        final RequestMapping mapping;
+
+        HandlerMetadata(RequestMapping mapping) {
+            boolean restricting = mapping != null && (mapping.method().length > 0
+                    || mapping.params().length > 0 || mapping.headers().length > 0);
+            this.mapping = restricting ? mapping : null;
+        }
+    }
+}
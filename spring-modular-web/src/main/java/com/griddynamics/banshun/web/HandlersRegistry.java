@@ -16,6 +16,8 @@
  */
 package com.griddynamics.banshun.web;
 
+import java.util.Map;
+
 /**
  * @description: implementation is instantiated in the root context, and available
  * in nested children contexts for register Spring MVC handlers and controllers
@@ -33,4 +35,21 @@ public interface HandlersRegistry {
      * used for register request handler mapped by {@link RequestMapping}
      */
     Void registerByAnnotation(Object handler);
+
+    /**
+     * registers handlers of a module for the given urls, replacing all the handlers registered by
+     * the module before. urls mapped by another module (e.g. the previous context of a reloaded
+     * module) are taken over. requests being processed are not affected.
+     *
+     * @param module   name of the module, e.g. id of its context
+     * @param handlers handlers or their bean names by url
+     */
+    Void replaceHandlers(String module, Map<String, ?> handlers);
+
+    /**
+     * unregisters all the handlers registered by a module, e.g. when its context is closed
+     *
+     * @param module name of the module used to register the handlers
+     */
+    Void unregisterHandlers(String module);
 }
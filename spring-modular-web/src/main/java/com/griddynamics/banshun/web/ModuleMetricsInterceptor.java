@@ -0,0 +1,95 @@
+/*
+ * Copyright 2012 Grid Dynamics Consulting Services, Inc.
+ *      http://www.griddynamics.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.griddynamics.banshun.web;
+
+import java.util.Arrays;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.web.servlet.handler.HandlerInterceptorAdapter;
+
+/**
+ * Interceptor that records the {@link ModuleRequestMetrics} of the requests handled by
+ * handlers of a module. A single instance is shared by all the requests to the module.
+ *
+ * <p>The start times of the requests are kept in a primitive array of the current thread,
+ * which is reused by its subsequent requests, so that no object is allocated per request.
+ * The array is a stack, since a request may be forwarded or included to another handler of
+ * the module on the same thread.</p>
+ */
+class ModuleMetricsInterceptor extends HandlerInterceptorAdapter {
+
+    private static final int INITIAL_DEPTH = 4;
+
+    private final ModuleRequestMetrics metrics;
+    // the first element is the number of the requests in progress on the thread
+    private final ThreadLocal<long[]> starts = new ThreadLocal<long[]>() {
+        @Override
+        protected long[] initialValue() {
+            return new long[INITIAL_DEPTH + 1];
+        }
+    };
+
+
+    ModuleMetricsInterceptor(ModuleRequestMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+
+    ModuleRequestMetrics getMetrics() {
+        return metrics;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        long[] stack = starts.get();
+        int depth = (int) stack[0];
+
+        if (depth + 1 == stack.length) {
+            stack = Arrays.copyOf(stack, stack.length * 2);
+            starts.set(stack);
+        }
+        stack[depth + 1] = System.nanoTime();
+        stack[0] = depth + 1;
+        return true;
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        long[] stack = starts.get();
+        int depth = (int) stack[0];
+
+        if (depth > 0) {
+            stack[0] = depth - 1;
+            metrics.record(System.nanoTime() - stack[depth], ex != null || response.getStatus() >= 500);
+        }
+    }
+
+    /**
+     * The request continues asynchronously and is handled again by a new dispatch, which is
+     * recorded instead.
+     */
+    @Override
+    public void afterConcurrentHandlingStarted(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        long[] stack = starts.get();
+
+        if (stack[0] > 0) {
+            stack[0]--;
+        }
+    }
+}
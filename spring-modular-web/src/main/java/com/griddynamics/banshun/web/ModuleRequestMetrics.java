@@ -0,0 +1,79 @@
+/*
+ * Copyright 2012 Grid Dynamics Consulting Services, Inc.
+ *      http://www.griddynamics.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.griddynamics.banshun.web;
+
+import com.griddynamics.banshun.LatencyHistogram;
+import com.griddynamics.banshun.StripedCounter;
+
+/**
+ * Request metrics of the handlers registered by a single module, see
+ * {@link ContextParentAnnotationHandlerMapping#getModuleMetrics()}.
+ */
+public class ModuleRequestMetrics {
+
+    private final String module;
+    private final StripedCounter requests = new StripedCounter();
+    private final StripedCounter errors = new StripedCounter();
+    private final LatencyHistogram latency = new LatencyHistogram();
+
+
+    ModuleRequestMetrics(String module) {
+        this.module = module;
+    }
+
+
+    public String getModule() {
+        return module;
+    }
+
+    public long getRequests() {
+        return requests.sum();
+    }
+
+    /**
+     * @return Number of the requests whose handler has thrown an exception, or that have been
+     *         answered with a 5xx status.
+     */
+    public long getErrors() {
+        return errors.sum();
+    }
+
+    /**
+     * @return Latencies of the requests, from the handler being found until the request is
+     *         completed, i.e. including rendering of the view.
+     */
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+
+    /**
+     * @return Mean latency in nanoseconds, or <tt>0</tt> if there are no requests recorded.
+     */
+    public long getMeanNanos() {
+        long count = requests.sum();
+        return count > 0 ? latency.getTotalNanos() / count : 0;
+    }
+
+
+    void record(long nanos, boolean failed) {
+        requests.increment();
+        if (failed) {
+            errors.increment();
+        }
+        latency.record(nanos);
+    }
+}
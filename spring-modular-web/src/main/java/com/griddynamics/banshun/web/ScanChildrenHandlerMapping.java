@@ -17,8 +17,19 @@
 package com.griddynamics.banshun.web;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import com.griddynamics.banshun.ContextParentBean;
 import com.griddynamics.banshun.Registry;
@@ -28,61 +39,323 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.BeanFactoryUtils;
 import org.springframework.beans.factory.BeanInitializationException;
 import org.springframework.context.*;
+import org.springframework.context.event.ContextClosedEvent;
 import org.springframework.context.event.ContextRefreshedEvent;
 import org.springframework.core.OrderComparator;
+import org.springframework.core.annotation.AnnotationUtils;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Controller;
+import org.springframework.util.Assert;
+import org.springframework.util.StringUtils;
+import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.servlet.HandlerMapping;
 import org.springframework.web.servlet.handler.AbstractUrlHandlerMapping;
 
+/**
+ * Registers handlers of all the nested children contexts of the {@link #setParentBean(Registry)
+ * parentBean} when the root context is refreshed. Each nested context is a module of its own
+ * (see {@link HandlersRegistry#replaceHandlers(String, Map)}) named by its display name, i.e. by
+ * the description of its config resource (see {@link SingleResourceWebChildContext}): handlers
+ * of a nested context refreshed later (e.g. reloaded) replace the previous ones, and handlers of
+ * a closed nested context are unregistered, unless they have been replaced by another context
+ * of the same module. Requests to the handlers may be thus measured per nested context, see
+ * {@link #setMetricsEnabled(boolean)}.
+ */
 public class ScanChildrenHandlerMapping extends ContextParentAnnotationHandlerMapping implements ApplicationListener<ApplicationEvent> {
     @SuppressWarnings("unused")
 	private static final Logger log = LoggerFactory.getLogger(ContextParentBean.class);
     private static final Class<?>[] defaultHandlerMappingClasses = new Class[]{
     	org.springframework.web.servlet.handler.BeanNameUrlHandlerMapping.class,
     	org.springframework.web.servlet.mvc.annotation.DefaultAnnotationHandlerMapping.class};
+    private static final String[] NO_URLS = new String[0];
     private Registry parentBean = null;
+    private int scanParallelism = 1;
+    private volatile boolean scanned = false;
+    // the nested contexts whose handlers are registered, by the module names
+    private final ConcurrentMap<String, ApplicationContext> moduleContexts =
+            new ConcurrentHashMap<String, ApplicationContext>();
 
     public void setParentBean(Registry parentBean) {
         this.parentBean = parentBean;
     }
 
+    /**
+     * Specifies maximal number of the nested children contexts that may be scanned for handlers
+     * concurrently. With more than one, the default handler mappings are not created in
+     * the contexts that have none; their handlers are detected directly instead, and each
+     * handler class is introspected for {@link RequestMapping} only once for all the contexts.
+     * Handlers of all the contexts are registered at once when the scan is finished, in order
+     * of the contexts. Nested contexts refreshed before the root context are not registered one
+     * by one then, but only by the scan on refresh of the root context.
+     *
+     * @default 1
+     */
+    public void setScanParallelism(int scanParallelism) {
+        Assert.isTrue(scanParallelism > 0, "Scan parallelism must be positive");
+        this.scanParallelism = scanParallelism;
+    }
+
     public void onApplicationEvent(ApplicationEvent event) {
         if (event instanceof ContextRefreshedEvent) {
-            scanChildContexts();
+            ApplicationContext context = ((ContextRefreshedEvent) event).getApplicationContext();
+            if (isNestedContext(context)) {
+                // with parallel scan, the nested contexts started with the root one are scanned all at once
+                if (scanParallelism == 1 || scanned) {
+                    createHandlerMappingsAndRegisterHandlers(context);
+                }
+            } else {
+                scanChildContexts();
+            }
+        } else if (event instanceof ContextClosedEvent) {
+            ApplicationContext context = ((ContextClosedEvent) event).getApplicationContext();
+            // a reloaded context is closed after the new one of the same module has been registered
+            if (isNestedContext(context) && moduleContexts.remove(getModuleName(context), context)) {
+                unregisterHandlers(getModuleName(context));
+            }
         }
     }
 
     public void scanChildContexts() {
-        List<ConfigurableApplicationContext> children = ((ContextParentBean) parentBean).getChildren();
+        scanned = true;
+        List<ConfigurableApplicationContext> children = new ArrayList<ConfigurableApplicationContext>();
+        for (ConfigurableApplicationContext child : ((ContextParentBean) parentBean).getChildren()) {
+            if (child.isActive()) {
+                children.add(child);
+            }
+        }
+        if (scanParallelism > 1 && children.size() > 1) {
+            scanConcurrently(children);
+            return;
+        }
+        Map<String, Map<String, Object>> moduleHandlers = new LinkedHashMap<String, Map<String, Object>>();
         for (ConfigurableApplicationContext child : children) {
-            createHandlerMappingsAndRegisterHandlers(child);
+            moduleHandlers.put(getModuleName(child), collectHandlers(createHandlerMappings(child)));
         }
+        replaceHandlers(moduleHandlers);
+        registerModuleContexts(children);
     }
 
     public void createHandlerMappingsAndRegisterHandlers(ApplicationContext child) {
+        replaceHandlers(getModuleName(child), collectHandlers(createHandlerMappings(child)));
+        registerModuleContexts(Collections.singletonList(child));
+    }
+
+    /**
+     * @return Name of the module of the nested context to register its handlers with. It's the
+     *         display name of the context, which is the description of its config resource for
+     *         {@link SingleResourceWebChildContext} and
+     *         {@link com.griddynamics.banshun.SingleResourceXmlChildContext SingleResourceXmlChildContext},
+     *         so a reloaded context belongs to the same module as the previous one.
+     */
+    protected String getModuleName(ApplicationContext child) {
+        return child.getDisplayName();
+    }
+
+    private void registerModuleContexts(List<? extends ApplicationContext> children) {
+        for (ApplicationContext child : children) {
+            moduleContexts.put(getModuleName(child), child);
+        }
+    }
+
+    private boolean isNestedContext(ApplicationContext context) {
+        for (ApplicationContext parent = context.getParent(); parent != null; parent = parent.getParent()) {
+            if (parent == getApplicationContext()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private List<HandlerMapping> createHandlerMappings(ApplicationContext child) {
+        List<HandlerMapping> handlerMappings = findHandlerMappings(child);
+        if (handlerMappings.isEmpty()) {
+            handlerMappings = createDefaultHandlerMappings(child);
+            if (logger.isDebugEnabled()) {
+                logger.debug("No HandlerMappings found in context '" + child.getDisplayName() + "': using default");
+            }
+        }
+        return handlerMappings;
+    }
+
+    private List<HandlerMapping> findHandlerMappings(ApplicationContext child) {
         Map<String, HandlerMapping> matchingBeans =
                 BeanFactoryUtils.beansOfTypeIncludingAncestors(child, HandlerMapping.class, true, false);
 
         List<HandlerMapping> handlerMappings = new ArrayList<HandlerMapping>(matchingBeans.values());
         OrderComparator.sort(handlerMappings);
         handlerMappings.remove(this);
-        if (handlerMappings.isEmpty()) {
-            handlerMappings = createDefaultHandlerMappings(child);
-            if (logger.isDebugEnabled()) {
-                logger.debug("No HandlerMappings found in context '" + child.getDisplayName() + "': using default");
+        return handlerMappings;
+    }
+
+    /**
+     * Detects handlers of the contexts on up to {@link #setScanParallelism(int) scanParallelism}
+     * threads, and then registers all of them at once.
+     */
+    private void scanConcurrently(List<ConfigurableApplicationContext> children) {
+        // URLs of the handler classes, shared by all the contexts being scanned
+        final ConcurrentMap<Class<?>, String[]> handlerTypeUrls = new ConcurrentHashMap<Class<?>, String[]>();
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(scanParallelism, children.size()),
+                new CustomizableThreadFactory("banshun-scan-"));
+        List<Future<Map<String, Object>>> futures = new ArrayList<Future<Map<String, Object>>>();
+        Map<String, Map<String, Object>> moduleHandlers = new LinkedHashMap<String, Map<String, Object>>();
+        try {
+            for (final ConfigurableApplicationContext child : children) {
+                futures.add(executor.submit(new Callable<Map<String, Object>>() {
+                    public Map<String, Object> call() {
+                        return detectHandlers(child, handlerTypeUrls);
+                    }
+                }));
+            }
+            for (int i = 0; i < children.size(); i++) {
+                moduleHandlers.put(getModuleName(children.get(i)), futures.get(i).get());
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new BeanInitializationException("Interrupted while scanning nested contexts for handlers", ex);
+        } catch (ExecutionException ex) {
+            throw new BeanInitializationException(ex.getCause().getMessage(), ex.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+
+        replaceHandlers(moduleHandlers);
+        registerModuleContexts(children);
+
+        if (logger.isDebugEnabled()) {
+            logger.debug("Registered handlers of " + children.size() + " nested contexts, "
+                    + handlerTypeUrls.size() + " handler classes introspected");
+        }
+    }
+
+    /**
+     * Detects handlers of the context in the same way as its handler mappings, or the default
+     * {@link org.springframework.web.servlet.handler.BeanNameUrlHandlerMapping BeanNameUrlHandlerMapping}
+     * and {@link org.springframework.web.servlet.mvc.annotation.DefaultAnnotationHandlerMapping
+     * DefaultAnnotationHandlerMapping} would do, but without creating them.
+     *
+     * @param handlerTypeUrls Cache of URLs of the handler classes.
+     * @return URLs and their handlers, in order of the registration.
+     */
+    private Map<String, Object> detectHandlers(ApplicationContext child, ConcurrentMap<Class<?>, String[]> handlerTypeUrls) {
+        List<HandlerMapping> handlerMappings = findHandlerMappings(child);
+        if (!handlerMappings.isEmpty()) {
+            return collectHandlers(handlerMappings);
+        }
+        Map<String, Object> handlers = new LinkedHashMap<String, Object>();
+        String[] beanNames = child.getBeanNamesForType(Object.class);
+
+        // as BeanNameUrlHandlerMapping
+        for (String beanName : beanNames) {
+            Set<String> urls = new LinkedHashSet<String>();
+            if (beanName.startsWith("/")) {
+                urls.add(beanName);
+            }
+            for (String alias : child.getAliases(beanName)) {
+                if (alias.startsWith("/")) {
+                    urls.add(alias);
+                }
+            }
+            addHandler(handlers, urls.toArray(NO_URLS), child, beanName);
+        }
+        // as DefaultAnnotationHandlerMapping
+        for (String beanName : beanNames) {
+            Class<?> handlerType = child.getType(beanName);
+            if (handlerType == null) {
+                continue;
+            }
+            String[] urls = handlerTypeUrls.get(handlerType);
+            if (urls == null) {
+                urls = determineUrlsForHandlerType(handlerType);
+                handlerTypeUrls.putIfAbsent(handlerType, urls);
             }
+            addHandler(handlers, urls, child, beanName);
         }
-        registerHandlers(handlerMappings);
+        return handlers;
     }
 
-    private void registerHandlers(List<HandlerMapping> handlerMappings) {
+    private void addHandler(Map<String, Object> handlers, String[] urls, ApplicationContext child, String beanName) {
+        if (urls.length == 0) {
+            return;
+        }
+        // eagerly resolve singleton handlers, as AbstractUrlHandlerMapping does
+        Object handler = child.isSingleton(beanName) ? child.getBean(beanName) : beanName;
+
+        for (String url : urls) {
+            addHandler(handlers, url, handler);
+        }
+    }
+
+    private static void addHandler(Map<String, Object> handlers, String url, Object handler) {
+        Object mappedHandler = handlers.get(url);
+
+        if (mappedHandler == null) {
+            handlers.put(url, handler);
+        } else if (mappedHandler != handler) {
+            throw new IllegalStateException("Cannot map handler [" + handler + "] to URL path [" + url +
+                    "]: There is already handler [" + mappedHandler + "] mapped.");
+        }
+    }
+
+    /**
+     * @see org.springframework.web.servlet.mvc.annotation.DefaultAnnotationHandlerMapping#determineUrlsForHandler(String)
+     */
+    private String[] determineUrlsForHandlerType(Class<?> handlerType) {
+        RequestMapping mapping = AnnotationUtils.findAnnotation(handlerType, RequestMapping.class);
+
+        if (mapping != null) {
+            // @RequestMapping found at type level
+            Set<String> urls = new LinkedHashSet<String>();
+            String[] typeLevelPatterns = mapping.value();
+            if (typeLevelPatterns.length > 0) {
+                // @RequestMapping specifies paths at type level
+                String[] methodLevelPatterns = determineUrlsForHandlerMethods(handlerType, true);
+                for (String typeLevelPattern : typeLevelPatterns) {
+                    if (!typeLevelPattern.startsWith("/")) {
+                        typeLevelPattern = "/" + typeLevelPattern;
+                    }
+                    boolean hasEmptyMethodLevelMappings = false;
+                    for (String methodLevelPattern : methodLevelPatterns) {
+                        if (methodLevelPattern == null) {
+                            hasEmptyMethodLevelMappings = true;
+                        } else {
+                            addUrlsForPath(urls, getPathMatcher().combine(typeLevelPattern, methodLevelPattern));
+                        }
+                    }
+                    if (hasEmptyMethodLevelMappings
+                            || org.springframework.web.servlet.mvc.Controller.class.isAssignableFrom(handlerType)) {
+                        addUrlsForPath(urls, typeLevelPattern);
+                    }
+                }
+                return StringUtils.toStringArray(urls);
+            } else {
+                // actual paths specified by @RequestMapping at method level
+                return nonNull(determineUrlsForHandlerMethods(handlerType, false));
+            }
+        } else if (AnnotationUtils.findAnnotation(handlerType, Controller.class) != null) {
+            // @RequestMapping to be introspected at method level
+            return nonNull(determineUrlsForHandlerMethods(handlerType, false));
+        } else {
+            return NO_URLS;
+        }
+    }
+
+    private static String[] nonNull(String[] urls) {
+        return urls != null ? urls : NO_URLS;
+    }
+
+    private Map<String, Object> collectHandlers(List<HandlerMapping> handlerMappings) {
+        Map<String, Object> handlers = new LinkedHashMap<String, Object>();
+
         for (HandlerMapping mapping : handlerMappings) {
-            AbstractUrlHandlerMapping abstractUrlHandlerMapping = (AbstractUrlHandlerMapping) mapping;
-            Map<String, Object> handlerMap = abstractUrlHandlerMapping.getHandlerMap();
+            Map<String, Object> handlerMap = mapping instanceof ContextParentAnnotationHandlerMapping
+                    ? ((ContextParentAnnotationHandlerMapping) mapping).getHandlers()
+                    : ((AbstractUrlHandlerMapping) mapping).getHandlerMap();
             for (String url : handlerMap.keySet()) {
-                Object handler = handlerMap.get(url);
-                registerHandler(url, handler);
+                addHandler(handlers, url, handlerMap.get(url));
             }
         }
+        return handlers;
     }
 
     private List<HandlerMapping> createDefaultHandlerMappings(ApplicationContext context) {
@@ -16,7 +16,9 @@
  */
 package com.griddynamics.banshun.web;
 
+import com.griddynamics.banshun.BeanCreationProfiler;
 import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
 import org.springframework.beans.factory.xml.XmlBeanDefinitionReader;
 import org.springframework.context.ApplicationContext;
 import org.springframework.core.io.Resource;
@@ -29,10 +31,17 @@ public final class SingleResourceWebChildContext extends XmlWebApplicationContex
 
     SingleResourceWebChildContext(Resource res, ApplicationContext parent) {
         this.res = res;
+        setDisplayName(res.getDescription());
         setParent(parent);
         refresh();
     }
 
+    @Override
+    protected void postProcessBeanFactory(ConfigurableListableBeanFactory beanFactory) {
+        super.postProcessBeanFactory(beanFactory);
+        BeanCreationProfiler.registerActive(beanFactory);
+    }
+
     protected void loadBeanDefinitions(XmlBeanDefinitionReader reader) throws BeansException, IOException {
         reader.loadBeanDefinitions(res);
     }
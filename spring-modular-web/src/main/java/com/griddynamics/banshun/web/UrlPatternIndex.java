@@ -0,0 +1,163 @@
+/*
+ * Copyright 2012 Grid Dynamics Consulting Services, Inc.
+ *      http://www.griddynamics.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.griddynamics.banshun.web;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.util.StringUtils;
+
+/**
+ * Index of URL patterns of a handler mapping by their path segments. It finds candidate
+ * patterns for a path in time proportional to the length of the path and the number of the
+ * wildcard segments on the way, instead of matching the path against all the patterns.
+ *
+ * <p>The candidates are a superset of the patterns that
+ * {@link org.springframework.util.AntPathMatcher AntPathMatcher} with the default "/" separator
+ * matches against the path, so they still have to be matched. Literal segments are indexed
+ * exactly, segments with wildcards or URI template variables per level, and patterns are
+ * candidates for any path that reaches their first <tt>**</tt> segment.</p>
+ *
+ * <p>The index is immutable, so it may be shared by request threads without locking.</p>
+ */
+final class UrlPatternIndex {
+
+    private static final String SEPARATOR = "/";
+    private static final String DEEP_WILDCARD = "**";
+
+    private static final Comparator<Entry> REGISTRATION_ORDER = new Comparator<Entry>() {
+        public int compare(Entry e1, Entry e2) {
+            return e1.order < e2.order ? -1 : (e1.order == e2.order ? 0 : 1);
+        }
+    };
+
+    private final Node root = new Node();
+    private final int size;
+
+
+    /**
+     * @param patterns URL patterns (or plain URLs) in order of their registration.
+     */
+    UrlPatternIndex(Iterable<String> patterns) {
+        int order = 0;
+        for (String pattern : patterns) {
+            add(new Entry(pattern, order++));
+        }
+        this.size = order;
+    }
+
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return Patterns that may match the given path, in order of their registration.
+     */
+    List<String> findCandidates(String path) {
+        List<Entry> found = new ArrayList<Entry>();
+        collect(root, tokenize(path), 0, found);
+
+        Collections.sort(found, REGISTRATION_ORDER);
+
+        List<String> result = new ArrayList<String>(found.size());
+        for (Entry entry : found) {
+            result.add(entry.pattern);
+        }
+        return result;
+    }
+
+
+    private void add(Entry entry) {
+        Node node = root;
+
+        for (String segment : tokenize(entry.pattern)) {
+            if (DEEP_WILDCARD.equals(segment)) {
+                node.deep.add(entry);
+                return;
+            }
+            node = node.child(segment);
+        }
+        node.terminal.add(entry);
+    }
+
+    private static void collect(Node node, String[] segments, int index, List<Entry> found) {
+        found.addAll(node.deep);
+
+        if (index == segments.length) {
+            found.addAll(node.terminal);
+            // a pattern ending with a wildcard segment matches a path ending with separator instead
+            for (Node wildcard : node.wildcards.values()) {
+                found.addAll(wildcard.terminal);
+            }
+            return;
+        }
+        Node literal = node.literals.get(segments[index]);
+        if (literal != null) {
+            collect(literal, segments, index + 1, found);
+        }
+        for (Node wildcard : node.wildcards.values()) {
+            collect(wildcard, segments, index + 1, found);
+        }
+    }
+
+    /**
+     * Splits the path in the same way as AntPathMatcher does, i.e. ignoring empty segments.
+     * The segments are trimmed, so that the literal segments match in either case.
+     */
+    private static String[] tokenize(String path) {
+        return StringUtils.tokenizeToStringArray(path, SEPARATOR, true, true);
+    }
+
+    private static boolean isLiteral(String segment) {
+        return segment.indexOf('*') < 0 && segment.indexOf('?') < 0 && segment.indexOf('{') < 0;
+    }
+
+
+    private static class Node {
+        final Map<String, Node> literals = new HashMap<String, Node>();
+        final Map<String, Node> wildcards = new LinkedHashMap<String, Node>();
+        final List<Entry> terminal = new ArrayList<Entry>(1);
+        final List<Entry> deep = new ArrayList<Entry>(1);
+
+        Node child(String segment) {
+            Map<String, Node> children = isLiteral(segment) ? literals : wildcards;
+            Node child = children.get(segment);
+
+            if (child == null) {
+                child = new Node();
+                children.put(segment, child);
+            }
+            return child;
+        }
+    }
+
+    private static class Entry {
+        final String pattern;
+        final int order;
+
+        Entry(String pattern, int order) {
+            this.pattern = pattern;
+            this.order = order;
+        }
+    }
+}
@@ -0,0 +1,267 @@
+/*
+ * Copyright 2012 Grid Dynamics Consulting Services, Inc.
+ *      http://www.griddynamics.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.griddynamics.banshun.web;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.HttpRequestMethodNotSupportedException;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.servlet.HandlerExecutionChain;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+public class ContextParentAnnotationHandlerMappingTest {
+    private ContextParentAnnotationHandlerMapping mapping;
+
+    @Before
+    public void init() {
+        mapping = new ContextParentAnnotationHandlerMapping();
+    }
+
+    @Test
+    public void validatesTypeLevelMapping() throws Exception {
+        PostController controller = new PostController();
+        mapping.registerByAnnotation(controller);
+
+        assertSame(controller, getHandler("POST", "/post/1"));
+        try {
+            getHandler("GET", "/post/1");
+            fail("GET request should not be allowed");
+        } catch (HttpRequestMethodNotSupportedException ex) {
+            assertArrayEquals(new String[]{"POST"}, ex.getSupportedMethods());
+        }
+    }
+
+    @Test
+    public void validatesHandlerRegisteredByName() throws Exception {
+        PostController controller = new PostController();
+        mapping.registerByName("/named", controller);
+
+        assertSame(controller, getHandler("POST", "/named"));
+        try {
+            getHandler("GET", "/named");
+            fail("GET request should not be allowed");
+        } catch (HttpRequestMethodNotSupportedException ex) {
+            // expected
+        }
+    }
+
+    @Test
+    public void acceptsUnrestrictedHandlers() throws Exception {
+        Object handler = new Object();
+        mapping.registerByName("/plain", handler);
+
+        assertSame(handler, getHandler("DELETE", "/plain"));
+    }
+
+    @Test
+    public void replacesHandlersOfModule() throws Exception {
+        Object first = new Object();
+        Object second = new Object();
+        Object third = new Object();
+
+        mapping.replaceHandlers("module", handlers("/first", first, "/second", second));
+        mapping.replaceHandlers("module", handlers("/second", third));
+
+        assertNull(getHandler("GET", "/first"));
+        assertSame(third, getHandler("GET", "/second"));
+        assertEquals(Collections.singletonMap("/second", "module"), mapping.getHandlerModules());
+    }
+
+    @Test
+    public void exposesRegisteredHandlers() throws Exception {
+        Object plain = new Object();
+        Object owned = new Object();
+        mapping.registerByName("/plain", plain);
+        mapping.replaceHandlers("module", handlers("/owned", owned));
+
+        assertSame(owned, mapping.getHandlers().get("/owned"));
+        assertTrue(mapping.getHandlerMap().isEmpty());
+
+        mapping.unregisterHandlers("module");
+
+        assertEquals(Collections.singletonMap("/plain", plain), mapping.getHandlers());
+        try {
+            mapping.getHandlers().remove("/plain");
+            fail("Handlers should be read-only");
+        } catch (UnsupportedOperationException ex) {
+            // expected
+        }
+    }
+
+    @Test
+    public void registersAllPathsOfHandlerAtOnce() throws Exception {
+        Object plain = new Object();
+        mapping.registerByName("/second", plain);
+
+        try {
+            mapping.registerByAnnotation(new PathsController());
+            fail("Path mapped by another handler should not be taken over");
+        } catch (IllegalStateException ex) {
+            // expected
+        }
+        assertNull(getHandler("GET", "/first"));
+        assertEquals(Collections.singletonMap("/second", plain), mapping.getHandlers());
+    }
+
+    @Test
+    public void unregistersOnlyHandlersOfModule() throws Exception {
+        Object plain = new Object();
+        Object owned = new Object();
+        mapping.registerByName("/plain", plain);
+        mapping.replaceHandlers("module", handlers("/owned/*", owned));
+
+        assertSame(owned, getHandler("GET", "/owned/1"));
+
+        mapping.unregisterHandlers("module");
+
+        assertNull(getHandler("GET", "/owned/1"));
+        assertSame(plain, getHandler("GET", "/plain"));
+        assertTrue(mapping.getHandlerModules().isEmpty());
+    }
+
+    @Test
+    public void newModuleTakesOverPaths() throws Exception {
+        Object oldHandler = new Object();
+        Object newHandler = new Object();
+        mapping.replaceHandlers("old", handlers("/path", oldHandler, "/old", oldHandler));
+        mapping.replaceHandlers("new", handlers("/path", newHandler));
+
+        assertSame(newHandler, getHandler("GET", "/path"));
+
+        // the old module is closed after the new one has been started
+        mapping.unregisterHandlers("old");
+
+        assertSame(newHandler, getHandler("GET", "/path"));
+        assertNull(getHandler("GET", "/old"));
+    }
+
+    @Test
+    public void rejectsConflictingHandlers() throws Exception {
+        Object plain = new Object();
+        mapping.registerByName("/plain", plain);
+
+        try {
+            mapping.replaceHandlers("module", handlers("/owned", new Object(), "/plain", new Object()));
+            fail("Path mapped by another handler should not be taken over");
+        } catch (IllegalStateException ex) {
+            // expected
+        }
+        assertNull(getHandler("GET", "/owned"));
+        assertSame(plain, getHandler("GET", "/plain"));
+
+        Map<String, Map<String, Object>> modules = new LinkedHashMap<String, Map<String, Object>>();
+        modules.put("first", handlers("/shared", new Object()));
+        modules.put("second", handlers("/shared", new Object()));
+        try {
+            mapping.replaceHandlers(modules);
+            fail("Path should not be mapped by two modules replaced together");
+        } catch (IllegalStateException ex) {
+            // expected
+        }
+        assertNull(getHandler("GET", "/shared"));
+    }
+
+    @Test
+    public void recordsRequestsOfModule() throws Exception {
+        mapping.setMetricsEnabled(true);
+        mapping.registerByName("/plain", new Object());
+        mapping.replaceHandlers("module", handlers("/owned/*", new Object()));
+
+        handle("/owned/1", 200);
+        handle("/owned/2", 500);
+        handle("/plain", 500);
+
+        ModuleRequestMetrics metrics = mapping.getModuleMetrics().get("module");
+        assertEquals(Collections.singleton("module"), mapping.getModuleMetrics().keySet());
+        assertEquals(2, metrics.getRequests());
+        assertEquals(1, metrics.getErrors());
+
+        long recorded = 0;
+        for (long count : metrics.getLatency().getCounts()) {
+            recorded += count;
+        }
+        assertEquals(2, recorded);
+
+        mapping.unregisterHandlers("module");
+
+        assertTrue(mapping.getModuleMetrics().isEmpty());
+    }
+
+    @Test
+    public void discardsMetricsOfModuleWhosePathsAreTakenOver() throws Exception {
+        mapping.setMetricsEnabled(true);
+        mapping.replaceHandlers("old", handlers("/path", new Object()));
+        handle("/path", 200);
+
+        mapping.replaceHandlers("new", handlers("/path", new Object()));
+        handle("/path", 200);
+
+        assertEquals(Collections.singleton("new"), mapping.getModuleMetrics().keySet());
+        assertEquals(1, mapping.getModuleMetrics().get("new").getRequests());
+    }
+
+    private static Map<String, Object> handlers(Object... pathsAndHandlers) {
+        Map<String, Object> result = new HashMap<String, Object>();
+        for (int i = 0; i < pathsAndHandlers.length; i += 2) {
+            result.put((String) pathsAndHandlers[i], pathsAndHandlers[i + 1]);
+        }
+        return result;
+    }
+
+    private Object getHandler(String method, String path) throws Exception {
+        HandlerExecutionChain chain = mapping.getHandler(new MockHttpServletRequest(method, path));
+        return chain != null ? chain.getHandler() : null;
+    }
+
+    private void handle(String path, int status) throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", path);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        HandlerExecutionChain chain = mapping.getHandler(request);
+        HandlerInterceptor[] interceptors = chain.getInterceptors() != null
+                ? chain.getInterceptors() : new HandlerInterceptor[0];
+
+        for (HandlerInterceptor interceptor : interceptors) {
+            assertTrue(interceptor.preHandle(request, response, chain.getHandler()));
+        }
+        response.setStatus(status);
+        for (int i = interceptors.length - 1; i >= 0; i--) {
+            interceptors[i].afterCompletion(request, response, chain.getHandler(), null);
+        }
+    }
+
+
+    @Controller
+    @RequestMapping(value = "/post/*", method = RequestMethod.POST)
+    public static class PostController {
+    }
+
+    @Controller
+    @RequestMapping({"/first", "/second"})
+    public static class PathsController {
+    }
+}
@@ -16,19 +16,30 @@
  */
 package com.griddynamics.banshun.web;
 
+import com.griddynamics.banshun.ContextParentBean;
+
 import org.junit.Before;
 import org.junit.Test;
 import static org.junit.Assert.*;
 
 import org.mortbay.jetty.testing.HttpTester;
 import org.mortbay.jetty.testing.ServletTester;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.beans.factory.config.BeanFactoryPostProcessor;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.core.io.ClassPathResource;
 import org.springframework.web.context.support.XmlWebApplicationContext;
 import org.springframework.web.servlet.FrameworkServlet;
 
+import java.util.Map;
+
 public class ScanningTest {
     private ServletTester tester;
     private HttpTester request;
     private HttpTester response;
+    private ApplicationContext context;
 
     @Before
     public void init() throws Exception {
@@ -37,6 +48,7 @@ public class ScanningTest {
         tester.setAttribute(Servlet.springCtxAttrName, wac = (XmlWebApplicationContext) FrameworkServlet.DEFAULT_CONTEXT_CLASS.newInstance());
         wac.setConfigLocation("classpath:/com/griddynamics/banshun/scan-test/parent-context.xml");
         wac.refresh();
+        context = wac;
         tester.addServlet(Servlet.class, "*.html");
         tester.start();
     }
@@ -64,6 +76,104 @@ public class ScanningTest {
         assertEquals("Hello Spring MVC", response.getContent());
     }
 
+    @Test
+    public void parallelScanTest() throws Exception {
+        ScanChildrenHandlerMapping serial = context.getBean(ScanChildrenHandlerMapping.class);
+
+        ScanChildrenHandlerMapping parallel = context.getAutowireCapableBeanFactory().createBean(ScanChildrenHandlerMapping.class);
+        parallel.setParentBean(context.getBean("root", ContextParentBean.class));
+        parallel.setScanParallelism(4);
+        parallel.scanChildContexts();
+
+        assertEquals(serial.getHandlers(), parallel.getHandlers());
+        assertEquals(serial.getHandlers().keySet().toString(), parallel.getHandlers().keySet().toString());
+    }
+
+    @Test
+    public void parallelScanOnStartupTest() throws Exception {
+        XmlWebApplicationContext wac = new XmlWebApplicationContext();
+        wac.setConfigLocation("classpath:/com/griddynamics/banshun/scan-test/parent-context.xml");
+        wac.addBeanFactoryPostProcessor(new BeanFactoryPostProcessor() {
+            public void postProcessBeanFactory(ConfigurableListableBeanFactory beanFactory) {
+                BeanDefinition definition = beanFactory.getBeanDefinition("root-handler-mapping");
+                definition.setBeanClassName(CountingScanChildrenHandlerMapping.class.getName());
+                definition.getPropertyValues().add("scanParallelism", 4);
+            }
+        });
+        wac.refresh();
+        try {
+            CountingScanChildrenHandlerMapping parallel = wac.getBean(CountingScanChildrenHandlerMapping.class);
+            ScanChildrenHandlerMapping serial = context.getBean(ScanChildrenHandlerMapping.class);
+
+            assertEquals(0, parallel.moduleRegistrations);
+            assertEquals(serial.getHandlers().keySet().toString(), parallel.getHandlers().keySet().toString());
+        } finally {
+            wac.close();
+        }
+    }
+
+    @Test
+    public void closedChildTest() throws Exception {
+        ScanChildrenHandlerMapping mapping = context.getBean(ScanChildrenHandlerMapping.class);
+        ConfigurableApplicationContext child = context.getBean("root", ContextParentBean.class).getChildren().get(0);
+
+        assertTrue(mapping.getHandlers().containsKey("/nested-controller-test.html"));
+        assertEquals(child.getDisplayName(), mapping.getHandlerModules().get("/nested-controller-test.html"));
+
+        child.close();
+
+        assertFalse(mapping.getHandlers().containsKey("/nested-controller-test.html"));
+        assertFalse(mapping.getHandlerModules().containsValue(child.getDisplayName()));
+        assertTrue(mapping.getHandlers().containsKey("/handler-test.html"));
+    }
+
+    @Test
+    public void moduleNamedByResourceTest() throws Exception {
+        ScanChildrenHandlerMapping mapping = context.getBean(ScanChildrenHandlerMapping.class);
+
+        assertEquals("class path resource [com/griddynamics/banshun/scan-test/child1-context.xml]",
+                mapping.getHandlerModules().get("/nested-controller-test.html"));
+    }
+
+    @Test
+    public void reloadedChildTest() throws Exception {
+        ScanChildrenHandlerMapping mapping = context.getBean(ScanChildrenHandlerMapping.class);
+        ConfigurableApplicationContext child = context.getBean("root", ContextParentBean.class).getChildren().get(0);
+
+        ConfigurableApplicationContext reloaded = new SingleResourceWebChildContext(
+                new ClassPathResource("com/griddynamics/banshun/scan-test/child1-context.xml"), context);
+        child.close();
+
+        assertSame(reloaded.getBean("/nested-controller-test.html"), mapping.getHandlers().get("/nested-controller-test.html"));
+        assertEquals(reloaded.getDisplayName(), mapping.getHandlerModules().get("/nested-controller-test.html"));
+
+        reloaded.close();
+
+        assertFalse(mapping.getHandlers().containsKey("/nested-controller-test.html"));
+    }
+
+    @Test
+    public void refreshedChildTest() throws Exception {
+        ScanChildrenHandlerMapping mapping = context.getBean(ScanChildrenHandlerMapping.class);
+        ConfigurableApplicationContext child = context.getBean("root", ContextParentBean.class).getChildren().get(0);
+        Object handler = mapping.getHandlers().get("/nested-controller-test.html");
+
+        child.refresh();
+
+        assertNotSame(handler, mapping.getHandlers().get("/nested-controller-test.html"));
+        assertSame(child.getBean("/nested-controller-test.html"), mapping.getHandlers().get("/nested-controller-test.html"));
+    }
+
+    public static class CountingScanChildrenHandlerMapping extends ScanChildrenHandlerMapping {
+        private int moduleRegistrations = 0;
+
+        @Override
+        public Void replaceHandlers(String module, Map<String, ?> handlers) {
+            moduleRegistrations++;
+            return super.replaceHandlers(module, handlers);
+        }
+    }
+
     private void updateRequest(String URI) {
         request = new HttpTester();
         request.setMethod("GET");
@@ -0,0 +1,253 @@
+/*
+ * Copyright 2012 Grid Dynamics Consulting Services, Inc.
+ *      http://www.griddynamics.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.griddynamics.banshun.web;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.servlet.HandlerExecutionChain;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
+import org.springframework.web.servlet.mvc.annotation.DefaultAnnotationHandlerMapping;
+
+/**
+ * Checks that handlers looked up in ContextParentAnnotationHandlerMapping, with and without
+ * the URL index, are the same as those chosen by plain AbstractUrlHandlerMapping.
+ */
+public class UrlPatternIndexTest {
+
+    private static final String[] LITERALS = {"a", "b", "foo", "bar", "foo.html", "bar.json", "1"};
+    private static final String[] WILDCARDS = {"*", "**", "?", "f*", "*.html", "*.*", "{id}", "{id}.json", "b?r", "*o*"};
+    private static final String[] PATH_SEGMENTS = {"a", "b", "foo", "bar", "foo.html", "bar.json", "1", "fo", "baz", "x.html", "42.json"};
+
+    private ContextParentAnnotationHandlerMapping indexed;
+    private ContextParentAnnotationHandlerMapping unindexed;
+    private ReferenceHandlerMapping reference;
+
+    @Before
+    public void init() {
+        indexed = new ContextParentAnnotationHandlerMapping();
+        unindexed = new ContextParentAnnotationHandlerMapping();
+        unindexed.setUseUrlIndex(false);
+        reference = new ReferenceHandlerMapping();
+    }
+
+    @Test
+    public void exactPathPrecedesPatterns() throws Exception {
+        register("/a/*", "/a/b", "/**", "/a/{id}");
+
+        assertSameLookup("/a/b", "/a/c", "/a/", "/a", "/a/b/c", "/b");
+        assertEquals("/a/b", handlerOf(indexed, "/a/b"));
+        assertEquals("/a/*", handlerOf(indexed, "/a/c"));
+        assertEquals("/**", handlerOf(indexed, "/a/b/c"));
+    }
+
+    @Test
+    public void suffixAndTrailingSlashVariants() throws Exception {
+        register("/foo", "/foo.*", "/foo/", "/foo/{id}", "/foo/{id}.*", "/foo/{id}/", "/bar/**/baz", "/bar/*/baz/**");
+
+        assertSameLookup("/foo", "/foo.html", "/foo/", "/foo/1", "/foo/1.json", "/foo/1/",
+                "/foo//1", "/bar/baz", "/bar/1/baz", "/bar/1/2/baz", "/bar/1/baz/2", "/bar/1/baz/");
+    }
+
+    @Test
+    public void indexIsRebuiltAfterRegistration() throws Exception {
+        register("/a/*");
+        assertEquals("/a/*", handlerOf(indexed, "/a/b"));
+        assertNull(handlerOf(indexed, "/b/a"));
+
+        register("/*/a");
+        assertEquals("/*/a", handlerOf(indexed, "/b/a"));
+    }
+
+    @Test
+    public void randomPatternsAndPaths() throws Exception {
+        Random random = new Random(20121016);
+
+        for (int round = 0; round < 20; round++) {
+            init();
+            List<String> patterns = new ArrayList<String>(randomPatterns(random, 50));
+            register(patterns.toArray(new String[patterns.size()]));
+
+            for (int i = 0; i < 500; i++) {
+                String path = random.nextBoolean()
+                        ? randomPath(random)
+                        : pathMatching(patterns.get(random.nextInt(patterns.size())), random);
+                assertSameLookup(path);
+            }
+        }
+    }
+
+
+    private void register(String... patterns) {
+        for (String pattern : patterns) {
+            // the pattern itself is the handler, so it's easy to see which one has been chosen
+            Handler handler = new Handler(pattern);
+            indexed.registerHandler(pattern, handler);
+            unindexed.registerHandler(pattern, handler);
+            reference.registerHandler(pattern, handler);
+        }
+    }
+
+    private void assertSameLookup(String... paths) throws Exception {
+        for (String path : paths) {
+            MockHttpServletRequest request = request(path);
+            MockHttpServletRequest expected = exposeHandler(reference.lookup(path, request), request);
+            String message = "Lookup of " + path + " in " + reference.getHandlerMap().keySet();
+
+            for (ContextParentAnnotationHandlerMapping mapping : Arrays.asList(indexed, unindexed)) {
+                MockHttpServletRequest actual = lookup(mapping, path);
+
+                assertEquals(message, expected.getAttribute("handler"), actual.getAttribute("handler"));
+                for (String attribute : Arrays.asList(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE,
+                        HandlerMapping.PATH_WITHIN_HANDLER_MAPPING_ATTRIBUTE, HandlerMapping.URI_TEMPLATE_VARIABLES_ATTRIBUTE)) {
+                    assertEquals(message + ", " + attribute, expected.getAttribute(attribute), actual.getAttribute(attribute));
+                }
+            }
+        }
+    }
+
+    /**
+     * @return The request with the chosen handler and the attributes exposed by the mapping.
+     */
+    private MockHttpServletRequest lookup(ContextParentAnnotationHandlerMapping mapping, String path) throws Exception {
+        MockHttpServletRequest request = request(path);
+        return exposeHandler(mapping.lookupHandler(path, request), request);
+    }
+
+    private static MockHttpServletRequest request(String path) {
+        return new MockHttpServletRequest("GET", path);
+    }
+
+    private static MockHttpServletRequest exposeHandler(Object result, MockHttpServletRequest request) throws Exception {
+        if (result instanceof HandlerExecutionChain) {
+            HandlerExecutionChain chain = (HandlerExecutionChain) result;
+            request.setAttribute("handler", chain.getHandler().toString());
+            if (chain.getInterceptors() != null) {
+                for (HandlerInterceptor interceptor : chain.getInterceptors()) {
+                    interceptor.preHandle(request, new MockHttpServletResponse(), chain.getHandler());
+                }
+            }
+        } else if (result != null) {
+            request.setAttribute("handler", result.toString());
+        }
+        return request;
+    }
+
+    private String handlerOf(ContextParentAnnotationHandlerMapping mapping, String path) throws Exception {
+        return (String) lookup(mapping, path).getAttribute("handler");
+    }
+
+    private static Set<String> randomPatterns(Random random, int count) {
+        Set<String> patterns = new LinkedHashSet<String>();
+
+        while (patterns.size() < count) {
+            StringBuilder pattern = new StringBuilder();
+            for (int i = random.nextInt(4) + 1; i > 0; i--) {
+                String[] pool = random.nextInt(3) == 0 ? WILDCARDS : LITERALS;
+                pattern.append('/').append(pool[random.nextInt(pool.length)]);
+            }
+            if (random.nextInt(5) == 0) {
+                pattern.append('/');
+            }
+            // "/" and "/*" are registered as the root and default handler
+            if (!pattern.toString().equals("/*")) {
+                patterns.add(pattern.toString());
+            }
+        }
+        return patterns;
+    }
+
+    private static String randomPath(Random random) {
+        StringBuilder path = new StringBuilder();
+
+        for (int i = random.nextInt(5); i >= 0; i--) {
+            path.append(random.nextInt(10) == 0 ? "//" : "/");
+            path.append(PATH_SEGMENTS[random.nextInt(PATH_SEGMENTS.length)]);
+        }
+        if (random.nextInt(5) == 0) {
+            path.append('/');
+        }
+        return path.toString();
+    }
+
+    /**
+     * @return Path made from the pattern by replacing its wildcard segments, that likely
+     *         (but not necessarily) matches it.
+     */
+    private static String pathMatching(String pattern, Random random) {
+        StringBuilder path = new StringBuilder();
+
+        for (String segment : pattern.split("/", -1)) {
+            if (path.length() > 0 || !segment.isEmpty()) {
+                path.append('/');
+            }
+            if (segment.equals("**")) {
+                for (int i = random.nextInt(3); i > 0; i--) {
+                    path.append(PATH_SEGMENTS[random.nextInt(PATH_SEGMENTS.length)]).append('/');
+                }
+                path.append(PATH_SEGMENTS[random.nextInt(PATH_SEGMENTS.length)]);
+            } else if (Arrays.asList(WILDCARDS).contains(segment)) {
+                path.append(PATH_SEGMENTS[random.nextInt(PATH_SEGMENTS.length)]);
+            } else {
+                path.append(segment);
+            }
+        }
+        return path.toString();
+    }
+
+
+    /**
+     * Plain Spring MVC mapping to compare with.
+     */
+    private static class ReferenceHandlerMapping extends DefaultAnnotationHandlerMapping {
+
+        @Override
+        protected void registerHandler(String urlPath, Object handler) {
+            super.registerHandler(urlPath, handler);
+        }
+
+        Object lookup(String urlPath, HttpServletRequest request) throws Exception {
+            return lookupHandler(urlPath, request);
+        }
+    }
+
+    private static class Handler {
+        private final String pattern;
+
+        Handler(String pattern) {
+            this.pattern = pattern;
+        }
+
+        @Override
+        public String toString() {
+            return pattern;
+        }
+    }
+}